@@ -14,10 +14,17 @@
 package com.conductor.hadoop;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
 
-import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.*;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
 import org.apache.hadoop.util.ReflectionUtils;
 
+import com.google.common.collect.Maps;
+
 /**
  * A {@link Mapper} implementation that delegates behavior of {@link org.apache.hadoop.mapreduce.InputSplit}s to
  * multiple other mappers.
@@ -26,26 +33,256 @@ import org.apache.hadoop.util.ReflectionUtils;
  * This class is taken directly from the Hadoop source code so that we can leverage {@link TaggedInputSplit} which is
  * package-private in the Hadoop library.
  * 
+ * <p/>
+ * When the input split is a {@link MultiTaggedInputSplit}, its tagged splits are run through their own delegate
+ * mappers, one after the other. The records are still read through the task's {@link DelegatingRecordReader}, so that
+ * the framework keeps track of the task's progress and input records.
+ * 
+ * <p/>
+ * Mapper classes added with {@link #addReusableMapperClass(Job, Class)} are instantiated once per JVM, rather than
+ * once per split.
+ * 
+ * <p/>
+ * To route the records of a split by the type of their values instead, e.g. those of a
+ * {@link com.conductor.kafka.hadoop.KafkaDecodedInputFormat}, make its mapper a {@link TypeRoutingMapper}.
+ * 
  * @see org.apache.hadoop.mapreduce.lib.input.DelegatingMapper
  * @see com.conductor.kafka.hadoop.MultipleKafkaInputFormat
  */
 public class DelegatingMapper<K1, V1, K2, V2> extends Mapper<K1, V1, K2, V2> {
 
+    public static final String REUSABLE_MAPPERS_CONF = "delegating.mapper.reusable.classes";
+
+    private static final ConcurrentMap<Class<?>, Mapper<?, ?, ?, ?>> REUSABLE_MAPPERS = Maps.newConcurrentMap();
+
     private Mapper<K1, V1, K2, V2> mapper;
 
-    @SuppressWarnings("unchecked")
     protected void setup(Context context) throws IOException, InterruptedException {
         // Find the Mapper from the TaggedInputSplit.
         TaggedInputSplit inputSplit = (TaggedInputSplit) context.getInputSplit();
-        mapper = (Mapper<K1, V1, K2, V2>) ReflectionUtils.newInstance(inputSplit.getMapperClass(),
-                context.getConfiguration());
-
+        mapper = getMapper(inputSplit.getMapperClass(), context.getConfiguration());
     }
 
-    @SuppressWarnings("unchecked")
     public void run(Context context) throws IOException, InterruptedException {
+        if (context.getInputSplit() instanceof MultiTaggedInputSplit) {
+            runTaggedSplits(context);
+            return;
+        }
         setup(context);
         mapper.run(context);
         cleanup(context);
     }
+
+    /**
+     * Runs each tagged split of the task's {@link MultiTaggedInputSplit} with its delegate, handing it the records that
+     * the task's {@link DelegatingRecordReader} reads from that split. Tagged splits without any records are run too,
+     * so that each delegate mapper is set up and cleaned up.
+     */
+    void runTaggedSplits(Context context) throws IOException, InterruptedException {
+        MultiTaggedInputSplit multiSplit = (MultiTaggedInputSplit) context.getInputSplit();
+        List<TaggedInputSplit> splits = multiSplit.getSplits();
+        boolean hasRecord = context.nextKeyValue();
+        for (int i = 0; i < splits.size(); i++) {
+            TaggedSplitRecordReader<K1, V1> reader = new TaggedSplitRecordReader<K1, V1>(context, multiSplit, i,
+                    hasRecord);
+            run(splits.get(i), createContext(context, reader, splits.get(i)), context);
+            // skip whatever the delegate did not read
+            while (reader.nextKeyValue()) {
+            }
+            hasRecord = reader.hasUnreadRecord();
+        }
+    }
+
+    /**
+     * Maps everything read from {@code input} with the delegate mapper of {@code split}, writing to {@code output}.
+     */
+    void run(TaggedInputSplit split, Mapper<K1, V1, K2, V2>.Context input, Context output) throws IOException,
+            InterruptedException {
+        Mapper<K1, V1, K2, V2> delegate = getMapper(split.getMapperClass(), output.getConfiguration());
+        delegate.run(input);
+    }
+
+    /**
+     * Creates a context that reads from {@code reader}, and otherwise passes everything through to {@code context}.
+     */
+    static <K1, V1, K2, V2> Mapper<K1, V1, K2, V2>.Context createContext(Mapper<K1, V1, K2, V2>.Context context,
+            RecordReader<K1, V1> reader, InputSplit split) {
+        MapContext<K1, V1, K2, V2> mapContext = new MapContextImpl<K1, V1, K2, V2>(context.getConfiguration(),
+                context.getTaskAttemptID(), reader, new ContextRecordWriter<K2, V2>(context),
+                context.getOutputCommitter(), new ContextStatusReporter(context), split);
+        return new WrappedMapper<K1, V1, K2, V2>().getMapContext(mapContext);
+    }
+
+    /**
+     * Gets a delegate mapper, reusing the JVM-wide instance of reusable mapper classes.
+     */
+    @SuppressWarnings("unchecked")
+    static <K1, V1, K2, V2> Mapper<K1, V1, K2, V2> getMapper(Class<? extends Mapper> mapperClass, Configuration conf) {
+        if (!isReusableMapperClass(conf, mapperClass)) {
+            return (Mapper<K1, V1, K2, V2>) ReflectionUtils.newInstance(mapperClass, conf);
+        }
+        Mapper<?, ?, ?, ?> mapper = REUSABLE_MAPPERS.get(mapperClass);
+        if (mapper == null) {
+            REUSABLE_MAPPERS.putIfAbsent(mapperClass, ReflectionUtils.newInstance(mapperClass, conf));
+            mapper = REUSABLE_MAPPERS.get(mapperClass);
+        }
+        return (Mapper<K1, V1, K2, V2>) mapper;
+    }
+
+    /**
+     * Marks {@code mapperClass} as reusable: a single instance of it is created per JVM and used for every split,
+     * instead of a new instance per split. Only do this for mappers that keep no state between splits, and that don't
+     * depend on the configuration of a particular task.
+     * 
+     * @param job
+     *            the job being configured.
+     * @param mapperClass
+     *            the reusable mapper class.
+     */
+    public static void addReusableMapperClass(Job job, Class<? extends Mapper> mapperClass) {
+        Configuration conf = job.getConfiguration();
+        if (!isReusableMapperClass(conf, mapperClass)) {
+            String existing = conf.get(REUSABLE_MAPPERS_CONF);
+            conf.set(REUSABLE_MAPPERS_CONF, existing == null || existing.isEmpty() ? mapperClass.getName() : existing
+                    + "," + mapperClass.getName());
+        }
+    }
+
+    /**
+     * @param conf
+     *            the job configuration.
+     * @param mapperClass
+     *            the mapper class.
+     * @return {@code true} if {@code mapperClass} was marked reusable.
+     */
+    public static boolean isReusableMapperClass(Configuration conf, Class<?> mapperClass) {
+        return conf.getTrimmedStringCollection(REUSABLE_MAPPERS_CONF).contains(mapperClass.getName());
+    }
+
+    /**
+     * Writes the output of a delegate mapper to the task's context; delegates may write from several threads at once
+     * (see {@link MultithreadedDelegatingMapper}).
+     */
+    static class ContextRecordWriter<K, V> extends RecordWriter<K, V> {
+        private final TaskInputOutputContext<?, ?, K, V> context;
+
+        ContextRecordWriter(TaskInputOutputContext<?, ?, K, V> context) {
+            this.context = context;
+        }
+
+        @Override
+        public void write(K key, V value) throws IOException, InterruptedException {
+            synchronized (context) {
+                context.write(key, value);
+            }
+        }
+
+        @Override
+        public void close(TaskAttemptContext context) {
+            // the task's context is closed by the framework
+        }
+    }
+
+    /**
+     * Reads the records of one tagged split of a {@link MultiTaggedInputSplit} from the task's context, up to the first
+     * record of a later tagged split.
+     */
+    static class TaggedSplitRecordReader<K, V> extends RecordReader<K, V> {
+        private final MapContext<K, V, ?, ?> context;
+        private final MultiTaggedInputSplit multiSplit;
+        private final int index;
+        // whether the task's context holds a record, and whether it was handed out by this reader
+        private boolean hasRecord;
+        private boolean handedOut;
+
+        TaggedSplitRecordReader(MapContext<K, V, ?, ?> context, MultiTaggedInputSplit multiSplit, int index,
+                boolean hasRecord) {
+            this.context = context;
+            this.multiSplit = multiSplit;
+            this.index = index;
+            this.hasRecord = hasRecord;
+        }
+
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) {
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException, InterruptedException {
+            if (hasRecord && handedOut) {
+                hasRecord = context.nextKeyValue();
+                handedOut = false;
+            }
+            if (!hasRecord || multiSplit.getCurrentSplit() != index) {
+                return false;
+            }
+            handedOut = true;
+            return true;
+        }
+
+        /**
+         * @return {@code true} if the task's context holds a record of a later tagged split.
+         */
+        boolean hasUnreadRecord() {
+            return hasRecord && !handedOut;
+        }
+
+        @Override
+        public K getCurrentKey() throws IOException, InterruptedException {
+            return context.getCurrentKey();
+        }
+
+        @Override
+        public V getCurrentValue() throws IOException, InterruptedException {
+            return context.getCurrentValue();
+        }
+
+        @Override
+        public float getProgress() {
+            return context.getProgress();
+        }
+
+        @Override
+        public void close() {
+            // the task's record reader is closed by the framework
+        }
+    }
+
+    /**
+     * Reports the counters and status of a delegate mapper to the task's context.
+     */
+    static class ContextStatusReporter extends StatusReporter {
+        private final TaskInputOutputContext<?, ?, ?, ?> context;
+
+        ContextStatusReporter(TaskInputOutputContext<?, ?, ?, ?> context) {
+            this.context = context;
+        }
+
+        @Override
+        public Counter getCounter(Enum<?> name) {
+            return context.getCounter(name);
+        }
+
+        @Override
+        public Counter getCounter(String group, String name) {
+            return context.getCounter(group, name);
+        }
+
+        @Override
+        public void progress() {
+            context.progress();
+        }
+
+        @Override
+        public float getProgress() {
+            return context.getProgress();
+        }
+
+        @Override
+        public void setStatus(String status) {
+            synchronized (context) {
+                context.setStatus(status);
+            }
+        }
+    }
 }
@@ -13,33 +13,84 @@
 package com.conductor.hadoop;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
 
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.*;
 import org.apache.hadoop.util.ReflectionUtils;
 
+import com.google.common.collect.Maps;
+
 /**
  * This class is taken directly from the Hadoop source code so that we can leverage {@link TaggedInputSplit} which is
  * package-private in the Hadoop library.
  * 
+ * <p/>
+ * It also reads {@link MultiTaggedInputSplit}s, one tagged split after the other. The delegate of each tagged split is
+ * only created once the previous one has been read to the end, and the split being read is published through
+ * {@link MultiTaggedInputSplit#getCurrentSplit()} so that {@link DelegatingMapper} can switch delegate mappers.
+ * 
+ * <p/>
+ * Delegate {@link InputFormat}s that are not {@link Configurable} are assumed to be stateless, and a single instance of
+ * each is shared by every split read in the JVM.
+ * 
  * @see org.apache.hadoop.mapreduce.lib.input.DelegatingRecordReader
  * @see com.conductor.kafka.hadoop.MultipleKafkaInputFormat
  */
 public class DelegatingRecordReader<K, V> extends RecordReader<K, V> {
+
+    private static final ConcurrentMap<Class<?>, InputFormat<?, ?>> INPUT_FORMATS = Maps.newConcurrentMap();
+
     RecordReader<K, V> originalRR;
 
-    @SuppressWarnings("unchecked")
+    // only used when reading a MultiTaggedInputSplit
+    private MultiTaggedInputSplit multiSplit;
+    private List<TaggedInputSplit> splits;
+    private int splitsStarted;
+    private TaskAttemptContext context;
+
     public DelegatingRecordReader(InputSplit split, TaskAttemptContext context) throws IOException,
             InterruptedException {
-        // Find the InputFormat and then the RecordReader from the TaggedInputSplit.
-        TaggedInputSplit taggedInputSplit = (TaggedInputSplit) split;
-        InputFormat<K, V> inputFormat = (InputFormat<K, V>) ReflectionUtils.newInstance(
-                taggedInputSplit.getInputFormatClass(), context.getConfiguration());
-        originalRR = inputFormat.createRecordReader(taggedInputSplit.getInputSplit(), context);
+        if (split instanceof MultiTaggedInputSplit) {
+            multiSplit = (MultiTaggedInputSplit) split;
+            splits = multiSplit.getSplits();
+        } else {
+            // Find the InputFormat and then the RecordReader from the TaggedInputSplit.
+            originalRR = createRecordReader((TaggedInputSplit) split, context);
+        }
+    }
+
+    /**
+     * Creates the record reader of the delegate input format of {@code split}.
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> RecordReader<K, V> createRecordReader(TaggedInputSplit split, TaskAttemptContext context)
+            throws IOException, InterruptedException {
+        InputFormat<K, V> inputFormat = (InputFormat<K, V>) getInputFormat(split.getInputFormatClass(),
+                context.getConfiguration());
+        return inputFormat.createRecordReader(split.getInputSplit(), context);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static InputFormat<?, ?> getInputFormat(Class<? extends InputFormat> inputFormatClass, Configuration conf) {
+        if (Configurable.class.isAssignableFrom(inputFormatClass)) {
+            return ReflectionUtils.newInstance(inputFormatClass, conf);
+        }
+        InputFormat<?, ?> inputFormat = INPUT_FORMATS.get(inputFormatClass);
+        if (inputFormat == null) {
+            INPUT_FORMATS.putIfAbsent(inputFormatClass, ReflectionUtils.newInstance(inputFormatClass, conf));
+            inputFormat = INPUT_FORMATS.get(inputFormatClass);
+        }
+        return inputFormat;
     }
 
     @Override
     public void close() throws IOException {
-        originalRR.close();
+        if (originalRR != null) {
+            originalRR.close();
+        }
     }
 
     @Override
@@ -54,17 +105,46 @@ public class DelegatingRecordReader<K, V> extends RecordReader<K, V> {
 
     @Override
     public float getProgress() throws IOException, InterruptedException {
-        return originalRR.getProgress();
+        if (splits == null) {
+            return originalRR.getProgress();
+        }
+        if (splits.isEmpty()) {
+            return 1;
+        }
+        if (originalRR == null) {
+            return splitsStarted / (float) splits.size();
+        }
+        return (splitsStarted - 1 + originalRR.getProgress()) / splits.size();
     }
 
     @Override
     public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
-        originalRR.initialize(((TaggedInputSplit) split).getInputSplit(), context);
+        if (splits == null) {
+            originalRR.initialize(((TaggedInputSplit) split).getInputSplit(), context);
+        } else {
+            this.context = context;
+        }
     }
 
     @Override
     public boolean nextKeyValue() throws IOException, InterruptedException {
-        return originalRR.nextKeyValue();
+        if (splits == null) {
+            return originalRR.nextKeyValue();
+        }
+        while (originalRR == null || !originalRR.nextKeyValue()) {
+            if (originalRR != null) {
+                originalRR.close();
+                originalRR = null;
+            }
+            if (splitsStarted == splits.size()) {
+                return false;
+            }
+            final TaggedInputSplit split = splits.get(splitsStarted);
+            multiSplit.setCurrentSplit(splitsStarted++);
+            originalRR = createRecordReader(split, context);
+            originalRR.initialize(split.getInputSplit(), context);
+        }
+        return true;
     }
 
 }
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.conductor.hadoop;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import com.google.common.base.Strings;
+
+/**
+ * An {@link OutputPathExtractor} that buckets records by key and by (UTC) hour, in Hive's partition layout:
+ * {@code <key>/dt=yyyy-MM-dd/hour=HH}, or {@code dt=yyyy-MM-dd/hour=HH} for records without a key. Records without a
+ * timestamp go to {@code <key>/dt=unknown}.
+ */
+public abstract class HourlyOutputPathExtractor<K, V> implements OutputPathExtractor<K, V> {
+
+    private static final long HOUR_MS = 60 * 60 * 1000L;
+
+    private final SimpleDateFormat format = new SimpleDateFormat("'dt='yyyy-MM-dd'/hour='HH");
+    private long lastHour = Long.MIN_VALUE;
+    private String lastHourPath;
+
+    protected HourlyOutputPathExtractor() {
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * @return the key directory of a record, or {@code null} if records are only bucketed by time.
+     */
+    protected abstract String getKey(K key, V value);
+
+    /**
+     * @return the timestamp of a record in milliseconds since the epoch, or a negative number if it has none.
+     */
+    protected abstract long getTimestamp(K key, V value);
+
+    @Override
+    public String getPath(final K key, final V value) {
+        final String keyPath = getKey(key, value);
+        final long timestamp = getTimestamp(key, value);
+        final String timePath = timestamp < 0 ? "dt=unknown" : getHourPath(timestamp / HOUR_MS);
+        return Strings.isNullOrEmpty(keyPath) ? timePath : keyPath + "/" + timePath;
+    }
+
+    // records mostly come in time order, so don't format the same hour over and over
+    private String getHourPath(final long hour) {
+        if (hour != lastHour) {
+            lastHourPath = format.format(new Date(hour * HOUR_MS));
+            lastHour = hour;
+        }
+        return lastHourPath;
+    }
+}
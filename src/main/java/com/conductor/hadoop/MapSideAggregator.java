@@ -0,0 +1,174 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.conductor.hadoop;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Aggregates the output of a {@link org.apache.hadoop.mapreduce.Mapper} by key in memory before writing it, so that
+ * e.g. a counting job writes one record per distinct key and task rather than one per input record. Unlike a combiner,
+ * this runs before map output is serialized and sorted, and each mapper of a
+ * {@link com.conductor.kafka.hadoop.MultipleKafkaInputFormat} job can aggregate its topic in its own way.
+ *
+ * <p/>
+ * At most {@code maxKeys} keys are held at once; when another key comes along, everything is written out and the
+ * aggregation starts over. Mappers must {@link #flush(TaskInputOutputContext)} in their
+ * {@link org.apache.hadoop.mapreduce.Mapper#cleanup cleanup}:
+ *
+ * <pre>
+ * <code>
+ * public class MyMapper extends Mapper&lt;LongWritable, BytesWritable, Text, LongWritable&gt; {
+ *     private MapSideAggregator&lt;Text, LongWritable&gt; counts;
+ *     private final Text word = new Text();
+ *     private final LongWritable one = new LongWritable(1);
+ *
+ *     protected void setup(Context context) {
+ *         counts = new MapSideAggregator.LongSum&lt;Text&gt;(context.getConfiguration(), 100000);
+ *     }
+ *
+ *     protected void map(LongWritable offset, BytesWritable message, Context context) throws ... {
+ *         word.set(...);
+ *         counts.aggregate(word, one, context);
+ *     }
+ *
+ *     protected void cleanup(Context context) throws ... {
+ *         counts.flush(context);
+ *     }
+ * }
+ * </code>
+ * </pre>
+ *
+ * Keys and values that are {@link Writable}s are copied the first time they are aggregated, so mappers can keep
+ * reusing their output objects. Instances are not thread-safe.
+ *
+ * @param <K>
+ *            the output key type.
+ * @param <V>
+ *            the output value type.
+ */
+public abstract class MapSideAggregator<K, V> {
+
+    private final Configuration conf;
+    private final int maxKeys;
+    private final Map<K, V> aggregates;
+
+    /**
+     * @param conf
+     *            the job configuration, used to copy {@link Writable}s.
+     * @param maxKeys
+     *            the maximum number of keys to hold before flushing.
+     */
+    public MapSideAggregator(final Configuration conf, final int maxKeys) {
+        checkArgument(maxKeys > 0, "maxKeys must be positive.");
+        this.conf = conf;
+        this.maxKeys = maxKeys;
+        this.aggregates = Maps.newHashMapWithExpectedSize(maxKeys);
+    }
+
+    /**
+     * Combines a value into the aggregate of its key.
+     *
+     * @param aggregate
+     *            the aggregate so far; owned by this aggregator, so it may be modified and returned.
+     * @param value
+     *            the value to combine; owned by the caller.
+     * @return the new aggregate.
+     */
+    protected abstract V combine(V aggregate, V value);
+
+    /**
+     * Adds {@code value} to the aggregate of {@code key}, writing out all aggregates first if {@code key} is new and
+     * {@code maxKeys} keys are already held.
+     *
+     * @param key
+     *            the output key.
+     * @param value
+     *            the output value.
+     * @param context
+     *            the context to write aggregates to.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void aggregate(final K key, final V value, final TaskInputOutputContext<?, ?, ? super K, ? super V> context)
+            throws IOException, InterruptedException {
+        final V aggregate = aggregates.get(key);
+        if (aggregate != null) {
+            aggregates.put(key, combine(aggregate, value));
+            return;
+        }
+        if (aggregates.size() >= maxKeys) {
+            flush(context);
+        }
+        aggregates.put(copy(key), copy(value));
+    }
+
+    /**
+     * Writes out all aggregates held, and starts over.
+     *
+     * @param context
+     *            the context to write aggregates to.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void flush(final TaskInputOutputContext<?, ?, ? super K, ? super V> context) throws IOException,
+            InterruptedException {
+        for (final Map.Entry<K, V> aggregate : aggregates.entrySet()) {
+            context.write(aggregate.getKey(), aggregate.getValue());
+        }
+        aggregates.clear();
+    }
+
+    /**
+     * @return the number of keys held.
+     */
+    public int size() {
+        return aggregates.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T copy(final T object) {
+        if (object instanceof Writable) {
+            return (T) WritableUtils.clone((Writable) object, conf);
+        }
+        return object;
+    }
+
+    /**
+     * Sums {@link LongWritable} values, e.g. for counting.
+     */
+    public static class LongSum<K> extends MapSideAggregator<K, LongWritable> {
+
+        public LongSum(final Configuration conf, final int maxKeys) {
+            super(conf, maxKeys);
+        }
+
+        @Override
+        protected LongWritable combine(final LongWritable aggregate, final LongWritable value) {
+            aggregate.set(aggregate.get() + value.get());
+            return aggregate;
+        }
+    }
+}
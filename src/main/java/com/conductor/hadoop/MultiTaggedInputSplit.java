@@ -0,0 +1,132 @@
+/**
+ * Copyright 2015 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.conductor.hadoop;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * An {@link InputSplit} made up of several {@link TaggedInputSplit}s, so that a single map task can run each of them
+ * through its own delegate {@link org.apache.hadoop.mapreduce.InputFormat} and
+ * {@link org.apache.hadoop.mapreduce.Mapper}, one after the other.
+ *
+ * <p/>
+ * This saves the per-task startup cost of jobs with many short splits. {@link DelegatingMapper} and
+ * {@link DelegatingRecordReader} both understand this split.
+ *
+ * @see DelegatingMapper
+ */
+public class MultiTaggedInputSplit extends InputSplit implements Configurable, Writable {
+
+    private List<TaggedInputSplit> splits;
+    private Configuration conf;
+    // not serialized: set by the task's DelegatingRecordReader, and read by its DelegatingMapper
+    private int currentSplit = -1;
+
+    public MultiTaggedInputSplit() {
+        // Default constructor
+    }
+
+    /**
+     * @param splits
+     *            the splits to run, in order.
+     * @param conf
+     *            the job configuration.
+     */
+    public MultiTaggedInputSplit(final List<TaggedInputSplit> splits, final Configuration conf) {
+        this.splits = Lists.newArrayList(splits);
+        this.conf = conf;
+    }
+
+    /**
+     * @return the tagged splits, in the order in which they are run.
+     */
+    public List<TaggedInputSplit> getSplits() {
+        return Collections.unmodifiableList(splits);
+    }
+
+    /**
+     * @return the index in {@link #getSplits()} of the tagged split that the {@link DelegatingRecordReader} of this
+     *         split is reading, or {@code -1} if it has not started reading yet.
+     */
+    public int getCurrentSplit() {
+        return currentSplit;
+    }
+
+    void setCurrentSplit(final int currentSplit) {
+        this.currentSplit = currentSplit;
+    }
+
+    @Override
+    public long getLength() throws IOException, InterruptedException {
+        long length = 0;
+        for (final TaggedInputSplit split : splits) {
+            length += split.getLength();
+        }
+        return length;
+    }
+
+    @Override
+    public String[] getLocations() throws IOException, InterruptedException {
+        final Set<String> locations = Sets.newLinkedHashSet();
+        for (final TaggedInputSplit split : splits) {
+            Collections.addAll(locations, split.getLocations());
+        }
+        return locations.toArray(new String[locations.size()]);
+    }
+
+    @Override
+    public void write(final DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, splits.size());
+        for (final TaggedInputSplit split : splits) {
+            split.write(out);
+        }
+    }
+
+    @Override
+    public void readFields(final DataInput in) throws IOException {
+        final int size = WritableUtils.readVInt(in);
+        splits = Lists.newArrayListWithCapacity(size);
+        for (int i = 0; i < size; i++) {
+            final TaggedInputSplit split = ReflectionUtils.newInstance(TaggedInputSplit.class, conf);
+            split.readFields(in);
+            splits.add(split);
+        }
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+
+    @Override
+    public void setConf(final Configuration conf) {
+        this.conf = conf;
+    }
+}
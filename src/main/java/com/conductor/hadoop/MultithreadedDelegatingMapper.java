@@ -0,0 +1,287 @@
+/**
+ * Copyright 2015 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.conductor.hadoop;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.*;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+
+/**
+ * A {@link DelegatingMapper} that runs {@code N} instances of the delegate {@link Mapper} of each
+ * {@link TaggedInputSplit} on their own threads, the way
+ * {@link org.apache.hadoop.mapreduce.lib.map.MultithreadedMapper} does for a single mapper. Use this when the delegate
+ * mappers are CPU-bound, so that a task can use more than one core.
+ *
+ * <p/>
+ * The task thread reads the split and hands copies of the records to the delegate mappers through a bounded queue.
+ * Delegate mappers must be thread-safe with respect to each other (every thread gets its own instance, so this is only
+ * a concern for static state, and mappers added with {@link DelegatingMapper#addReusableMapperClass(Job, Class)} are
+ * not reused here); writes to the context are synchronized, and records are not processed in order.
+ *
+ * <p/>
+ * A split is only done once every record read from it has been processed, so when the record reader commits its
+ * offset on close (as {@link com.conductor.kafka.hadoop.KafkaRecordReader} does) no unprocessed record is ever
+ * covered by the commit. If any delegate fails, reading stops and the task fails.
+ *
+ * <p/>
+ * Set this as the mapper class <em>after</em> calling
+ * {@link com.conductor.kafka.hadoop.MultipleKafkaInputFormat#addTopic(Job, String, String, Class)}, which sets
+ * {@link DelegatingMapper}.
+ */
+public class MultithreadedDelegatingMapper<K1, V1, K2, V2> extends DelegatingMapper<K1, V1, K2, V2> {
+
+    public static final String THREADS_CONF = "delegating.mapper.threads";
+    public static final String QUEUE_SIZE_CONF = "delegating.mapper.queue.size";
+
+    /**
+     * Default number of delegate mapper threads per task, 10.
+     */
+    public static final int DEFAULT_THREADS = 10;
+    /**
+     * Default number of records waiting to be mapped, 1000.
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    /**
+     * How often the task thread checks on the delegates while it waits for room in the queue.
+     */
+    private static final long OFFER_TIMEOUT_MS = 100;
+
+    @VisibleForTesting
+    static final Record END = new Record(null, null);
+
+    @Override
+    public void run(Context context) throws IOException, InterruptedException {
+        if (context.getInputSplit() instanceof MultiTaggedInputSplit) {
+            runTaggedSplits(context);
+        } else {
+            run((TaggedInputSplit) context.getInputSplit(), context, context);
+        }
+    }
+
+    /**
+     * Maps everything read from {@code input} with delegates of {@code split}, writing to {@code output}.
+     */
+    @Override
+    void run(TaggedInputSplit split, Mapper<K1, V1, K2, V2>.Context input, Context output) throws IOException,
+            InterruptedException {
+        Configuration conf = output.getConfiguration();
+        BlockingQueue<Record> queue = new ArrayBlockingQueue<Record>(getQueueSize(conf));
+        List<Worker> workers = Lists.newArrayList();
+        for (int i = 0; i < getNumberOfThreads(conf); i++) {
+            @SuppressWarnings("unchecked")
+            Mapper<K1, V1, K2, V2> mapper = (Mapper<K1, V1, K2, V2>) ReflectionUtils.newInstance(
+                    split.getMapperClass(), conf);
+            Worker worker = new Worker(mapper, createContext(output, new QueueRecordReader<K1, V1>(queue), split), i);
+            workers.add(worker);
+            worker.start();
+        }
+        try {
+            while (input.nextKeyValue()) {
+                Record record = new Record(copy(input.getCurrentKey(), conf), copy(input.getCurrentValue(), conf));
+                offer(queue, record, workers);
+            }
+            offer(queue, END, workers);
+            for (Worker worker : workers) {
+                worker.join();
+            }
+            checkWorkers(workers);
+        } finally {
+            // only does anything if we're bailing out early
+            for (Worker worker : workers) {
+                worker.interrupt();
+            }
+        }
+    }
+
+    private void offer(BlockingQueue<Record> queue, Record record, List<Worker> workers) throws IOException,
+            InterruptedException {
+        while (!queue.offer(record, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            checkWorkers(workers);
+        }
+    }
+
+    /**
+     * Rethrows the failure of any of the {@code workers}, and makes sure there's still someone left to take records off
+     * of the queue.
+     */
+    private void checkWorkers(List<Worker> workers) throws IOException, InterruptedException {
+        boolean alive = false;
+        for (Worker worker : workers) {
+            Throwable error = worker.error;
+            if (error instanceof IOException) {
+                throw (IOException) error;
+            } else if (error instanceof InterruptedException) {
+                throw (InterruptedException) error;
+            } else if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            } else if (error != null) {
+                throw new IOException(error);
+            }
+            alive |= worker.isAlive();
+        }
+        if (!alive) {
+            throw new IOException("Every delegate mapper returned before all of the records were mapped");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T copy(T value, Configuration conf) throws IOException {
+        return ReflectionUtils.copy(conf, value, (T) ReflectionUtils.newInstance(value.getClass(), conf));
+    }
+
+    /**
+     * Sets the number of delegate mapper threads per task (optional, defaults to {@link #DEFAULT_THREADS}).
+     * 
+     * @param job
+     *            the job being configured.
+     * @param threads
+     *            the number of threads.
+     */
+    public static void setNumberOfThreads(Job job, int threads) {
+        job.getConfiguration().setInt(THREADS_CONF, threads);
+    }
+
+    /**
+     * @param conf
+     *            the job configuration.
+     * @return the number of delegate mapper threads per task.
+     */
+    public static int getNumberOfThreads(Configuration conf) {
+        return conf.getInt(THREADS_CONF, DEFAULT_THREADS);
+    }
+
+    /**
+     * Sets the maximum number of records read ahead of the delegate mappers (optional, defaults to
+     * {@link #DEFAULT_QUEUE_SIZE}).
+     * 
+     * @param job
+     *            the job being configured.
+     * @param queueSize
+     *            the queue size.
+     */
+    public static void setQueueSize(Job job, int queueSize) {
+        job.getConfiguration().setInt(QUEUE_SIZE_CONF, queueSize);
+    }
+
+    /**
+     * @param conf
+     *            the job configuration.
+     * @return the maximum number of records read ahead of the delegate mappers.
+     */
+    public static int getQueueSize(Configuration conf) {
+        return conf.getInt(QUEUE_SIZE_CONF, DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * Runs one delegate mapper.
+     */
+    private class Worker extends Thread {
+        private final Mapper<K1, V1, K2, V2> mapper;
+        private final Mapper<K1, V1, K2, V2>.Context context;
+        private volatile Throwable error;
+
+        Worker(Mapper<K1, V1, K2, V2> mapper, Mapper<K1, V1, K2, V2>.Context context, int index) {
+            super("delegating-mapper-" + index);
+            this.mapper = mapper;
+            this.context = context;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                mapper.run(context);
+            } catch (Throwable t) {
+                error = t;
+            }
+        }
+    }
+
+    /**
+     * A copy of a record read by the task thread.
+     */
+    @VisibleForTesting
+    static class Record {
+        private final Object key;
+        private final Object value;
+
+        Record(Object key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Reads the records put on a queue by the task thread, until the {@link #END} marker.
+     */
+    @VisibleForTesting
+    static class QueueRecordReader<K, V> extends RecordReader<K, V> {
+        private final BlockingQueue<Record> queue;
+        private Record current;
+
+        QueueRecordReader(BlockingQueue<Record> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) {
+        }
+
+        @Override
+        public boolean nextKeyValue() throws InterruptedException {
+            if (current == END) {
+                return false;
+            }
+            current = queue.take();
+            if (current == END) {
+                // leave the marker for the other delegates
+                queue.put(END);
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public K getCurrentKey() {
+            return (K) current.key;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V getCurrentValue() {
+            return (V) current.value;
+        }
+
+        @Override
+        public float getProgress() {
+            return current == END ? 1 : 0;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.conductor.hadoop;
+
+/**
+ * Picks the subdirectory of the job output that a record is written to by {@link PartitionedOutputFormat}.
+ *
+ * <p/>
+ * Implementations must have a no-arg constructor, and may implement {@link org.apache.hadoop.conf.Configurable} to
+ * receive the job configuration. A single instance is used for every record of a task.
+ *
+ * @see HourlyOutputPathExtractor
+ */
+public interface OutputPathExtractor<K, V> {
+
+    /**
+     * Returns the subdirectory of a record.
+     *
+     * @param key
+     *            the output key.
+     * @param value
+     *            the output value.
+     * @return a relative, {@code /}-separated path, e.g. {@code my_key/dt=2014-10-13/hour=05}.
+     */
+    String getPath(K key, V value);
+}
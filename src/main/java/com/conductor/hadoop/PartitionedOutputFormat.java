@@ -0,0 +1,224 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.conductor.hadoop;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.*;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
+
+/**
+ * A {@link FileOutputFormat} that writes each record under the subdirectory of the job output picked by an
+ * {@link OutputPathExtractor}, e.g. one directory per key and hour (see {@link HourlyOutputPathExtractor}), so that
+ * downstream jobs can select their input by path instead of scanning whole runs.
+ *
+ * <p/>
+ * Every subdirectory gets its own file from a delegate {@link FileOutputFormat} ({@link SequenceFileOutputFormat} by
+ * default), named like the files of the delegate, e.g. {@code my_key/dt=2014-10-13/hour=05/part-m-00000}. At most
+ * {@link #setMaxOpenWriters(Job, int)} files are open at once per task; when another one is needed, the least recently
+ * used file is closed, and if that subdirectory comes up again, a new file is started next to it (e.g.
+ * {@code part_1-m-00000}).
+ *
+ * @see com.conductor.kafka.hadoop.KafkaJobBuilder#setPartitionedOutputFormat(Class)
+ */
+public class PartitionedOutputFormat<K, V> extends FileOutputFormat<K, V> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PartitionedOutputFormat.class);
+
+    public static final String PATH_EXTRACTOR_CONF = "partitioned.output.path.extractor.class";
+    public static final String OUTPUT_FORMAT_CONF = "partitioned.output.format.class";
+    public static final String MAX_OPEN_WRITERS_CONF = "partitioned.output.max.open.writers";
+    public static final int DEFAULT_MAX_OPEN_WRITERS = 32;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public RecordWriter<K, V> getRecordWriter(final TaskAttemptContext context) throws IOException,
+            InterruptedException {
+        final Configuration conf = context.getConfiguration();
+        final Class<? extends OutputPathExtractor> extractorClass = getPathExtractorClass(conf);
+        checkArgument(extractorClass != null, "Missing property: " + PATH_EXTRACTOR_CONF);
+        final FileOutputFormat<K, V> delegate = ReflectionUtils.newInstance(getOutputFormatClass(conf), conf);
+        return new PartitionedRecordWriter<K, V>(context, delegate, ReflectionUtils.newInstance(extractorClass, conf),
+                getMaxOpenWriters(conf));
+    }
+
+    /**
+     * Keeps a bounded, least recently used set of delegate writers open, one per subdirectory.
+     */
+    @VisibleForTesting
+    static class PartitionedRecordWriter<K, V> extends RecordWriter<K, V> {
+        private final TaskAttemptContext context;
+        private final FileOutputFormat<K, V> delegate;
+        private final OutputPathExtractor<K, V> extractor;
+        private final int maxOpenWriters;
+        private final String baseName;
+        // writers are re-inserted on every write, so the first one is the least recently used
+        private final Map<String, RecordWriter<K, V>> writers = Maps.newLinkedHashMap();
+        private final Map<String, Integer> timesOpened = Maps.newHashMap();
+
+        PartitionedRecordWriter(final TaskAttemptContext context, final FileOutputFormat<K, V> delegate,
+                final OutputPathExtractor<K, V> extractor, final int maxOpenWriters) {
+            this.context = context;
+            this.delegate = delegate;
+            this.extractor = extractor;
+            this.maxOpenWriters = maxOpenWriters;
+            this.baseName = context.getConfiguration().get(BASE_OUTPUT_NAME, PART);
+        }
+
+        @Override
+        public void write(final K key, final V value) throws IOException, InterruptedException {
+            final String path = extractor.getPath(key, value);
+            RecordWriter<K, V> writer = writers.remove(path);
+            if (writer == null) {
+                if (writers.size() >= maxOpenWriters) {
+                    final Iterator<RecordWriter<K, V>> eldest = writers.values().iterator();
+                    final RecordWriter<K, V> evicted = eldest.next();
+                    eldest.remove();
+                    evicted.close(context);
+                }
+                writer = open(path);
+            }
+            writers.put(path, writer);
+            writer.write(key, value);
+        }
+
+        private RecordWriter<K, V> open(final String path) throws IOException, InterruptedException {
+            checkArgument(!path.startsWith("/") && !path.contains(".."), "Not a relative path: %s", path);
+            final Integer opened = timesOpened.get(path);
+            timesOpened.put(path, opened == null ? 1 : opened + 1);
+            final String name = opened == null ? baseName : String.format("%s_%d", baseName, opened);
+            LOG.debug(String.format("Opening %s/%s", path, name));
+
+            // the delegate names its file after the base output name, which may contain directories
+            final Configuration conf = new Configuration(context.getConfiguration());
+            conf.set(BASE_OUTPUT_NAME, path + "/" + name);
+            return delegate.getRecordWriter(new TaskAttemptContextImpl(conf, context.getTaskAttemptID(),
+                    new ContextStatusReporter(context)));
+        }
+
+        @VisibleForTesting
+        int getOpenWriters() {
+            return writers.size();
+        }
+
+        @Override
+        public void close(final TaskAttemptContext context) throws IOException, InterruptedException {
+            for (final RecordWriter<K, V> writer : writers.values()) {
+                writer.close(context);
+            }
+            writers.clear();
+        }
+    }
+
+    /**
+     * Reports the progress and counters of the delegate writers through the task context.
+     */
+    private static class ContextStatusReporter extends StatusReporter {
+        private final TaskAttemptContext context;
+
+        ContextStatusReporter(final TaskAttemptContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public org.apache.hadoop.mapreduce.Counter getCounter(final Enum<?> name) {
+            return context.getCounter(name);
+        }
+
+        @Override
+        public org.apache.hadoop.mapreduce.Counter getCounter(final String group, final String name) {
+            return context.getCounter(group, name);
+        }
+
+        @Override
+        public void progress() {
+            context.progress();
+        }
+
+        @Override
+        public float getProgress() {
+            return context.getProgress();
+        }
+
+        @Override
+        public void setStatus(final String status) {
+            context.setStatus(status);
+        }
+    }
+
+    /**
+     * Sets the {@link OutputPathExtractor} that picks the subdirectory of every record (required).
+     *
+     * @param job
+     *            the job being configured.
+     * @param extractorClass
+     *            the extractor class.
+     */
+    public static void setPathExtractorClass(final Job job, final Class<? extends OutputPathExtractor> extractorClass) {
+        job.getConfiguration().setClass(PATH_EXTRACTOR_CONF, extractorClass, OutputPathExtractor.class);
+    }
+
+    public static Class<? extends OutputPathExtractor> getPathExtractorClass(final Configuration conf) {
+        return conf.getClass(PATH_EXTRACTOR_CONF, null, OutputPathExtractor.class);
+    }
+
+    /**
+     * Sets the {@link FileOutputFormat} that writes the file of each subdirectory (optional, defaults to
+     * {@link SequenceFileOutputFormat}).
+     *
+     * @param job
+     *            the job being configured.
+     * @param outputFormatClass
+     *            the delegate output format class.
+     */
+    public static void setOutputFormatClass(final Job job, final Class<? extends FileOutputFormat> outputFormatClass) {
+        job.getConfiguration().setClass(OUTPUT_FORMAT_CONF, outputFormatClass, FileOutputFormat.class);
+    }
+
+    public static Class<? extends FileOutputFormat> getOutputFormatClass(final Configuration conf) {
+        return conf.getClass(OUTPUT_FORMAT_CONF, SequenceFileOutputFormat.class, FileOutputFormat.class);
+    }
+
+    /**
+     * Sets the number of files each task may have open at once (optional, defaults to
+     * {@link #DEFAULT_MAX_OPEN_WRITERS}).
+     *
+     * @param job
+     *            the job being configured.
+     * @param maxOpenWriters
+     *            the maximum number of open files per task.
+     */
+    public static void setMaxOpenWriters(final Job job, final int maxOpenWriters) {
+        checkArgument(maxOpenWriters > 0, "maxOpenWriters must be positive.");
+        job.getConfiguration().setInt(MAX_OPEN_WRITERS_CONF, maxOpenWriters);
+    }
+
+    public static int getMaxOpenWriters(final Configuration conf) {
+        return conf.getInt(MAX_OPEN_WRITERS_CONF, DEFAULT_MAX_OPEN_WRITERS);
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+package com.conductor.hadoop;
+
+import java.io.IOException;
+
+import org.apache.hadoop.mapreduce.Mapper;
+
+/**
+ * A {@link Mapper} that a {@link TypeRoutingMapper} hands the values of one type, record by record. Implement it like
+ * any other mapper, by overriding {@link #setup(Context)}, {@link #map(Object, Object, Context)} and
+ * {@link #cleanup(Context)}; they are only re-declared here so that the router can call them.
+ *
+ * @param <K1>
+ *            the input key type.
+ * @param <V1>
+ *            the input value type, the type routed to this mapper.
+ * @param <K2>
+ *            the output key type.
+ * @param <V2>
+ *            the output value type.
+ */
+public abstract class RoutedMapper<K1, V1, K2, V2> extends Mapper<K1, V1, K2, V2> {
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        super.setup(context);
+    }
+
+    @Override
+    protected void map(K1 key, V1 value, Context context) throws IOException, InterruptedException {
+        super.map(key, value, context);
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        super.cleanup(context);
+    }
+}
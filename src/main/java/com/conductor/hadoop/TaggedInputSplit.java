@@ -14,15 +14,24 @@
 package com.conductor.hadoop;
 
 import java.io.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
 import org.apache.hadoop.io.serializer.*;
 import org.apache.hadoop.mapreduce.*;
 import org.apache.hadoop.util.ReflectionUtils;
 
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
 /**
  * An {@link InputSplit} that tags another InputSplit with extra data for use by DelegatingInputFormat's and
  * {@link DelegatingMapper}s.
@@ -31,6 +40,12 @@ import org.apache.hadoop.util.ReflectionUtils;
  * This package-private class is taken directly from the Hadoop source code, and made public here so that we can
  * leverage it for the {@link com.conductor.kafka.hadoop.MultipleKafkaInputFormat}.
  * 
+ * <p/>
+ * Unlike the Hadoop version, the classes of a split can be written as small ids into a job-level dictionary of class
+ * names (see {@link #addToClassDictionary(Configuration, Class...)}) instead of as three fully-qualified class names
+ * per split. Splits whose classes are not all in the dictionary are written the original way, and either format can be
+ * read.
+ * 
  * @see org.apache.hadoop.mapreduce.lib.input.TaggedInputSplit
  * @see DelegatingMapper
  * @see DelegatingRecordReader
@@ -38,6 +53,27 @@ import org.apache.hadoop.util.ReflectionUtils;
  */
 public class TaggedInputSplit extends InputSplit implements Configurable, Writable {
 
+    /**
+     * The configuration key of the class name dictionary.
+     */
+    public static final String CLASS_DICTIONARY_CONF = "tagged.input.split.class.dictionary";
+
+    /**
+     * Written in place of the length of the first class name to mark a split whose classes are written as dictionary
+     * ids; a string length is never negative.
+     */
+    private static final int DICTIONARY_MARKER = -1;
+
+    /**
+     * The last dictionary parsed; every split of a job shares the same dictionary, so one entry is plenty.
+     */
+    private static volatile ClassDictionary lastDictionary;
+
+    /**
+     * {@link SerializationFactory} is expensive to create, so the serialization of each input split class is cached.
+     */
+    private static final ConcurrentMap<Class<?>, Serialization<?>> SERIALIZATIONS = Maps.newConcurrentMap();
+
     private Class<? extends InputSplit> inputSplitClass;
 
     private InputSplit inputSplit;
@@ -115,18 +151,30 @@ public class TaggedInputSplit extends InputSplit implements Configurable, Writab
 
     @SuppressWarnings("unchecked")
     public void readFields(DataInput in) throws IOException {
-        inputSplitClass = (Class<? extends InputSplit>) readClass(in);
-        inputFormatClass = (Class<? extends InputFormat<?, ?>>) readClass(in);
-        mapperClass = (Class<? extends Mapper<?, ?, ?, ?>>) readClass(in);
+        final int marker = WritableUtils.readVInt(in);
+        if (marker == DICTIONARY_MARKER) {
+            final ClassDictionary dictionary = ClassDictionary.get(conf);
+            inputSplitClass = (Class<? extends InputSplit>) dictionary.getClass(WritableUtils.readVInt(in), conf);
+            inputFormatClass = (Class<? extends InputFormat<?, ?>>) dictionary
+                    .getClass(WritableUtils.readVInt(in), conf);
+            mapperClass = (Class<? extends Mapper<?, ?, ?, ?>>) dictionary.getClass(WritableUtils.readVInt(in), conf);
+        } else {
+            // the marker was the length of the first class name
+            inputSplitClass = (Class<? extends InputSplit>) getClassByName(readString(in, marker));
+            inputFormatClass = (Class<? extends InputFormat<?, ?>>) readClass(in);
+            mapperClass = (Class<? extends Mapper<?, ?, ?, ?>>) readClass(in);
+        }
         inputSplit = ReflectionUtils.newInstance(inputSplitClass, conf);
-        SerializationFactory factory = new SerializationFactory(conf);
-        Deserializer deserializer = factory.getDeserializer(inputSplitClass);
+        Deserializer deserializer = getSerialization(inputSplitClass, conf).getDeserializer(inputSplitClass);
         deserializer.open((DataInputStream) in);
         inputSplit = (InputSplit) deserializer.deserialize(inputSplit);
     }
 
     private Class<?> readClass(DataInput in) throws IOException {
-        String className = Text.readString(in);
+        return getClassByName(Text.readString(in));
+    }
+
+    private Class<?> getClassByName(String className) {
         try {
             return conf.getClassByName(className);
         } catch (ClassNotFoundException e) {
@@ -134,17 +182,111 @@ public class TaggedInputSplit extends InputSplit implements Configurable, Writab
         }
     }
 
+    private static String readString(DataInput in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        in.readFully(bytes, 0, length);
+        return Text.decode(bytes);
+    }
+
     @SuppressWarnings("unchecked")
     public void write(DataOutput out) throws IOException {
-        Text.writeString(out, inputSplitClass.getName());
-        Text.writeString(out, inputFormatClass.getName());
-        Text.writeString(out, mapperClass.getName());
-        SerializationFactory factory = new SerializationFactory(conf);
-        Serializer serializer = factory.getSerializer(inputSplitClass);
+        final ClassDictionary dictionary = ClassDictionary.get(conf);
+        final int inputSplitId = dictionary.getId(inputSplitClass);
+        final int inputFormatId = dictionary.getId(inputFormatClass);
+        final int mapperId = dictionary.getId(mapperClass);
+        if (inputSplitId >= 0 && inputFormatId >= 0 && mapperId >= 0) {
+            WritableUtils.writeVInt(out, DICTIONARY_MARKER);
+            WritableUtils.writeVInt(out, inputSplitId);
+            WritableUtils.writeVInt(out, inputFormatId);
+            WritableUtils.writeVInt(out, mapperId);
+        } else {
+            Text.writeString(out, inputSplitClass.getName());
+            Text.writeString(out, inputFormatClass.getName());
+            Text.writeString(out, mapperClass.getName());
+        }
+        Serializer serializer = getSerialization(inputSplitClass, conf).getSerializer(inputSplitClass);
         serializer.open((DataOutputStream) out);
         serializer.serialize(inputSplit);
     }
 
+    @SuppressWarnings("unchecked")
+    private static Serialization getSerialization(Class<?> clazz, Configuration conf) throws IOException {
+        Serialization<?> serialization = SERIALIZATIONS.get(clazz);
+        if (serialization == null) {
+            serialization = new SerializationFactory(conf).getSerialization(clazz);
+            if (serialization == null) {
+                throw new IOException("No serialization found for " + clazz);
+            }
+            SERIALIZATIONS.putIfAbsent(clazz, serialization);
+        }
+        return serialization;
+    }
+
+    /**
+     * Adds {@code classes} to the class name dictionary of {@code conf}, if they aren't already in it. Splits whose
+     * input split, input format and mapper classes are all in the dictionary are written compactly.
+     * <p/>
+     * The dictionary must be complete before any split is written, and must not change afterwards, so add to it while
+     * configuring the job.
+     * 
+     * @param conf
+     *            the job configuration.
+     * @param classes
+     *            the classes to add.
+     */
+    public static void addToClassDictionary(Configuration conf, Class<?>... classes) {
+        final List<String> names = Lists.newArrayList(conf.getTrimmedStrings(CLASS_DICTIONARY_CONF));
+        for (Class<?> clazz : classes) {
+            if (!names.contains(clazz.getName())) {
+                names.add(clazz.getName());
+            }
+        }
+        conf.set(CLASS_DICTIONARY_CONF, Joiner.on(',').join(names));
+    }
+
+    /**
+     * A parsed class name dictionary.
+     */
+    private static class ClassDictionary {
+        private final String value;
+        private final List<String> names;
+        private final Map<String, Integer> ids = Maps.newHashMap();
+
+        private ClassDictionary(String value) {
+            this.value = value;
+            this.names = value == null ? Lists.<String> newArrayList() : Arrays.asList(value.split(","));
+            for (int i = 0; i < names.size(); i++) {
+                ids.put(names.get(i), i);
+            }
+        }
+
+        static ClassDictionary get(Configuration conf) {
+            final String value = conf.get(CLASS_DICTIONARY_CONF);
+            ClassDictionary dictionary = lastDictionary;
+            if (dictionary == null || !(value == null ? dictionary.value == null : value.equals(dictionary.value))) {
+                dictionary = new ClassDictionary(value);
+                lastDictionary = dictionary;
+            }
+            return dictionary;
+        }
+
+        int getId(Class<?> clazz) {
+            final Integer id = ids.get(clazz.getName());
+            return id == null ? -1 : id;
+        }
+
+        Class<?> getClass(int id, Configuration conf) throws IOException {
+            if (id < 0 || id >= names.size()) {
+                throw new IOException(String.format("Class id %d is not in the dictionary %s", id, value));
+            }
+            try {
+                return conf.getClassByName(names.get(id));
+            } catch (ClassNotFoundException e) {
+                throw new RuntimeException("readObject can't find class", e);
+            }
+        }
+    }
+
     public Configuration getConf() {
         return conf;
     }
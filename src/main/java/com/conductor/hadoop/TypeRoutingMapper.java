@@ -0,0 +1,156 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+package com.conductor.hadoop;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+
+import com.google.common.collect.Maps;
+
+/**
+ * A {@link Mapper} that routes every record to a {@link RoutedMapper} by the class of its value, for inputs of
+ * several types, e.g. a topic decoded by a {@link com.conductor.kafka.hadoop.PayloadDecoder} of a union type. Add it
+ * as the mapper of a topic with {@link com.conductor.kafka.hadoop.MultipleKafkaInputFormat}, which then reads the
+ * topic with {@link com.conductor.kafka.hadoop.KafkaDecodedInputFormat}, so that {@link DelegatingMapper} runs it for
+ * the topic's splits.
+ *
+ * <p/>
+ * A value goes to the mapper of the first route, in the order they were added, whose class the value is an instance
+ * of; values without a route are dropped and counted by {@link Counter#UNROUTED}. Every routed mapper class is
+ * instantiated once per split (or once per JVM, see {@link DelegatingMapper#addReusableMapperClass(Job, Class)}), and
+ * set up and cleaned up with the split.
+ *
+ * @param <K1>
+ *            the input key type.
+ * @param <K2>
+ *            the output key type.
+ * @param <V2>
+ *            the output value type.
+ */
+public class TypeRoutingMapper<K1, K2, V2> extends Mapper<K1, Object, K2, V2> {
+
+    public static final String ROUTES_CONF = "type.routing.mapper.routes";
+
+    public static enum Counter {
+        /**
+         * The number of values that no route matched.
+         */
+        UNROUTED
+    }
+
+    /**
+     * The routed mapper of each value class seen so far, {@code null} for those without a route.
+     */
+    private final Map<Class<?>, RoutedMapper> routes = Maps.newHashMap();
+    private Map<Class<?>, RoutedMapper> mappers;
+    private Map<Class<?>, RoutedMapper> instances;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void run(Context context) throws IOException, InterruptedException {
+        setup(context);
+        try {
+            for (RoutedMapper mapper : instances.values()) {
+                mapper.setup(context);
+            }
+            while (context.nextKeyValue()) {
+                final Object value = context.getCurrentValue();
+                final RoutedMapper mapper = getRoute(value.getClass());
+                if (mapper == null) {
+                    context.getCounter(Counter.UNROUTED).increment(1);
+                } else {
+                    mapper.map(context.getCurrentKey(), value, context);
+                }
+            }
+            for (RoutedMapper mapper : instances.values()) {
+                mapper.cleanup(context);
+            }
+        } finally {
+            cleanup(context);
+        }
+    }
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        final Configuration conf = context.getConfiguration();
+        // one instance per mapper class, however many value classes it is routed
+        instances = Maps.newLinkedHashMap();
+        mappers = Maps.newLinkedHashMap();
+        for (Map.Entry<Class<?>, Class<? extends RoutedMapper>> route : getRoutes(conf).entrySet()) {
+            RoutedMapper mapper = instances.get(route.getValue());
+            if (mapper == null) {
+                mapper = (RoutedMapper) DelegatingMapper.getMapper(route.getValue(), conf);
+                instances.put(route.getValue(), mapper);
+            }
+            mappers.put(route.getKey(), mapper);
+        }
+        routes.clear();
+    }
+
+    private RoutedMapper getRoute(Class<?> valueClass) {
+        if (routes.containsKey(valueClass)) {
+            return routes.get(valueClass);
+        }
+        RoutedMapper route = null;
+        for (Map.Entry<Class<?>, RoutedMapper> mapper : mappers.entrySet()) {
+            if (mapper.getKey().isAssignableFrom(valueClass)) {
+                route = mapper.getValue();
+                break;
+            }
+        }
+        routes.put(valueClass, route);
+        return route;
+    }
+
+    /**
+     * Routes the values of {@code valueClass}, and of its subclasses, to {@code mapperClass}.
+     * 
+     * @param job
+     *            the job being configured.
+     * @param valueClass
+     *            the value class.
+     * @param mapperClass
+     *            the mapper of the values.
+     */
+    public static void addRoute(Job job, Class<?> valueClass, Class<? extends RoutedMapper> mapperClass) {
+        Configuration conf = job.getConfiguration();
+        String route = valueClass.getName() + "=" + mapperClass.getName();
+        String existing = conf.get(ROUTES_CONF);
+        conf.set(ROUTES_CONF, existing == null || existing.isEmpty() ? route : existing + "," + route);
+    }
+
+    /**
+     * @param conf
+     *            the job configuration.
+     * @return the mapper class of each value class added with {@link #addRoute(Job, Class, Class)}, in order.
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<Class<?>, Class<? extends RoutedMapper>> getRoutes(Configuration conf) {
+        Map<Class<?>, Class<? extends RoutedMapper>> routes = Maps.newLinkedHashMap();
+        for (String route : conf.getTrimmedStringCollection(ROUTES_CONF)) {
+            String[] classes = route.split("=");
+            try {
+                routes.put(conf.getClassByName(classes[0]),
+                        (Class<? extends RoutedMapper>) conf.getClassByName(classes[1]));
+            } catch (ClassNotFoundException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return routes;
+    }
+}
@@ -14,19 +14,31 @@
 
 package com.conductor.kafka;
 
+import static com.conductor.kafka.VersionedWritables.VERSIONED_MARKER;
+
 import java.io.*;
 
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
 
 import com.google.common.base.Objects;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 
 /**
  * Wraps Kafka broker information, namely {@code host:port}, and {@code broker id}.
  * 
+ * <p/>
+ * Brokers are written with varints; the original (fixed-width) encoding can still be read.
+ * 
  * @author <a href="mailto:cgreen@conductor.com">Casey Green</a>
  */
 public class Broker implements Writable {
 
+    private static final int VERSION = 1;
+    private static final Interner<Broker> INTERNER = Interners.newWeakInterner();
+
     private int id;
     private String host;
     private int port;
@@ -72,9 +84,17 @@ public class Broker implements Writable {
      */
     @Override
     public void write(final DataOutput dataOutput) throws IOException {
-        dataOutput.writeUTF(host);
-        dataOutput.writeInt(port);
-        dataOutput.writeInt(id);
+        VersionedWritables.writeVersion(dataOutput, VERSION);
+        writeFields(dataOutput);
+    }
+
+    /**
+     * Writes the fields of the current version, without the version header.
+     */
+    void writeFields(final DataOutput dataOutput) throws IOException {
+        WritableUtils.writeVInt(dataOutput, id);
+        WritableUtils.writeVInt(dataOutput, port);
+        Text.writeString(dataOutput, host);
     }
 
     /**
@@ -82,9 +102,36 @@ public class Broker implements Writable {
      */
     @Override
     public void readFields(final DataInput dataInput) throws IOException {
-        this.host = dataInput.readUTF();
-        this.port = dataInput.readInt();
-        this.id = dataInput.readInt();
+        final int hostLength = dataInput.readUnsignedShort();
+        if (hostLength == VERSIONED_MARKER) {
+            VersionedWritables.readVersion(dataInput, VERSION, Broker.class);
+            readFieldsOfVersion(dataInput);
+        } else {
+            this.host = VersionedWritables.readUTF(dataInput, hostLength);
+            this.port = dataInput.readInt();
+            this.id = dataInput.readInt();
+        }
+    }
+
+    /**
+     * Reads the fields written by {@link #writeFields(DataOutput)}.
+     */
+    void readFieldsOfVersion(final DataInput dataInput) throws IOException {
+        this.id = WritableUtils.readVInt(dataInput);
+        this.port = WritableUtils.readVInt(dataInput);
+        this.host = Text.readString(dataInput);
+    }
+
+    /**
+     * Returns the canonical instance equal to {@code broker}, so that the many splits read from the same broker can
+     * share a single instance. Interned instances are shared, so they must not be modified.
+     * 
+     * @param broker
+     *            the broker.
+     * @return the canonical instance.
+     */
+    public static Broker intern(final Broker broker) {
+        return INTERNER.intern(broker);
     }
 
     @Override
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ */
+
+package com.conductor.kafka;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Stores the offsets consumer groups have committed for each {@link Partition}.
+ * 
+ * <p/>
+ * Offsets can be set "temporarily" by each task of a job, and then committed at once when the whole job has succeeded
+ * (see {@link #commit(String, String)}).
+ * 
+ * @see com.conductor.kafka.zk.ZkUtils
+ * @see com.conductor.kafka.hadoop.HdfsOffsetStore
+ * @see com.conductor.kafka.hadoop.KafkaInputFormat#setOffsetStoreClass(org.apache.hadoop.mapreduce.Job, Class)
+ */
+public interface OffsetStore extends Closeable {
+
+    /**
+     * Gets the last commit made by the {@code group} on the {@code topic-partition}.
+     * 
+     * @param group
+     *            the consumer group.
+     * @param partition
+     *            the partition.
+     * @return the last offset, {@code -1} if the {@code group} has never committed an offset.
+     * @throws IOException
+     */
+    long getLastCommit(String group, Partition partition) throws IOException;
+
+    /**
+     * Sets the last offset to {@code commit} of the {@code group} for the given {@code topic-partition}.
+     * 
+     * @param group
+     *            the consumer group.
+     * @param partition
+     *            the partition.
+     * @param commit
+     *            the commit offset.
+     * @param temp
+     *            If {@code temp == true}, this will "temporarily" set the offset, in which case the user must call
+     *            {@link #commit(String, String)} once <em>all</em> topic partitions have been consumed.
+     * @throws IOException
+     */
+    void setLastCommit(String group, Partition partition, long commit, boolean temp) throws IOException;
+
+    /**
+     * Sets the last offsets of the {@code group} for several partitions at once, bypassing temporary offsets.
+     * 
+     * @param group
+     *            the consumer group.
+     * @param commits
+     *            the commit offset of each partition.
+     * @throws IOException
+     */
+    void setLastCommits(String group, Map<Partition, Long> commits) throws IOException;
+
+    /**
+     * Commits any temporary offsets of the {@code group} for a given {@code topic}.
+     * 
+     * @param group
+     *            the consumer group.
+     * @param topic
+     *            the topic.
+     * @return true if the commit was successful, false otherwise.
+     * @throws IOException
+     */
+    boolean commit(String group, String topic) throws IOException;
+}
@@ -14,19 +14,33 @@
 
 package com.conductor.kafka;
 
+import static com.conductor.kafka.VersionedWritables.VERSIONED_MARKER;
+
 import java.io.*;
 
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
 
 import com.google.common.base.Objects;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 
 /**
  * Wraps Kafka partition information, namely the hosting {@link Broker}, the {@code topic} and {@code partition id}.
  * 
+ * <p/>
+ * Partitions are written with varints; the original (fixed-width) encoding can still be read. A job typically reads
+ * thousands of splits from a handful of brokers and topics, so the topic and {@link Broker} of a partition that is read
+ * are interned (see {@link Broker#intern(Broker)}).
+ * 
  * @author <a href="mailto:cgreen@conductor.com">Casey Green</a>
  */
 public class Partition implements Writable {
 
+    private static final int VERSION = 1;
+    private static final Interner<String> TOPICS = Interners.newWeakInterner();
+
     private String topic;
     private int partId;
     private Broker broker;
@@ -81,9 +95,10 @@ public class Partition implements Writable {
      */
     @Override
     public void write(final DataOutput dataOutput) throws IOException {
-        dataOutput.writeUTF(topic);
-        dataOutput.writeInt(partId);
-        broker.write(dataOutput);
+        VersionedWritables.writeVersion(dataOutput, VERSION);
+        Text.writeString(dataOutput, topic);
+        WritableUtils.writeVInt(dataOutput, partId);
+        broker.writeFields(dataOutput);
     }
 
     /**
@@ -91,10 +106,19 @@ public class Partition implements Writable {
      */
     @Override
     public void readFields(final DataInput dataInput) throws IOException {
-        this.topic = dataInput.readUTF();
-        this.partId = dataInput.readInt();
-        this.broker = new Broker();
-        this.broker.readFields(dataInput);
+        final Broker broker = new Broker();
+        final int topicLength = dataInput.readUnsignedShort();
+        if (topicLength == VERSIONED_MARKER) {
+            VersionedWritables.readVersion(dataInput, VERSION, Partition.class);
+            this.topic = TOPICS.intern(Text.readString(dataInput));
+            this.partId = WritableUtils.readVInt(dataInput);
+            broker.readFieldsOfVersion(dataInput);
+        } else {
+            this.topic = TOPICS.intern(VersionedWritables.readUTF(dataInput, topicLength));
+            this.partId = dataInput.readInt();
+            broker.readFields(dataInput);
+        }
+        this.broker = Broker.intern(broker);
     }
 
     @Override
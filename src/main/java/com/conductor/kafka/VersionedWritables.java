@@ -0,0 +1,59 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ */
+
+package com.conductor.kafka;
+
+import java.io.*;
+
+/**
+ * Helpers for the versioned encodings of {@link Broker} and {@link Partition}.
+ * 
+ * <p/>
+ * The original encodings start with a string written by {@link DataOutput#writeUTF(String)}, i.e. with its length as
+ * an unsigned short. Kafka topic names and broker host names are far shorter than {@link #VERSIONED_MARKER}, so the
+ * versioned encodings start with that marker in place of the length, followed by a version byte.
+ */
+final class VersionedWritables {
+
+    static final int VERSIONED_MARKER = 0xFFFF;
+
+    private VersionedWritables() {
+    }
+
+    static void writeVersion(final DataOutput out, final int version) throws IOException {
+        out.writeShort(VERSIONED_MARKER);
+        out.writeByte(version);
+    }
+
+    /**
+     * Reads and checks the version that follows {@link #VERSIONED_MARKER}.
+     */
+    static void readVersion(final DataInput in, final int expected, final Class<?> type) throws IOException {
+        final int version = in.readByte();
+        if (version != expected) {
+            throw new IOException(String.format("Unsupported %s version %d", type.getSimpleName(), version));
+        }
+    }
+
+    /**
+     * Finishes reading a string written by {@link DataOutput#writeUTF(String)}, whose {@code length} was already read.
+     */
+    static String readUTF(final DataInput in, final int length) throws IOException {
+        final byte[] bytes = new byte[length + 2];
+        bytes[0] = (byte) (length >>> 8);
+        bytes[1] = (byte) length;
+        in.readFully(bytes, 2, length);
+        return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+    }
+}
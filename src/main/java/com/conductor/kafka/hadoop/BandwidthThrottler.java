@@ -0,0 +1,93 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+package com.conductor.kafka.hadoop;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Keeps the average rate at which a {@link KafkaRecordReader} fetches from a broker at or below a limit, by sleeping
+ * after fetches that get ahead of it. At most one second's worth of bytes can be fetched in a burst after the reader
+ * has been idle, e.g. while its mapper worked.
+ *
+ * @see KafkaInputFormat#setMaxBrokerBytesPerSecond(org.apache.hadoop.mapreduce.Job, long)
+ */
+class BandwidthThrottler {
+
+    private static final long MAX_BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long bytesPerSecond;
+    private long startNanos = -1;
+    private long bytes;
+    private long throttledMs;
+
+    /**
+     * @param bytesPerSecond
+     *            the maximum average rate.
+     */
+    BandwidthThrottler(final long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Accounts for {@code bytes} that were just fetched, sleeping until fetching them is within the limit.
+     *
+     * @param bytes
+     *            the number of bytes fetched.
+     * @throws InterruptedException
+     */
+    void throttle(final long bytes) throws InterruptedException {
+        final long now = nanoTime();
+        if (startNanos < 0) {
+            startNanos = now;
+        }
+        final long idle = now - getDueNanos();
+        if (idle > MAX_BURST_NANOS) {
+            // don't let an idle reader build up more than a burst's worth of credit
+            startNanos += idle - MAX_BURST_NANOS;
+        }
+        this.bytes += bytes;
+        final long due = getDueNanos();
+        final long waitMs = TimeUnit.NANOSECONDS.toMillis(due - now);
+        if (waitMs > 0) {
+            sleep(waitMs);
+            throttledMs += waitMs;
+        }
+    }
+
+    /**
+     * @return when all of the bytes fetched so far may have been fetched.
+     */
+    private long getDueNanos() {
+        return startNanos + (long) (bytes * (double) TimeUnit.SECONDS.toNanos(1) / bytesPerSecond);
+    }
+
+    /**
+     * @return the total time spent sleeping, in milliseconds.
+     */
+    long getThrottledMs() {
+        return throttledMs;
+    }
+
+    @VisibleForTesting
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @VisibleForTesting
+    void sleep(final long ms) throws InterruptedException {
+        Thread.sleep(ms);
+    }
+}
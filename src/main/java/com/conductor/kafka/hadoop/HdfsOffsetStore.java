@@ -0,0 +1,261 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.conductor.kafka.hadoop;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.*;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.*;
+import org.apache.hadoop.mapreduce.Job;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.conductor.kafka.OffsetStore;
+import com.conductor.kafka.Partition;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+
+/**
+ * An {@link OffsetStore} that keeps all of the offsets of a consumer group for a topic in a single small file on HDFS
+ * (or any other Hadoop {@link FileSystem}), rather than one Zookeeper node per partition:
+ *
+ * <pre>
+ * ${kafka.offset.store.hdfs.path}/group/topic/offsets        # committed offsets, one "brokerId-partId offset" per line
+ * ${kafka.offset.store.hdfs.path}/group/topic/offsets-temp/  # temporary offsets, one file per partition
+ * </pre>
+ *
+ * Planning a job reads the {@code offsets} file once, and committing the temporary offsets of a job rewrites it once,
+ * atomically (the new file is written next to it and renamed over it).
+ *
+ * <p/>
+ * To use it, call {@link KafkaInputFormat#setOffsetStoreClass(Job, Class)} and {@link #setPath(Job, Path)}, and commit
+ * with {@link KafkaInputFormat#newOffsetStore(Configuration)}:
+ *
+ * <pre>
+ * <code>
+ * KafkaInputFormat.setOffsetStoreClass(job, HdfsOffsetStore.class);
+ * HdfsOffsetStore.setPath(job, new Path("/kafka/offsets"));
+ * ...
+ * if (job.waitForCompletion(true)) {
+ *     final OffsetStore offsetStore = KafkaInputFormat.newOffsetStore(job.getConfiguration());
+ *     offsetStore.commit("my_consumer_group", "my_topic");
+ *     offsetStore.close();
+ * }
+ * </code>
+ * </pre>
+ *
+ * Offsets of a group/topic must only be committed by one client at a time.
+ */
+public class HdfsOffsetStore implements OffsetStore, Configurable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HdfsOffsetStore.class);
+
+    private Configuration conf;
+    private FileSystem fs;
+    private Path root;
+    // offsets read so far, by group/topic directory
+    private final Map<Path, Map<String, Long>> cache = Maps.newHashMap();
+
+    /**
+     * The {@link org.apache.hadoop.util.ReflectionUtils} constructor; use {@link #HdfsOffsetStore(Configuration)}.
+     */
+    public HdfsOffsetStore() {
+    }
+
+    /**
+     * @param conf
+     *            a configuration with {@link #setPath(Job, Path)} set.
+     */
+    public HdfsOffsetStore(final Configuration conf) {
+        setConf(conf);
+    }
+
+    @VisibleForTesting
+    HdfsOffsetStore(final FileSystem fs, final Path root, final Configuration conf) {
+        this.conf = conf;
+        this.fs = fs;
+        this.root = root;
+    }
+
+    @Override
+    public void setConf(final Configuration conf) {
+        this.conf = conf;
+        final Path path = checkNotNull(getPath(conf), "kafka.offset.store.hdfs.path is not set.");
+        try {
+            this.fs = path.getFileSystem(conf);
+        } catch (final IOException e) {
+            throw new IllegalStateException("Could not get the file system of " + path, e);
+        }
+        this.root = fs.makeQualified(path);
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+
+    @Override
+    public synchronized long getLastCommit(final String group, final Partition partition) throws IOException {
+        final Path dir = getDir(group, partition.getTopic());
+        if (!cache.containsKey(dir)) {
+            cache.put(dir, readOffsets(dir));
+        }
+        final Long offset = cache.get(dir).get(partition.getBrokerPartition());
+        return offset == null ? -1L : offset;
+    }
+
+    @Override
+    public void setLastCommit(final String group, final Partition partition, final long commit, final boolean temp)
+            throws IOException {
+        if (temp) {
+            final Path path = new Path(getTempDir(group, partition.getTopic()), partition.getBrokerPartition());
+            final OutputStream out = fs.create(path, true);
+            try {
+                out.write(String.valueOf(commit).getBytes(Charsets.UTF_8));
+            } finally {
+                out.close();
+            }
+        } else {
+            final Map<Partition, Long> commits = Maps.newHashMap();
+            commits.put(partition, commit);
+            setLastCommits(group, commits);
+        }
+    }
+
+    @Override
+    public synchronized void setLastCommits(final String group, final Map<Partition, Long> commits)
+            throws IOException {
+        final Map<String, Map<String, Long>> topicCommits = Maps.newHashMap();
+        for (final Map.Entry<Partition, Long> commit : commits.entrySet()) {
+            final String topic = commit.getKey().getTopic();
+            if (!topicCommits.containsKey(topic)) {
+                topicCommits.put(topic, Maps.<String, Long> newHashMap());
+            }
+            topicCommits.get(topic).put(commit.getKey().getBrokerPartition(), commit.getValue());
+        }
+        for (final Map.Entry<String, Map<String, Long>> entry : topicCommits.entrySet()) {
+            final Path dir = getDir(group, entry.getKey());
+            final Map<String, Long> offsets = readOffsets(dir);
+            offsets.putAll(entry.getValue());
+            writeOffsets(dir, offsets);
+        }
+    }
+
+    @Override
+    public synchronized boolean commit(final String group, final String topic) throws IOException {
+        final Path tempDir = getTempDir(group, topic);
+        if (!fs.exists(tempDir)) {
+            return true;
+        }
+        final Path dir = getDir(group, topic);
+        final Map<String, Long> offsets = readOffsets(dir);
+        for (final FileStatus status : fs.listStatus(tempDir)) {
+            final InputStream in = fs.open(status.getPath());
+            try {
+                offsets.put(status.getPath().getName(), Long.valueOf(IOUtils.toString(in, "UTF-8").trim()));
+            } finally {
+                in.close();
+            }
+        }
+        writeOffsets(dir, offsets);
+        fs.delete(tempDir, true);
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the file system is shared, and there is nothing else to release
+    }
+
+    private Map<String, Long> readOffsets(final Path dir) throws IOException {
+        final Map<String, Long> offsets = Maps.newTreeMap();
+        final Path path = new Path(dir, "offsets");
+        if (!fs.exists(path)) {
+            return offsets;
+        }
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(path), Charsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] brokerPartitionOffset = line.trim().split("\\s+");
+                if (brokerPartitionOffset.length == 2) {
+                    offsets.put(brokerPartitionOffset[0], Long.valueOf(brokerPartitionOffset[1]));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return offsets;
+    }
+
+    /**
+     * Replaces the offsets file of {@code dir} atomically, so that readers see either all or none of the new offsets.
+     */
+    private void writeOffsets(final Path dir, final Map<String, Long> offsets) throws IOException {
+        final Path tmp = new Path(dir, String.format(".offsets-%s.tmp", UUID.randomUUID()));
+        final Writer writer = new OutputStreamWriter(fs.create(tmp, false), Charsets.UTF_8);
+        try {
+            for (final Map.Entry<String, Long> offset : offsets.entrySet()) {
+                writer.write(String.format("%s\t%d\n", offset.getKey(), offset.getValue()));
+            }
+        } finally {
+            writer.close();
+        }
+        FileContext.getFileContext(fs.getUri(), conf).rename(tmp, new Path(dir, "offsets"), Options.Rename.OVERWRITE);
+        cache.remove(dir);
+        LOG.info(String.format("Wrote %d offsets to %s", offsets.size(), dir));
+    }
+
+    @VisibleForTesting
+    Path getDir(final String group, final String topic) {
+        return new Path(new Path(root, group), topic);
+    }
+
+    @VisibleForTesting
+    Path getTempDir(final String group, final String topic) {
+        return new Path(getDir(group, topic), "offsets-temp");
+    }
+
+    /**
+     * Sets the directory under which {@link HdfsOffsetStore} keeps its offsets (required).
+     *
+     * @param job
+     *            the job being configured.
+     * @param path
+     *            the root directory of the offsets.
+     */
+    public static void setPath(final Job job, final Path path) {
+        job.getConfiguration().set("kafka.offset.store.hdfs.path", path.toString());
+    }
+
+    /**
+     * Gets the directory under which {@link HdfsOffsetStore} keeps its offsets.
+     *
+     * @param conf
+     *            the job conf.
+     * @return the root directory of the offsets, {@code null} if it has not been set.
+     */
+    public static Path getPath(final Configuration conf) {
+        final String path = conf.get("kafka.offset.store.hdfs.path");
+        return path == null ? null : new Path(path);
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.conductor.kafka.hadoop;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.*;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Reads the same splits as {@link KafkaInputFormat}, and with the same settings, but hands mappers a whole message set
+ * at a time as a {@link KafkaRecordBatch}, keyed by the offset of its first message. For topics with many small
+ * messages, this saves the per-record work of the map task (a {@code map} call, and a key and value handed through
+ * the context) for every message; see {@link KafkaBatchMapper}. Note that the {@link KafkaRecordReader} still
+ * iterates, filters and copies the messages into the batch one at a time.
+ *
+ * <p/>
+ * With {@link MultipleKafkaInputFormat}, topics whose mapper is a {@link KafkaBatchMapper} are read with this input
+ * format. Batches are reused, so they cannot be used with
+ * {@link com.conductor.hadoop.MultithreadedDelegatingMapper}.
+ */
+public class KafkaBatchInputFormat extends InputFormat<LongWritable, KafkaRecordBatch> {
+
+    @Override
+    public List<InputSplit> getSplits(final JobContext context) throws IOException, InterruptedException {
+        return new KafkaInputFormat().getSplits(context);
+    }
+
+    @Override
+    public RecordReader<LongWritable, KafkaRecordBatch> createRecordReader(final InputSplit inputSplit,
+            final TaskAttemptContext context) throws IOException, InterruptedException {
+        return new KafkaBatchRecordReader(new KafkaRecordReader());
+    }
+
+    /**
+     * Reads the batches of a {@link KafkaRecordReader}.
+     */
+    @VisibleForTesting
+    static class KafkaBatchRecordReader extends RecordReader<LongWritable, KafkaRecordBatch> {
+        private final KafkaRecordReader reader;
+        private final LongWritable key = new LongWritable();
+        private final KafkaRecordBatch batch = new KafkaRecordBatch();
+
+        KafkaBatchRecordReader(final KafkaRecordReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public void initialize(final InputSplit split, final TaskAttemptContext context) throws IOException,
+                InterruptedException {
+            reader.initialize(split, context);
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException, InterruptedException {
+            if (!reader.nextBatch(batch)) {
+                return false;
+            }
+            key.set(batch.getOffsets()[0]);
+            return true;
+        }
+
+        @Override
+        public LongWritable getCurrentKey() throws IOException, InterruptedException {
+            return key;
+        }
+
+        @Override
+        public KafkaRecordBatch getCurrentValue() throws IOException, InterruptedException {
+            return batch;
+        }
+
+        @Override
+        public float getProgress() throws IOException, InterruptedException {
+            return reader.getProgress();
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.conductor.kafka.hadoop;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.Mapper;
+
+/**
+ * A {@link Mapper} over the {@link KafkaRecordBatch}es of a {@link KafkaBatchInputFormat}: implement
+ * {@link #map(KafkaRecordBatch, Context)} to process a whole message set at once.
+ *
+ * <p/>
+ * Hadoop's map input record counter counts batches; the number of messages is counted by {@link Counter#MESSAGES}.
+ *
+ * @param <K>
+ *            the output key type.
+ * @param <V>
+ *            the output value type.
+ */
+public abstract class KafkaBatchMapper<K, V> extends Mapper<LongWritable, KafkaRecordBatch, K, V> {
+
+    public static enum Counter {
+        /**
+         * The number of messages mapped.
+         */
+        MESSAGES
+    }
+
+    @Override
+    protected final void map(final LongWritable firstOffset, final KafkaRecordBatch batch, final Context context)
+            throws IOException, InterruptedException {
+        context.getCounter(Counter.MESSAGES).increment(batch.size());
+        map(batch, context);
+    }
+
+    /**
+     * Maps the messages of a batch.
+     *
+     * @param batch
+     *            the batch, valid until this method returns.
+     * @param context
+     *            the task context.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    protected abstract void map(KafkaRecordBatch batch, Context context) throws IOException, InterruptedException;
+}
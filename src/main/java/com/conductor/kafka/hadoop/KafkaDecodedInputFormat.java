@@ -0,0 +1,113 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+package com.conductor.kafka.hadoop;
+
+import java.io.IOException;
+import java.util.List;
+
+import kafka.message.MessageAndOffset;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.*;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Reads the same splits as {@link KafkaInputFormat}, and with the same settings, but decodes every message with the
+ * {@link PayloadDecoder} set by {@link KafkaInputFormat#setPayloadDecoderClass(Job, Class)}, straight from the fetched
+ * message set rather than from a copy in a {@link org.apache.hadoop.io.BytesWritable}. Values are keyed by the offset
+ * of their message, like those of {@link KafkaInputFormat}; messages the decoder skips are never handed to the mapper.
+ *
+ * <p/>
+ * With {@link MultipleKafkaInputFormat}, topics mapped by a {@link com.conductor.hadoop.TypeRoutingMapper} are read
+ * with this input format. Decoders may reuse their values, so with
+ * {@link com.conductor.hadoop.MultithreadedDelegatingMapper} the values must be serializable by Hadoop, e.g.
+ * {@link org.apache.hadoop.io.Writable}, for the records to be copied.
+ */
+public class KafkaDecodedInputFormat extends InputFormat<LongWritable, Object> {
+
+    @Override
+    public List<InputSplit> getSplits(final JobContext context) throws IOException, InterruptedException {
+        return new KafkaInputFormat().getSplits(context);
+    }
+
+    @Override
+    public RecordReader<LongWritable, Object> createRecordReader(final InputSplit inputSplit,
+            final TaskAttemptContext context) throws IOException, InterruptedException {
+        return new KafkaDecodedRecordReader(new KafkaRecordReader());
+    }
+
+    /**
+     * Decodes the messages of a {@link KafkaRecordReader}.
+     */
+    @VisibleForTesting
+    static class KafkaDecodedRecordReader extends RecordReader<LongWritable, Object> {
+        private final KafkaRecordReader reader;
+        private final LongWritable key = new LongWritable();
+        private PayloadDecoder<?> decoder;
+        private Object value;
+
+        KafkaDecodedRecordReader(final KafkaRecordReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public void initialize(final InputSplit split, final TaskAttemptContext context) throws IOException,
+                InterruptedException {
+            final Class<? extends PayloadDecoder> decoderClass = KafkaInputFormat.getPayloadDecoderClass(context
+                    .getConfiguration());
+            if (decoderClass == null) {
+                throw new IllegalArgumentException("No payload decoder set, see "
+                        + "KafkaInputFormat.setPayloadDecoderClass(Job, Class)");
+            }
+            decoder = ReflectionUtils.newInstance(decoderClass, context.getConfiguration());
+            reader.initialize(split, context);
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException, InterruptedException {
+            MessageAndOffset msg;
+            while ((msg = reader.nextMessage()) != null) {
+                value = decoder.decode(msg.offset(), msg.message().payload());
+                if (value != null) {
+                    key.set(msg.offset());
+                    return true;
+                }
+            }
+            value = null;
+            return false;
+        }
+
+        @Override
+        public LongWritable getCurrentKey() throws IOException, InterruptedException {
+            return key;
+        }
+
+        @Override
+        public Object getCurrentValue() throws IOException, InterruptedException {
+            return value;
+        }
+
+        @Override
+        public float getProgress() throws IOException, InterruptedException {
+            return reader.getProgress();
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
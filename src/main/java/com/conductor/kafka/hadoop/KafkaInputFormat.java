@@ -15,8 +15,9 @@
 package com.conductor.kafka.hadoop;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 
 import kafka.api.OffsetRequest;
 import kafka.consumer.SimpleConsumer;
@@ -26,15 +27,20 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.mapreduce.*;
+import org.apache.hadoop.util.ReflectionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.conductor.kafka.Broker;
+import com.conductor.kafka.OffsetStore;
 import com.conductor.kafka.Partition;
 import com.conductor.kafka.zk.ZkUtils;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * An {@link InputFormat} that splits up Kafka {@link Broker}-{@link Partition}s further into a set of offsets.
@@ -92,6 +98,42 @@ public class KafkaInputFormat extends InputFormat<LongWritable, BytesWritable> {
      * Default timestamp to include
      */
     public static final long DEFAULT_INCLUDE_OFFSETS_AFTER_TIMESTAMP = 0;
+    /**
+     * Default start timestamp, 0 (no lower bound).
+     */
+    public static final long DEFAULT_START_TIMESTAMP = 0;
+    /**
+     * Default end timestamp, {@link Long#MAX_VALUE} (no upper bound).
+     */
+    public static final long DEFAULT_END_TIMESTAMP = Long.MAX_VALUE;
+    /**
+     * Default maximum number of bytes to read, {@link Long#MAX_VALUE} (unbounded).
+     */
+    public static final long DEFAULT_MAX_BYTES = Long.MAX_VALUE;
+    /**
+     * Default prefetch depth, 0 (message sets are fetched and decoded on the task thread).
+     */
+    public static final int DEFAULT_PREFETCH_DEPTH = 0;
+    /**
+     * Default number of brokers queried at once while planning splits, 8.
+     */
+    public static final int DEFAULT_PLANNING_THREADS = 8;
+    /**
+     * Default sample rate of splits and of messages, 1 (everything is read).
+     */
+    public static final float DEFAULT_SAMPLE_RATE = 1f;
+    /**
+     * Default sample seed, 0.
+     */
+    public static final long DEFAULT_SAMPLE_SEED = 0;
+    /**
+     * Default maximum rate at which a job reads from a broker, {@link Long#MAX_VALUE} (unthrottled).
+     */
+    public static final long DEFAULT_MAX_BROKER_BYTES_PER_SECOND = Long.MAX_VALUE;
+    /**
+     * Default maximum number of splits reading from a broker at once, {@link Integer#MAX_VALUE} (unbounded).
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_SPLITS_PER_BROKER = Integer.MAX_VALUE;
 
     @Override
     public RecordReader<LongWritable, BytesWritable> createRecordReader(final InputSplit inputSplit,
@@ -149,6 +191,29 @@ public class KafkaInputFormat extends InputFormat<LongWritable, BytesWritable> {
         return new KafkaInputFormat().getInputSplits(conf, topic, UUID.randomUUID().toString());
     }
 
+    /**
+     * Returns a plan of the input a {@link Job} configured with the provided {@code conf} would read from the
+     * {@code topic} for the consumer {@code group}: the splits of every partition, along with how far behind the
+     * {@code group} is. No offsets are read or committed.
+     * <p/>
+     * This information may be useful for deciding whether to run a job at all, and how many reducers it will need.
+     * <p/>
+     * <em>Note:</em> At the very least, {@code kafka.zk.connect} must be set in {@code conf}.
+     *
+     * @param conf
+     *            the conf, containing at least the {@code kafka.zk.connect} setting.
+     * @param topic
+     *            the kafka topic of hypothetical job.
+     * @param group
+     *            the consumer group of the hypothetical job
+     * @return the input plan of the hypothetical job.
+     * @throws IOException
+     */
+    public static KafkaInputPlan getPlan(final Configuration conf, final String topic, final String group)
+            throws IOException {
+        return new KafkaInputFormat().planInput(conf, topic, group, true);
+    }
+
     /**
      * Gets all of the input splits for the {@code topic}, filtering out any {@link InputSplit}s already consumed by the
      * {@code group}.
@@ -164,50 +229,317 @@ public class KafkaInputFormat extends InputFormat<LongWritable, BytesWritable> {
      */
     List<InputSplit> getInputSplits(final Configuration conf, final String topic, final String group)
             throws IOException {
-        final List<InputSplit> splits = Lists.newArrayList();
+        return planInput(conf, topic, group, false).getSplits();
+    }
+
+    /**
+     * Plans the input of the {@code group} from the {@code topic}; this is what both real jobs and
+     * {@link #getPlan(Configuration, String, String)} use to compute their splits.
+     * <p/>
+     * Kafka is queried with one connection per broker, and up to {@link #getPlanningThreads(Configuration)} brokers
+     * are queried at once.
+     * 
+     * @param conf
+     *            the job configuration.
+     * @param topic
+     *            the topic.
+     * @param group
+     *            the consumer group.
+     * @param includeLogBounds
+     *            {@code true} to look up the earliest and latest offsets of every partition, which is needed to report
+     *            lag.
+     * @return the input plan.
+     * @throws IOException
+     */
+    @VisibleForTesting
+    KafkaInputPlan planInput(final Configuration conf, final String topic, final String group,
+            final boolean includeLogBounds) throws IOException {
+        final Map<String, Long> startOffsets = getStartOffsets(conf, group, topic);
+        final Map<String, Long> endOffsets = getEndOffsets(conf, group, topic);
+        final Map<Partition, Long> lastCommits = Maps.newLinkedHashMap();
+        final Map<Broker, List<Partition>> brokerPartitions = Maps.newLinkedHashMap();
         final ZkUtils zk = getZk(conf);
-        final Map<Broker, SimpleConsumer> consumers = Maps.newHashMap();
+        // the default offset store shares the Zookeeper connection used for partition metadata
+        final OffsetStore offsetStore = isZkOffsetStore(conf) ? zk : newOffsetStore(conf);
         try {
             for (final Partition partition : zk.getPartitions(topic)) {
-
-                // cache the consumer connections - each partition will make use of each broker consumer
-                final Broker broker = partition.getBroker();
-                if (!consumers.containsKey(broker)) {
-                    consumers.put(broker, getConsumer(broker));
+                // if the end offsets have been frozen, partitions that weren't around at the time are not read
+                if (endOffsets != null && !endOffsets.containsKey(partition.getBrokerPartition())) {
+                    continue;
                 }
+                // start from where the consumer group left off, unless we've been told otherwise
+                final Long startOffset = startOffsets == null ? null : startOffsets.get(partition.getBrokerPartition());
+                lastCommits.put(partition, startOffset != null ? startOffset : offsetStore.getLastCommit(group,
+                        partition));
 
-                // grab all valid offsets
-                final List<Long> offsets = getOffsets(consumers.get(broker), topic, partition.getPartId(),
-                        zk.getLastCommit(group, partition), getIncludeOffsetsAfterTimestamp(conf),
-                        getMaxSplitsPerPartition(conf));
-                for (int i = 0; i < offsets.size() - 1; i++) {
-                    // ( offsets in descending order )
-                    final long start = offsets.get(i + 1);
-                    final long end = offsets.get(i);
-                    // since the offsets are in descending order, the first offset in the list is the largest offset for
-                    // the current partition. This split will be in charge of committing the offset for this partition.
-                    final boolean partitionCommitter = (i == 0);
-                    final InputSplit split = new KafkaInputSplit(partition, start, end, partitionCommitter);
-                    LOG.debug("Created input split: " + split);
-                    splits.add(split);
+                if (!brokerPartitions.containsKey(partition.getBroker())) {
+                    brokerPartitions.put(partition.getBroker(), Lists.<Partition> newArrayList());
                 }
+                brokerPartitions.get(partition.getBroker()).add(partition);
             }
         } finally {
-            // close resources
+            if (offsetStore != zk) {
+                IOUtils.closeQuietly(offsetStore);
+            }
             IOUtils.closeQuietly(zk);
-            for (final SimpleConsumer consumer : consumers.values()) {
-                consumer.close();
+        }
+
+        // every broker gets a single (pooled) consumer connection, and brokers are queried in parallel
+        final Map<Partition, List<Long>> brokerOffsets = Maps.newConcurrentMap();
+        final Map<Partition, long[]> logBounds = Maps.newConcurrentMap();
+        final List<Callable<Void>> tasks = Lists.newArrayList();
+        for (final Map.Entry<Broker, List<Partition>> entry : brokerPartitions.entrySet()) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    final SimpleConsumer consumer = getConsumer(entry.getKey());
+                    try {
+                        for (final Partition partition : entry.getValue()) {
+                            final long lastCommit = lastCommits.get(partition);
+                            final Long endOffset = endOffsets == null ? null : endOffsets.get(partition
+                                    .getBrokerPartition());
+                            brokerOffsets.put(partition,
+                                    getPartitionOffsets(conf, consumer, partition, lastCommit, endOffset));
+                            if (includeLogBounds) {
+                                logBounds.put(partition, getLogBounds(consumer, partition));
+                            }
+                        }
+                    } finally {
+                        SimpleConsumerPool.getInstance().release(consumer);
+                    }
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks, getPlanningThreads(conf));
+
+        final Map<Partition, List<Long>> partitionOffsets = Maps.newLinkedHashMap();
+        for (final Partition partition : lastCommits.keySet()) {
+            partitionOffsets.put(partition, brokerOffsets.get(partition));
+        }
+        limitTotalBytes(partitionOffsets, getMaxBytesPerTopic(conf));
+
+        final float splitSampleRate = getSplitSampleRate(conf);
+        final long sampleSeed = getSampleSeed(conf);
+        // a sample does not consume its partitions, so it never commits their offsets
+        final boolean sampling = isSampling(conf);
+        final List<KafkaInputPlan.PartitionPlan> partitionPlans = Lists.newArrayList();
+        for (final Map.Entry<Partition, List<Long>> entry : partitionOffsets.entrySet()) {
+            final Partition partition = entry.getKey();
+            final List<Long> offsets = entry.getValue();
+            final List<KafkaInputSplit> splits = Lists.newArrayList();
+            for (int i = 0; i < offsets.size() - 1; i++) {
+                // ( offsets in descending order )
+                final long start = offsets.get(i + 1);
+                final long end = offsets.get(i);
+                if (splitSampleRate < DEFAULT_SAMPLE_RATE
+                        && !isSampled(31L * partition.getBrokerPartition().hashCode() + start, sampleSeed,
+                                splitSampleRate)) {
+                    continue;
+                }
+                // since the offsets are in descending order, the first offset in the list is the largest offset for
+                // the current partition. This split will be in charge of committing the offset for this partition.
+                final boolean partitionCommitter = (i == 0) && !sampling;
+                final KafkaInputSplit split = new KafkaInputSplit(partition, start, end, partitionCommitter);
+                LOG.debug("Created input split: " + split);
+                splits.add(split);
+            }
+            final long[] bounds = logBounds.containsKey(partition) ? logBounds.get(partition) : new long[] { -1, -1 };
+            partitionPlans.add(new KafkaInputPlan.PartitionPlan(partition, lastCommits.get(partition), bounds[0],
+                    bounds[1], splits));
+        }
+        final KafkaInputPlan plan = new KafkaInputPlan(topic, group, partitionPlans, getMessageSampleRate(conf));
+        setBrokerSplits(plan.getSplits());
+        return plan;
+    }
+
+    /**
+     * Tells every split how many of the {@code splits} read from its broker, so that its reader can take its share of
+     * the broker's bandwidth.
+     * 
+     * @param splits
+     *            all of the {@link KafkaInputSplit}s of a job.
+     * @see #setMaxBrokerBytesPerSecond(Job, long)
+     */
+    static void setBrokerSplits(final List<InputSplit> splits) {
+        final Map<Broker, Integer> brokerSplits = Maps.newHashMap();
+        for (final InputSplit split : splits) {
+            final Broker broker = ((KafkaInputSplit) split).getPartition().getBroker();
+            brokerSplits.put(broker, brokerSplits.containsKey(broker) ? brokerSplits.get(broker) + 1 : 1);
+        }
+        for (final InputSplit split : splits) {
+            final KafkaInputSplit kafkaSplit = (KafkaInputSplit) split;
+            kafkaSplit.setBrokerSplits(brokerSplits.get(kafkaSplit.getPartition().getBroker()));
+        }
+    }
+
+    /**
+     * Decides deterministically whether the split or message identified by {@code key} is part of a sample: the same
+     * {@code key}, {@code seed} and {@code rate} always give the same answer, and a fraction {@code rate} of all keys
+     * is sampled.
+     * 
+     * @param key
+     *            identifies the split or message.
+     * @param seed
+     *            the sample seed.
+     * @param rate
+     *            the sample rate, between 0 and 1.
+     * @return {@code true} if {@code key} is in the sample.
+     */
+    @VisibleForTesting
+    static boolean isSampled(final long key, final long seed, final float rate) {
+        // the finalizer of MurmurHash3, which spreads consecutive offsets evenly
+        long hash = key ^ seed;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        // the top 53 bits, as a double in [0, 1)
+        return (hash >>> 11) * 0x1.0p-53 < rate;
+    }
+
+    private List<Long> getPartitionOffsets(final Configuration conf, final SimpleConsumer consumer,
+            final Partition partition, final long lastCommit, final Long endOffset) {
+        // grab all valid offsets; the largest is the log end offset as of right now, so the newest split reads the tail
+        // of the file Kafka is still writing to.
+        final long includeAfter = Math.max(getIncludeOffsetsAfterTimestamp(conf), getStartTimestamp(conf));
+        List<Long> offsets = getOffsets(consumer, partition.getTopic(), partition.getPartId(), lastCommit,
+                includeAfter, getEndTimestamp(conf), getMaxSplitsPerPartition(conf));
+        if (endOffset != null) {
+            offsets = limitOffsets(offsets, endOffset);
+        }
+        return limitBytes(offsets, getMaxBytesPerPartition(conf));
+    }
+
+    /**
+     * @return the earliest and latest offsets of {@code partition}, {@code -1} for those Kafka did not report.
+     */
+    private long[] getLogBounds(final SimpleConsumer consumer, final Partition partition) {
+        final long[] earliest = consumer.getOffsetsBefore(partition.getTopic(), partition.getPartId(),
+                OffsetRequest.EarliestTime(), 1);
+        final long[] latest = consumer.getOffsetsBefore(partition.getTopic(), partition.getPartId(),
+                OffsetRequest.LatestTime(), 1);
+        return new long[] { earliest != null && earliest.length > 0 ? earliest[0] : -1,
+                latest != null && latest.length > 0 ? latest[0] : -1 };
+    }
+
+    /**
+     * Runs the {@code tasks} on at most {@code threads} threads, rethrowing the first failure.
+     */
+    private static void invokeAll(final List<Callable<Void>> tasks, final int threads) throws IOException {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tasks.size())),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("kafka-planner-%d").build());
+        try {
+            for (final Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while planning input splits");
+        } catch (final ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Drops the (descending) {@code offsets} after {@code endOffset}, ending the newest split at {@code endOffset}.
+     */
+    @VisibleForTesting
+    static List<Long> limitOffsets(final List<Long> offsets, final long endOffset) {
+        if (offsets.isEmpty() || endOffset >= offsets.get(0)) {
+            return offsets;
+        }
+        final List<Long> result = Lists.newArrayList();
+        for (final long offset : offsets) {
+            if (offset < endOffset) {
+                if (result.isEmpty()) {
+                    result.add(endOffset);
+                }
+                result.add(offset);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Keeps the oldest of the (descending) {@code offsets} such that the splits they create add up to no more than
+     * {@code maxBytes}, but always keeps at least one split so that the consumer makes progress.
+     */
+    @VisibleForTesting
+    static List<Long> limitBytes(final List<Long> offsets, final long maxBytes) {
+        final int size = offsets.size();
+        if (maxBytes == DEFAULT_MAX_BYTES || size < 3) {
+            return offsets;
+        }
+        final long oldest = offsets.get(size - 1);
+        for (int i = 0; i < size - 2; i++) {
+            if (offsets.get(i) - oldest <= maxBytes) {
+                return offsets.subList(i, size);
+            }
+        }
+        return offsets.subList(size - 2, size);
+    }
+
+    /**
+     * Keeps the oldest splits of every partition such that all of the splits add up to no more than {@code maxBytes}.
+     * Splits are handed out one partition at a time, oldest first, so that the budget is spread evenly across
+     * partitions; a partition stops receiving splits as soon as its next split does not fit, since a partition's splits
+     * must be contiguous for its offset to be committed. At least one split is always kept.
+     */
+    @VisibleForTesting
+    static void limitTotalBytes(final Map<Partition, List<Long>> partitionOffsets, final long maxBytes) {
+        if (maxBytes == DEFAULT_MAX_BYTES) {
+            return;
+        }
+        final Map<Partition, Integer> splitCounts = Maps.newHashMap();
+        final Set<Partition> full = Sets.newHashSet();
+        long total = 0;
+        boolean added = true;
+        while (added) {
+            added = false;
+            for (final Map.Entry<Partition, List<Long>> entry : partitionOffsets.entrySet()) {
+                final Partition partition = entry.getKey();
+                final List<Long> offsets = entry.getValue();
+                final int count = splitCounts.containsKey(partition) ? splitCounts.get(partition) : 0;
+                if (full.contains(partition) || count >= offsets.size() - 1) {
+                    continue;
+                }
+                // the count-th oldest split
+                final int splitStart = offsets.size() - 1 - count;
+                final long splitBytes = offsets.get(splitStart - 1) - offsets.get(splitStart);
+                if (total > 0 && total + splitBytes > maxBytes) {
+                    full.add(partition);
+                    continue;
+                }
+                total += splitBytes;
+                splitCounts.put(partition, count + 1);
+                added = true;
+            }
+        }
+        for (final Map.Entry<Partition, List<Long>> entry : partitionOffsets.entrySet()) {
+            final List<Long> offsets = entry.getValue();
+            final int count = splitCounts.containsKey(entry.getKey()) ? splitCounts.get(entry.getKey()) : 0;
+            if (count == 0) {
+                entry.setValue(Collections.<Long> emptyList());
+            } else {
+                entry.setValue(offsets.subList(offsets.size() - 1 - count, offsets.size()));
             }
         }
-        return splits;
     }
 
     @VisibleForTesting
     List<Long> getOffsets(final SimpleConsumer consumer, final String topic, final int partitionNum,
-            final long lastCommit, final long asOfTime, final int maxSplitsPerPartition) {
-        // all offsets that exist for this partition (in descending order)
-        final long[] allOffsets = consumer.getOffsetsBefore(topic, partitionNum, OffsetRequest.LatestTime(),
-                Integer.MAX_VALUE);
+            final long lastCommit, final long asOfTime, final long endTime, final int maxSplitsPerPartition) {
+        // all offsets that exist for this partition (in descending order), minus those entirely after 'endTime'
+        final long[] allOffsets = excludeOffsetsAfter(consumer, topic, partitionNum,
+                consumer.getOffsetsBefore(topic, partitionNum, OffsetRequest.LatestTime(), Integer.MAX_VALUE), endTime);
 
         // this gets us an offset that is strictly before 'asOfTime', or zero if none exist before that time
         final long[] offsetsBeforeAsOf = consumer.getOffsetsBefore(topic, partitionNum, asOfTime, 1);
@@ -235,14 +567,41 @@ public class KafkaInputFormat extends InputFormat<LongWritable, BytesWritable> {
         return result;
     }
 
+    /**
+     * Drops the (descending) {@code offsets} that start Kafka files whose data was written entirely after
+     * {@code endTime}.
+     * <p/>
+     * {@link SimpleConsumer#getOffsetsBefore(String, int, long, int)} gives us the start of the latest file last
+     * modified on or before {@code endTime}. The file after that one may straddle {@code endTime}, but every file after
+     * <em>that</em> was created once the straddling file was no longer being written to, i.e. after {@code endTime}.
+     */
+    private long[] excludeOffsetsAfter(final SimpleConsumer consumer, final String topic, final int partitionNum,
+            final long[] offsets, final long endTime) {
+        if (endTime == DEFAULT_END_TIMESTAMP) {
+            return offsets;
+        }
+        final long[] offsetsBeforeEnd = consumer.getOffsetsBefore(topic, partitionNum, endTime, 1);
+        int endIndex = offsets.length;
+        if (offsetsBeforeEnd.length == 1) {
+            for (int i = 0; i < offsets.length; i++) {
+                if (offsets[i] == offsetsBeforeEnd[0]) {
+                    endIndex = i;
+                    break;
+                }
+            }
+        }
+        // offsets[endIndex - 1] starts the straddling file, offsets[endIndex - 2] is where it ends
+        final int cutoff = endIndex - 2;
+        return cutoff > 0 ? Arrays.copyOfRange(offsets, cutoff, offsets.length) : offsets;
+    }
+
     /*
      * We make the following two methods visible for testing so that we can mock these components out in unit tests
      */
 
     @VisibleForTesting
     SimpleConsumer getConsumer(final Broker broker) {
-        return new SimpleConsumer(broker.getHost(), broker.getPort(), DEFAULT_SOCKET_TIMEOUT_MS,
-                DEFAULT_BUFFER_SIZE_BYTES);
+        return SimpleConsumerPool.getInstance().acquire(broker, DEFAULT_SOCKET_TIMEOUT_MS, DEFAULT_BUFFER_SIZE_BYTES);
     }
 
     @VisibleForTesting
@@ -419,6 +778,303 @@ public class KafkaInputFormat extends InputFormat<LongWritable, BytesWritable> {
         return conf.getLong("kafka.timestamp.offset", DEFAULT_INCLUDE_OFFSETS_AFTER_TIMESTAMP);
     }
 
+    /**
+     * Only read messages whose timestamp is on or after {@code timestamp}.
+     * <p/>
+     * Kafka files last modified before {@code timestamp} are skipped entirely when the splits are created (see
+     * {@link #setIncludeOffsetsAfterTimestamp(Job, long)}); if a {@link TimestampExtractor} has been set with
+     * {@link #setTimestampExtractorClass(Job, Class)}, the {@link KafkaRecordReader} will also skip the individual
+     * messages before {@code timestamp}.
+     * <p/>
+     * Messages are checked one at a time; whole message sets are never skipped based on their timestamps, since the
+     * timestamps within a message set are not guaranteed to be ordered.
+     * 
+     * @param job
+     *            the job being configured.
+     * @param timestamp
+     *            the (inclusive) start timestamp, in milliseconds.
+     */
+    public static void setStartTimestamp(final Job job, final long timestamp) {
+        job.getConfiguration().setLong("kafka.timestamp.start", timestamp);
+    }
+
+    /**
+     * Gets the start timestamp set by {@link #setStartTimestamp(Job, long)}, defaulting to
+     * {@link #DEFAULT_START_TIMESTAMP}.
+     * 
+     * @param conf
+     *            the job conf.
+     * @return the start timestamp.
+     */
+    public static long getStartTimestamp(final Configuration conf) {
+        return conf.getLong("kafka.timestamp.start", DEFAULT_START_TIMESTAMP);
+    }
+
+    /**
+     * Only read messages whose timestamp is before {@code timestamp}.
+     * <p/>
+     * Kafka files created after {@code timestamp} are dropped when the splits are created. If a
+     * {@link TimestampExtractor} has been set with {@link #setTimestampExtractorClass(Job, Class)}, the
+     * {@link KafkaRecordReader} of the last split of each partition will also stop reading at the first message on or
+     * after {@code timestamp}, and the readers of the other splits skip the messages on or after {@code timestamp}.
+     * <p/>
+     * When the reader stops early, only the offset of the last message before {@code timestamp} is committed, so the
+     * next job in the same consumer group starts reading from the first message on or after {@code timestamp}. The
+     * messages skipped in the earlier splits of a partition are not read again.
+     * 
+     * @param job
+     *            the job being configured.
+     * @param timestamp
+     *            the (exclusive) end timestamp, in milliseconds.
+     */
+    public static void setEndTimestamp(final Job job, final long timestamp) {
+        job.getConfiguration().setLong("kafka.timestamp.end", timestamp);
+    }
+
+    /**
+     * Gets the end timestamp set by {@link #setEndTimestamp(Job, long)}, defaulting to {@link #DEFAULT_END_TIMESTAMP}.
+     * 
+     * @param conf
+     *            the job conf.
+     * @return the end timestamp.
+     */
+    public static long getEndTimestamp(final Configuration conf) {
+        return conf.getLong("kafka.timestamp.end", DEFAULT_END_TIMESTAMP);
+    }
+
+    /**
+     * Sets the {@link TimestampExtractor} the {@link KafkaRecordReader} uses to apply
+     * {@link #setStartTimestamp(Job, long)} and {@link #setEndTimestamp(Job, long)} to individual messages.
+     * 
+     * @param job
+     *            the job being configured.
+     * @param extractorClass
+     *            the extractor class.
+     */
+    public static void setTimestampExtractorClass(final Job job,
+            final Class<? extends TimestampExtractor> extractorClass) {
+        job.getConfiguration().setClass("kafka.timestamp.extractor.class", extractorClass, TimestampExtractor.class);
+    }
+
+    /**
+     * Gets the {@link TimestampExtractor} class set by {@link #setTimestampExtractorClass(Job, Class)}.
+     * 
+     * @param conf
+     *            the job conf.
+     * @return the extractor class, {@code null} if none has been set.
+     */
+    public static Class<? extends TimestampExtractor> getTimestampExtractorClass(final Configuration conf) {
+        return conf.getClass("kafka.timestamp.extractor.class", null, TimestampExtractor.class);
+    }
+
+    /**
+     * Sets the {@link PayloadFilter} the {@link KafkaRecordReader} drops messages with before they are handed to the
+     * mapper (optional).
+     * 
+     * @param job
+     *            the job being configured.
+     * @param filterClass
+     *            the filter class.
+     */
+    public static void setPayloadFilterClass(final Job job, final Class<? extends PayloadFilter> filterClass) {
+        job.getConfiguration().setClass("kafka.payload.filter.class", filterClass, PayloadFilter.class);
+    }
+
+    /**
+     * Gets the {@link PayloadFilter} class set by {@link #setPayloadFilterClass(Job, Class)}.
+     * 
+     * @param conf
+     *            the job conf.
+     * @return the filter class, {@code null} if none has been set.
+     */
+    public static Class<? extends PayloadFilter> getPayloadFilterClass(final Configuration conf) {
+        return conf.getClass("kafka.payload.filter.class", null, PayloadFilter.class);
+    }
+
+    /**
+     * Sets the {@link PayloadDecoder} that {@link KafkaDecodedInputFormat} decodes message payloads with.
+     * 
+     * @param job
+     *            the job being configured.
+     * @param decoderClass
+     *            the decoder class.
+     */
+    public static void setPayloadDecoderClass(final Job job, final Class<? extends PayloadDecoder> decoderClass) {
+        job.getConfiguration().setClass("kafka.payload.decoder.class", decoderClass, PayloadDecoder.class);
+    }
+
+    /**
+     * Gets the {@link PayloadDecoder} class set by {@link #setPayloadDecoderClass(Job, Class)}.
+     * 
+     * @param conf
+     *            the job conf.
+     * @return the decoder class, {@code null} if none has been set.
+     */
+    public static Class<? extends PayloadDecoder> getPayloadDecoderClass(final Configuration conf) {
+        return conf.getClass("kafka.payload.decoder.class", null, PayloadDecoder.class);
+    }
+
+    /**
+     * Sets the {@link OffsetStore} that consumer group offsets are read from and committed to (optional, defaults to
+     * Zookeeper, i.e. {@link ZkUtils}).
+     * 
+     * @param job
+     *            the job being configured.
+     * @param storeClass
+     *            the offset store class; other than {@link ZkUtils}, it needs a no-argument constructor, and is passed
+     *            the job configuration if it is {@link org.apache.hadoop.conf.Configurable}.
+     * @see HdfsOffsetStore
+     */
+    public static void setOffsetStoreClass(final Job job, final Class<? extends OffsetStore> storeClass) {
+        job.getConfiguration().setClass("kafka.offset.store.class", storeClass, OffsetStore.class);
+    }
+
+    /**
+     * Gets the {@link OffsetStore} class set by {@link #setOffsetStoreClass(Job, Class)}.
+     * 
+     * @param conf
+     *            the job conf.
+     * @return the offset store class.
+     */
+    public static Class<? extends OffsetStore> getOffsetStoreClass(final Configuration conf) {
+        return conf.getClass("kafka.offset.store.class", ZkUtils.class, OffsetStore.class);
+    }
+
+    /**
+     * Creates the {@link OffsetStore} configured by {@link #setOffsetStoreClass(Job, Class)}, e.g. to commit the
+     * offsets of a job once it has succeeded. The caller is responsible for closing it.
+     * 
+     * @param conf
+     *            the job conf.
+     * @return a new offset store.
+     */
+    public static OffsetStore newOffsetStore(final Configuration conf) {
+        return isZkOffsetStore(conf) ? new ZkUtils(conf) : ReflectionUtils.newInstance(getOffsetStoreClass(conf), conf);
+    }
+
+    static boolean isZkOffsetStore(final Configuration conf) {
+        return ZkUtils.class.equals(getOffsetStoreClass(conf));
+    }
+
+    /**
+     * Overrides the offsets that the consumer {@code group} starts reading {@code topic} from, which otherwise come
+     * from the group's last commit in the {@link OffsetStore}.
+     * 
+     * @param job
+     *            the job being configured.
+     * @param group
+     *            the consumer group.
+     * @param topic
+     *            the topic.
+     * @param offsets
+     *            the offset to start from for each partition; partitions not in the map use the last commit.
+     * @see KafkaMicroBatchRunner
+     */
+    public static void setStartOffsets(final Job job, final String group, final String topic,
+            final Map<Partition, Long> offsets) {
+        writeOffsets(job.getConfiguration(), String.format("kafka.offsets.start.%s.%s", group, topic), offsets);
+    }
+
+    /**
+     * Gets the start offsets set by {@link #setStartOffsets(Job, String, String, Map)}.
+     * 
+     * @param conf
+     *            the job conf.
+     * @param group
+     *            the consumer group.
+     * @param topic
+     *            the topic.
+     * @return the start offsets, keyed by {@link Partition#getBrokerPartition()}; {@code null} if none have been set.
+     */
+    public static Map<String, Long> getStartOffsets(final Configuration conf, final String group, final String topic) {
+        return readOffsets(conf, String.format("kafka.offsets.start.%s.%s", group, topic));
+    }
+
+    /**
+     * Freezes the offsets that the consumer {@code group} reads {@code topic} up to, which otherwise are the log end
+     * offsets at the time the splits are created.
+     * 
+     * @param job
+     *            the job being configured.
+     * @param group
+     *            the consumer group.
+     * @param topic
+     *            the topic.
+     * @param offsets
+     *            the (exclusive) offset to stop at for each partition; partitions not in the map are not read at all.
+     * @see KafkaMicroBatchRunner
+     */
+    public static void setEndOffsets(final Job job, final String group, final String topic,
+            final Map<Partition, Long> offsets) {
+        writeOffsets(job.getConfiguration(), String.format("kafka.offsets.end.%s.%s", group, topic), offsets);
+    }
+
+    /**
+     * Gets the end offsets set by {@link #setEndOffsets(Job, String, String, Map)}.
+     * 
+     * @param conf
+     *            the job conf.
+     * @param group
+     *            the consumer group.
+     * @param topic
+     *            the topic.
+     * @return the end offsets, keyed by {@link Partition#getBrokerPartition()}; {@code null} if none have been set.
+     */
+    public static Map<String, Long> getEndOffsets(final Configuration conf, final String group, final String topic) {
+        return readOffsets(conf, String.format("kafka.offsets.end.%s.%s", group, topic));
+    }
+
+    // offsets are stored as brokerId-partId:offset,brokerId-partId:offset,...
+    private static void writeOffsets(final Configuration conf, final String key, final Map<Partition, Long> offsets) {
+        final StringBuilder value = new StringBuilder();
+        for (final Map.Entry<Partition, Long> entry : offsets.entrySet()) {
+            if (value.length() > 0) {
+                value.append(',');
+            }
+            value.append(entry.getKey().getBrokerPartition()).append(':').append(entry.getValue());
+        }
+        conf.set(key, value.toString());
+    }
+
+    private static Map<String, Long> readOffsets(final Configuration conf, final String key) {
+        if (conf.get(key) == null) {
+            return null;
+        }
+        final Map<String, Long> offsets = Maps.newHashMap();
+        for (final String brokerPartitionOffset : conf.getTrimmedStrings(key)) {
+            final String[] tokens = brokerPartitionOffset.split(":");
+            offsets.put(tokens[0], Long.valueOf(tokens[1]));
+        }
+        return offsets;
+    }
+
+    /**
+     * Sets whether the {@link KafkaRecordReader} temporarily commits the offset of its partition when it finishes
+     * reading, for {@link OffsetStore#commit(String, String)} to commit once the job succeeds. Turn this off when
+     * offsets are committed some other way, otherwise the temporary offsets are never cleaned up.
+     * 
+     * @param job
+     *            the job being configured.
+     * @param commit
+     *            whether record readers commit temporary offsets.
+     * @see KafkaMicroBatchRunner
+     */
+    public static void setCommitOffsets(final Job job, final boolean commit) {
+        job.getConfiguration().setBoolean("kafka.offsets.commit", commit);
+    }
+
+    /**
+     * Gets whether the {@link KafkaRecordReader} commits temporary offsets, defaulting to {@code true}.
+     * 
+     * @param conf
+     *            the job conf.
+     * @return {@code true} if record readers commit temporary offsets.
+     * @see #setCommitOffsets(Job, boolean)
+     */
+    public static boolean isCommitOffsets(final Configuration conf) {
+        return conf.getBoolean("kafka.offsets.commit", true);
+    }
+
     /**
      * Limits the number of splits to create per partition.
      * <p/>
@@ -446,6 +1102,63 @@ public class KafkaInputFormat extends InputFormat<LongWritable, BytesWritable> {
         return conf.getInt("kafka.max.splits.per.partition", DEFAULT_MAX_SPLITS_PER_PARTITION);
     }
 
+    /**
+     * Limits the number of bytes to read from each partition.
+     * <p/>
+     * Like {@link #setMaxSplitsPerPartition(Job, int)}, this takes the <em>earliest</em> unconsumed data, and whole
+     * splits only, so that every split ends on a message boundary. At least one split is always read from each
+     * partition, even if it is larger than {@code maxBytes}.
+     * 
+     * @param job
+     *            the job to configure.
+     * @param maxBytes
+     *            the maximum number of bytes to read from each Kafka partition.
+     */
+    public static void setMaxBytesPerPartition(final Job job, final long maxBytes) {
+        job.getConfiguration().setLong("kafka.max.bytes.per.partition", maxBytes);
+    }
+
+    /**
+     * Gets the maximum number of bytes per partition set by {@link #setMaxBytesPerPartition(Job, long)}, returning
+     * {@link #DEFAULT_MAX_BYTES} by default.
+     * 
+     * @param conf
+     *            the job conf
+     * @return the maximum number of bytes per partition.
+     */
+    public static long getMaxBytesPerPartition(final Configuration conf) {
+        return conf.getLong("kafka.max.bytes.per.partition", DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Limits the number of bytes to read from each topic, which for a job reading a single topic is the total input of
+     * the job.
+     * <p/>
+     * The earliest unconsumed split of each partition is taken in turn until the next split would exceed
+     * {@code maxBytes}, so partitions that are further behind do not starve the others. Whole splits only are taken,
+     * and at least one split is always read.
+     * 
+     * @param job
+     *            the job to configure.
+     * @param maxBytes
+     *            the maximum number of bytes to read from each topic.
+     */
+    public static void setMaxBytesPerTopic(final Job job, final long maxBytes) {
+        job.getConfiguration().setLong("kafka.max.bytes.per.topic", maxBytes);
+    }
+
+    /**
+     * Gets the maximum number of bytes per topic set by {@link #setMaxBytesPerTopic(Job, long)}, returning
+     * {@link #DEFAULT_MAX_BYTES} by default.
+     * 
+     * @param conf
+     *            the job conf
+     * @return the maximum number of bytes per topic.
+     */
+    public static long getMaxBytesPerTopic(final Configuration conf) {
+        return conf.getLong("kafka.max.bytes.per.topic", DEFAULT_MAX_BYTES);
+    }
+
     /**
      * Sets the fetch size of the {@link RecordReader}. Note that your mapper should have enough memory allocation to
      * handle the specified size, or else you will likely throw {@link OutOfMemoryError}s.
@@ -518,4 +1231,282 @@ public class KafkaInputFormat extends InputFormat<LongWritable, BytesWritable> {
     public static int getKafkaSocketTimeoutMs(final Configuration conf) {
         return conf.getInt("kafka.socket.timeout.ms", DEFAULT_SOCKET_TIMEOUT_MS);
     }
+
+    /**
+     * Enables pipelined reads in the {@link KafkaRecordReader}: a helper thread fetches and decodes (i.e. checksums and
+     * decompresses) message sets while the mapper consumes the previous one. Up to {@code depth} decoded message sets
+     * are buffered, so your mapper needs roughly {@code (depth + 1) * fetchSize} bytes of additional heap for
+     * compressed topics.
+     * 
+     * @param job
+     *            the job being configured.
+     * @param depth
+     *            the number of decoded message sets to buffer; {@code 0} disables prefetching.
+     */
+    public static void setKafkaPrefetchDepth(final Job job, final int depth) {
+        job.getConfiguration().setInt("kafka.fetch.prefetch.depth", depth);
+    }
+
+    /**
+     * Gets the prefetch depth set by {@link #setKafkaPrefetchDepth(Job, int)}, defaulting to
+     * {@link #DEFAULT_PREFETCH_DEPTH} if it has not been set.
+     * 
+     * @param conf
+     *            the job conf.
+     * @return the prefetch depth.
+     */
+    public static int getKafkaPrefetchDepth(final Configuration conf) {
+        return conf.getInt("kafka.fetch.prefetch.depth", DEFAULT_PREFETCH_DEPTH);
+    }
+
+    /**
+     * Makes the {@link KafkaRecordReader} fetch into a few buffers that are allocated once per split and reused, rather
+     * than into a new buffer of up to the fetch size per fetch. With large fetch sizes, this keeps the garbage
+     * collection of map tasks from depending on the fetch size. The record reader holds
+     * {@link #getKafkaPrefetchDepth(Configuration) prefetch depth} {@code + 2} buffers.
+     * 
+     * <p/>
+     * Note that the payload buffers handed to a {@link TimestampExtractor} are then overwritten by later fetches.
+     * 
+     * @param job
+     *            the job being configured.
+     * @param reuse
+     *            whether to reuse fetch buffers.
+     */
+    public static void setKafkaReuseFetchBuffers(final Job job, final boolean reuse) {
+        job.getConfiguration().setBoolean("kafka.fetch.reuse.buffers", reuse);
+    }
+
+    /**
+     * Gets whether the {@link KafkaRecordReader} reuses its fetch buffers, defaulting to {@code false}.
+     * 
+     * @param conf
+     *            the job conf.
+     * @return {@code true} if fetch buffers are reused.
+     * @see #setKafkaReuseFetchBuffers(Job, boolean)
+     */
+    public static boolean getKafkaReuseFetchBuffers(final Configuration conf) {
+        return conf.getBoolean("kafka.fetch.reuse.buffers", false);
+    }
+
+    /**
+     * How the {@link KafkaRecordReader} decodes message sets and verifies the checksums of messages.
+     */
+    public static enum ChecksumMode {
+        /**
+         * Kafka's own message set iterator, which verifies checksums with {@link java.util.zip.CRC32}.
+         */
+        KAFKA,
+        /**
+         * Verifies checksums with Hadoop's {@link org.apache.hadoop.util.PureJavaCrc32}, which is faster for small
+         * messages.
+         */
+        PURE_JAVA,
+        /**
+         * Does not verify checksums at all; only for data that is known to be intact, e.g. when reprocessing.
+         */
+        SKIP
+    }
+
+    /**
+     * Sets how the {@link KafkaRecordReader} verifies message checksums (optional, defaults to
+     * {@link ChecksumMode#KAFKA}). The number of checksums verified is counted by
+     * {@link KafkaRecordReader.Counter#CHECKSUMS_VERIFIED}.
+     * 
+     * @param job
+     *            the job being configured.
+     * @param mode
+     *            the checksum mode.
+     */
+    public static void setKafkaChecksumMode(final Job job, final ChecksumMode mode) {
+        job.getConfiguration().setEnum("kafka.fetch.checksum.mode", mode);
+    }
+
+    /**
+     * Gets the checksum mode set by {@link #setKafkaChecksumMode(Job, ChecksumMode)}, defaulting to
+     * {@link ChecksumMode#KAFKA}.
+     * 
+     * @param conf
+     *            the job conf.
+     * @return the checksum mode.
+     */
+    public static ChecksumMode getKafkaChecksumMode(final Configuration conf) {
+        return conf.getEnum("kafka.fetch.checksum.mode", ChecksumMode.KAFKA);
+    }
+
+    /**
+     * Reads only a sample of the splits of every partition (optional, defaults to {@link #DEFAULT_SAMPLE_RATE}), e.g.
+     * for a quick approximate job over a long time range. Splits are picked deterministically by
+     * {@link #setSampleSeed(Job, long) seed}, after all other limits on the input have been applied. Splits that are
+     * not picked are not fetched at all, and {@link KafkaInputPlan#getSplitBytes()} only counts the picked ones.
+     * 
+     * <p/>
+     * A sampling job does not commit the offsets of its consumer group.
+     * 
+     * @param job
+     *            the job being configured.
+     * @param rate
+     *            the fraction of splits to read, between 0 and 1.
+     */
+    public static void setSplitSampleRate(final Job job, final float rate) {
+        job.getConfiguration().setFloat("kafka.sample.splits.rate", rate);
+    }
+
+    /**
+     * Gets the split sample rate set by {@link #setSplitSampleRate(Job, float)}.
+     * 
+     * @param conf
+     *            the job conf.
+     * @return the fraction of splits read.
+     */
+    public static float getSplitSampleRate(final Configuration conf) {
+        return conf.getFloat("kafka.sample.splits.rate", DEFAULT_SAMPLE_RATE);
+    }
+
+    /**
+     * Hands the mapper only a sample of the messages the {@link KafkaRecordReader} reads (optional, defaults to
+     * {@link #DEFAULT_SAMPLE_RATE}). Messages are picked deterministically by their offset and
+     * {@link #setSampleSeed(Job, long) seed}, so that a job run again over the same range sees the same messages. The
+     * whole split is still fetched; combine it with {@link #setSplitSampleRate(Job, float)} to take load off the
+     * brokers.
+     * 
+     * <p/>
+     * A sampling job does not commit the offsets of its consumer group.
+     * 
+     * @param job
+     *            the job being configured.
+     * @param rate
+     *            the fraction of messages to map, between 0 and 1.
+     */
+    public static void setMessageSampleRate(final Job job, final float rate) {
+        job.getConfiguration().setFloat("kafka.sample.messages.rate", rate);
+    }
+
+    /**
+     * Gets the message sample rate set by {@link #setMessageSampleRate(Job, float)}.
+     * 
+     * @param conf
+     *            the job conf.
+     * @return the fraction of messages mapped.
+     */
+    public static float getMessageSampleRate(final Configuration conf) {
+        return conf.getFloat("kafka.sample.messages.rate", DEFAULT_SAMPLE_RATE);
+    }
+
+    /**
+     * Sets the seed that picks the splits and messages of a sample (optional, defaults to
+     * {@link #DEFAULT_SAMPLE_SEED}); a different seed picks a different sample.
+     * 
+     * @param job
+     *            the job being configured.
+     * @param seed
+     *            the sample seed.
+     */
+    public static void setSampleSeed(final Job job, final long seed) {
+        job.getConfiguration().setLong("kafka.sample.seed", seed);
+    }
+
+    /**
+     * Gets the sample seed set by {@link #setSampleSeed(Job, long)}.
+     * 
+     * @param conf
+     *            the job conf.
+     * @return the sample seed.
+     */
+    public static long getSampleSeed(final Configuration conf) {
+        return conf.getLong("kafka.sample.seed", DEFAULT_SAMPLE_SEED);
+    }
+
+    /**
+     * @return {@code true} if splits or messages are sampled.
+     */
+    static boolean isSampling(final Configuration conf) {
+        return getSplitSampleRate(conf) < DEFAULT_SAMPLE_RATE || getMessageSampleRate(conf) < DEFAULT_SAMPLE_RATE;
+    }
+
+    /**
+     * Caps the rate at which the job reads from each Kafka broker (optional, defaults to
+     * {@link #DEFAULT_MAX_BROKER_BYTES_PER_SECOND}), e.g. so that a backfill does not saturate the brokers that live
+     * consumers read from. The cap is shared out cooperatively: every {@link KafkaRecordReader} holds its rate to the
+     * cap divided by the number of splits of the job on its broker, or by
+     * {@link #setMaxConcurrentSplitsPerBroker(Job, int)} if that is smaller. The time readers spend waiting is counted
+     * by {@link KafkaRecordReader.Counter#THROTTLED_MILLIS}.
+     * <p/>
+     * Note that this cap is per job: jobs reading from the same broker at the same time each get their own cap.
+     * 
+     * @param job
+     *            the job being configured.
+     * @param bytesPerSecond
+     *            the maximum number of bytes per second read from each broker.
+     */
+    public static void setMaxBrokerBytesPerSecond(final Job job, final long bytesPerSecond) {
+        job.getConfiguration().setLong("kafka.broker.max.bytes.per.second", bytesPerSecond);
+    }
+
+    /**
+     * Gets the maximum rate at which the job reads from each broker.
+     * 
+     * @param conf
+     *            the job conf.
+     * @return the maximum number of bytes per second.
+     * @see #setMaxBrokerBytesPerSecond(Job, long)
+     */
+    public static long getMaxBrokerBytesPerSecond(final Configuration conf) {
+        return conf.getLong("kafka.broker.max.bytes.per.second", DEFAULT_MAX_BROKER_BYTES_PER_SECOND);
+    }
+
+    /**
+     * Caps the number of splits that read from each Kafka broker at once (optional, defaults to
+     * {@link #DEFAULT_MAX_CONCURRENT_SPLITS_PER_BROKER}). Readers register with Zookeeper when they start, and wait for
+     * their turn while the number of readers of their broker registered before them, by any job with this setting, is
+     * at the cap. The time readers spend waiting is counted by
+     * {@link KafkaRecordReader.Counter#BROKER_WAIT_MILLIS}.
+     * <p/>
+     * Note that unlike {@link #setMaxBrokerBytesPerSecond(Job, long)}, this cap is cluster-wide: the readers of every
+     * job and topic with this setting take turns under the same cap for each broker, and a job with a lower cap waits
+     * for the readers of the other jobs too.
+     * 
+     * @param job
+     *            the job being configured.
+     * @param maxSplits
+     *            the maximum number of splits reading from a broker at once.
+     */
+    public static void setMaxConcurrentSplitsPerBroker(final Job job, final int maxSplits) {
+        job.getConfiguration().setInt("kafka.broker.max.concurrent.splits", maxSplits);
+    }
+
+    /**
+     * Gets the maximum number of splits that read from each broker at once.
+     * 
+     * @param conf
+     *            the job conf.
+     * @return the maximum number of concurrent splits per broker.
+     * @see #setMaxConcurrentSplitsPerBroker(Job, int)
+     */
+    public static int getMaxConcurrentSplitsPerBroker(final Configuration conf) {
+        return conf.getInt("kafka.broker.max.concurrent.splits", DEFAULT_MAX_CONCURRENT_SPLITS_PER_BROKER);
+    }
+
+    /**
+     * Sets the maximum number of Kafka brokers queried at once while planning input splits (optional).
+     *
+     * @param job
+     *            the job being configured.
+     * @param threads
+     *            the number of planning threads.
+     */
+    public static void setPlanningThreads(final Job job, final int threads) {
+        job.getConfiguration().setInt("kafka.planning.threads", threads);
+    }
+
+    /**
+     * Gets the maximum number of Kafka brokers queried at once while planning input splits.
+     *
+     * @param conf
+     *            the job conf.
+     * @return the number of planning threads.
+     */
+    public static int getPlanningThreads(final Configuration conf) {
+        return conf.getInt("kafka.planning.threads", DEFAULT_PLANNING_THREADS);
+    }
 }
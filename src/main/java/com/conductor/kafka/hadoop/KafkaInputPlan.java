@@ -0,0 +1,236 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.conductor.kafka.hadoop;
+
+import java.util.*;
+
+import org.apache.hadoop.mapreduce.InputSplit;
+
+import com.conductor.kafka.Broker;
+import com.conductor.kafka.Partition;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * The input a {@link KafkaInputFormat} job would read from one topic for one consumer group, broken down by
+ * {@link Partition}.
+ *
+ * <p/>
+ * Plans are produced by the same code that computes the splits of a real job, so they reflect every setting of the
+ * configuration used to produce them (time range, byte caps, split limits, etc.).
+ *
+ * @see KafkaInputFormat#getPlan(org.apache.hadoop.conf.Configuration, String, String)
+ * @see KafkaInputPlanTool
+ */
+public class KafkaInputPlan {
+
+    private final String topic;
+    private final String group;
+    private final List<PartitionPlan> partitions;
+    private final float messageSampleRate;
+
+    KafkaInputPlan(final String topic, final String group, final List<PartitionPlan> partitions) {
+        this(topic, group, partitions, KafkaInputFormat.DEFAULT_SAMPLE_RATE);
+    }
+
+    KafkaInputPlan(final String topic, final String group, final List<PartitionPlan> partitions,
+            final float messageSampleRate) {
+        this.topic = topic;
+        this.group = group;
+        this.partitions = Collections.unmodifiableList(partitions);
+        this.messageSampleRate = messageSampleRate;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    /**
+     * @return the plan of every partition of the topic, in the order Zookeeper lists them.
+     */
+    public List<PartitionPlan> getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * Returns the splits the job would read, interleaved round-robin across brokers, and across the partitions of each
+     * broker, so that the first wave of map tasks spreads its load over all of the brokers rather than reading from
+     * one or two of them. Hadoop orders splits by length before scheduling them, so this order holds among splits of
+     * the same {@link KafkaInputSplit#getLength() length}, which is rounded so that full Kafka files are of the same
+     * length.
+     * 
+     * @return the splits the job would read.
+     */
+    public List<InputSplit> getSplits() {
+        // the partitions of every broker that have splits left, in turn
+        final Map<Broker, Queue<Iterator<KafkaInputSplit>>> brokerPartitions = Maps.newLinkedHashMap();
+        for (final PartitionPlan partition : partitions) {
+            final Broker broker = partition.getPartition().getBroker();
+            if (!brokerPartitions.containsKey(broker)) {
+                brokerPartitions.put(broker, new LinkedList<Iterator<KafkaInputSplit>>());
+            }
+            if (!partition.getSplits().isEmpty()) {
+                brokerPartitions.get(broker).add(partition.getSplits().iterator());
+            }
+        }
+        final List<InputSplit> splits = Lists.newArrayList();
+        boolean added = true;
+        while (added) {
+            added = false;
+            for (final Queue<Iterator<KafkaInputSplit>> turns : brokerPartitions.values()) {
+                final Iterator<KafkaInputSplit> partition = turns.poll();
+                if (partition != null) {
+                    splits.add(partition.next());
+                    if (partition.hasNext()) {
+                        turns.add(partition);
+                    }
+                    added = true;
+                }
+            }
+        }
+        return splits;
+    }
+
+    /**
+     * @return the number of map tasks the job would run, i.e. its number of splits.
+     */
+    public int getEstimatedMapTasks() {
+        int count = 0;
+        for (final PartitionPlan partition : partitions) {
+            count += partition.getSplits().size();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of bytes the job would read, across all partitions.
+     */
+    public long getSplitBytes() {
+        long bytes = 0;
+        for (final PartitionPlan partition : partitions) {
+            bytes += partition.getSplitBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the fraction of the messages read that are handed to the mappers.
+     * @see KafkaInputFormat#setMessageSampleRate(org.apache.hadoop.mapreduce.Job, float)
+     */
+    public float getMessageSampleRate() {
+        return messageSampleRate;
+    }
+
+    /**
+     * @return an estimate of the number of payload bytes the mappers would see: the bytes read (which only include the
+     *         sampled splits), scaled by the message sample rate.
+     */
+    public long getEstimatedSampledBytes() {
+        return (long) Math.ceil(getSplitBytes() * (double) messageSampleRate);
+    }
+
+    /**
+     * @return the number of bytes the consumer group is behind, across all partitions, or {@code -1} if unknown.
+     */
+    public long getLagBytes() {
+        long bytes = 0;
+        for (final PartitionPlan partition : partitions) {
+            if (partition.getLagBytes() < 0) {
+                return -1;
+            }
+            bytes += partition.getLagBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * The input a job would read from a single {@link Partition}.
+     */
+    public static class PartitionPlan {
+        private final Partition partition;
+        private final long lastCommit;
+        private final long earliestOffset;
+        private final long latestOffset;
+        private final List<KafkaInputSplit> splits;
+
+        PartitionPlan(final Partition partition, final long lastCommit, final long earliestOffset,
+                final long latestOffset, final List<KafkaInputSplit> splits) {
+            this.partition = partition;
+            this.lastCommit = lastCommit;
+            this.earliestOffset = earliestOffset;
+            this.latestOffset = latestOffset;
+            this.splits = Collections.unmodifiableList(splits);
+        }
+
+        public Partition getPartition() {
+            return partition;
+        }
+
+        /**
+         * @return the offset the job starts reading from: the last commit of the consumer group, or the start offset
+         *         it was told to use; {@code -1} if the group has never committed.
+         */
+        public long getLastCommit() {
+            return lastCommit;
+        }
+
+        /**
+         * @return the oldest offset Kafka still has for this partition, or {@code -1} if unknown.
+         */
+        public long getEarliestOffset() {
+            return earliestOffset;
+        }
+
+        /**
+         * @return the log end offset of this partition, or {@code -1} if unknown.
+         */
+        public long getLatestOffset() {
+            return latestOffset;
+        }
+
+        /**
+         * @return the number of bytes between the last commit (or the earliest offset, whichever is larger) and the
+         *         log end offset, or {@code -1} if unknown.
+         */
+        public long getLagBytes() {
+            if (latestOffset < 0) {
+                return -1;
+            }
+            return Math.max(0, latestOffset - Math.max(lastCommit, earliestOffset));
+        }
+
+        /**
+         * @return the splits the job would read from this partition, newest first.
+         */
+        public List<KafkaInputSplit> getSplits() {
+            return splits;
+        }
+
+        /**
+         * @return the number of bytes the job would read from this partition.
+         */
+        public long getSplitBytes() {
+            long bytes = 0;
+            for (final KafkaInputSplit split : splits) {
+                bytes += split.getEndOffset() - split.getStartOffset();
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.conductor.kafka.hadoop;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+import com.conductor.kafka.Partition;
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Prints the {@link KafkaInputPlan} of one or more topic/consumer group pairs, without running a job:
+ *
+ * <pre>
+ * hadoop jar kangaroo.jar com.conductor.kafka.hadoop.KafkaInputPlanTool -D kafka.zk.connect=zk:2181 \
+ *     topic1:group1 topic2:group2
+ * </pre>
+ *
+ * Any of the {@link KafkaInputFormat} settings (e.g. {@code kafka.max.splits.per.partition}) can be passed with
+ * {@code -D} to see how they would affect a real job.
+ */
+public class KafkaInputPlanTool extends Configured implements Tool {
+
+    private final PrintStream out;
+
+    public KafkaInputPlanTool() {
+        this(System.out);
+    }
+
+    @VisibleForTesting
+    KafkaInputPlanTool(final PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public int run(final String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: KafkaInputPlanTool [generic options] <topic>:<group> [<topic>:<group> ...]");
+            ToolRunner.printGenericCommandUsage(System.err);
+            return 2;
+        }
+        for (final String arg : args) {
+            final int separator = arg.lastIndexOf(':');
+            if (separator <= 0 || separator == arg.length() - 1) {
+                System.err.println("Expected <topic>:<group>, got " + arg);
+                return 2;
+            }
+            print(getPlan(getConf(), arg.substring(0, separator), arg.substring(separator + 1)));
+        }
+        return 0;
+    }
+
+    @VisibleForTesting
+    void print(final KafkaInputPlan plan) {
+        out.println(String.format("%s (group %s)", plan.getTopic(), plan.getGroup()));
+        out.println(String.format("  %-24s %15s %15s %15s %15s %8s %15s", "partition", "last commit", "earliest",
+                "latest", "lag bytes", "splits", "split bytes"));
+        for (final KafkaInputPlan.PartitionPlan partitionPlan : plan.getPartitions()) {
+            final Partition partition = partitionPlan.getPartition();
+            out.println(String.format("  %-24s %15d %15d %15d %15d %8d %15d", partition.getBroker().getHost() + ":"
+                    + partition.getBroker().getPort() + "-" + partition.getPartId(), partitionPlan.getLastCommit(),
+                    partitionPlan.getEarliestOffset(), partitionPlan.getLatestOffset(), partitionPlan.getLagBytes(),
+                    partitionPlan.getSplits().size(), partitionPlan.getSplitBytes()));
+        }
+        out.println(String.format("  total lag: %d bytes, to read: %d bytes, estimated map tasks: %d",
+                plan.getLagBytes(), plan.getSplitBytes(), plan.getEstimatedMapTasks()));
+        if (plan.getMessageSampleRate() < KafkaInputFormat.DEFAULT_SAMPLE_RATE) {
+            out.println(String.format("  message sample rate: %s, estimated sampled bytes: %d",
+                    plan.getMessageSampleRate(), plan.getEstimatedSampledBytes()));
+        }
+    }
+
+    @VisibleForTesting
+    KafkaInputPlan getPlan(final Configuration conf, final String topic, final String group) throws IOException {
+        return KafkaInputFormat.getPlan(conf, topic, group);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        System.exit(ToolRunner.run(new KafkaInputPlanTool(), args));
+    }
+}
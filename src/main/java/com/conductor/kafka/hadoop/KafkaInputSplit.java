@@ -32,10 +32,16 @@ import com.conductor.kafka.Partition;
  */
 public class KafkaInputSplit extends InputSplit implements Writable {
 
+    /**
+     * Splits report their lengths rounded up to a multiple of this unit, 64 MB.
+     */
+    public static final long LENGTH_UNIT_BYTES = 64 * 1024 * 1024;
+
     private Partition partition;
     private long startOffset;
     private long endOffset;
     private boolean partitionCommitter;
+    private int brokerSplits = 1;
 
     /**
      * The {@link Writable} constructor; use {@link #KafkaInputSplit(Partition, long, long, boolean)}.
@@ -58,6 +64,7 @@ public class KafkaInputSplit extends InputSplit implements Writable {
         this.startOffset = in.readLong();
         this.endOffset = in.readLong();
         this.partitionCommitter = in.readBoolean();
+        this.brokerSplits = in.readInt();
     }
 
     @Override
@@ -66,11 +73,20 @@ public class KafkaInputSplit extends InputSplit implements Writable {
         out.writeLong(startOffset);
         out.writeLong(endOffset);
         out.writeBoolean(partitionCommitter);
+        out.writeInt(brokerSplits);
     }
 
+    /**
+     * Hadoop schedules splits from the longest to the shortest, with a stable sort. Kafka files are rarely of exactly
+     * the same size, so the length is rounded up to a multiple of {@link #LENGTH_UNIT_BYTES}; splits of about the same
+     * size then keep the order in which they were planned (see {@link KafkaInputPlan#getSplits()}).
+     * 
+     * @return the number of bytes in the split, rounded up to a multiple of {@link #LENGTH_UNIT_BYTES}.
+     */
     @Override
     public long getLength() throws IOException, InterruptedException {
-        return endOffset - startOffset;
+        final long bytes = endOffset - startOffset;
+        return (bytes + LENGTH_UNIT_BYTES - 1) / LENGTH_UNIT_BYTES * LENGTH_UNIT_BYTES;
     }
 
     @Override
@@ -110,6 +126,18 @@ public class KafkaInputSplit extends InputSplit implements Writable {
         this.partitionCommitter = partitionCommitter;
     }
 
+    /**
+     * @return the number of splits of the job that read from the broker of this split, as of planning; {@code 1} if
+     *         unknown.
+     */
+    public int getBrokerSplits() {
+        return brokerSplits;
+    }
+
+    public void setBrokerSplits(final int brokerSplits) {
+        this.brokerSplits = brokerSplits;
+    }
+
     @Override
     public String toString() {
         return String.format("%s:%d:%s_%d[%d, %d]", partition.getBroker().getHost(), partition.getBroker().getPort(),
@@ -17,19 +17,32 @@ package com.conductor.kafka.hadoop;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.IOException;
 import java.util.Date;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.*;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.compress.BZip2Codec;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.SplittableCompressionCodec;
 import org.apache.hadoop.mapreduce.*;
+import org.apache.hadoop.mapreduce.lib.map.MultithreadedMapper;
 import org.apache.hadoop.mapreduce.lib.output.*;
 
+import com.conductor.hadoop.HourlyOutputPathExtractor;
+import com.conductor.hadoop.MultithreadedDelegatingMapper;
+import com.conductor.hadoop.OutputPathExtractor;
+import com.conductor.hadoop.PartitionedOutputFormat;
 import com.conductor.kafka.hadoop.MultipleKafkaInputFormat.TopicConf;
 import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -55,8 +68,9 @@ import com.google.common.collect.Lists;
  * <ol>
  * <li>The Zookeeper connection string: {@link #setZkConnect(String)}</li>
  * <li>At least one queue input: {@link #addQueueInput(String, String, Class)}</li>
- * <li>One output format: {@link #setNullOutputFormat()}, {@link #setTextFileOutputFormat()}, or
- * {@link #setSequenceFileOutputFormat()}. If the output path is not specified, one will be generated for you.</li>
+ * <li>One output format: {@link #setNullOutputFormat()}, {@link #setTextFileOutputFormat()},
+ * {@link #setSequenceFileOutputFormat()}, {@link #setPartitionedOutputFormat(Class)}, or
+ * {@link #setKafkaOutputFormat(String)}. If the output path is not specified, one will be generated for you.</li>
  * <li>If your output path is S3, you must also specify your S3 credentials using {@link #useS3(String, String, String)}
  * , where {@code defaultS3Bucket} is optional if and only if you have specified the full path of your output.
  * Otherwise, {@code defaultS3Bucket} will be used to <em>generate</em> an output path.</li>
@@ -77,7 +91,7 @@ import com.google.common.collect.Lists;
 public final class KafkaJobBuilder {
 
     private static enum SupportedOutputFormat {
-        NULL, TEXT_FILE, SEQUENCE_FILE
+        NULL, TEXT_FILE, SEQUENCE_FILE, PARTITIONED_SEQUENCE_FILE, KAFKA
     }
 
     private String jobName;
@@ -86,6 +100,7 @@ public final class KafkaJobBuilder {
     private Class<?> mapOutputValueClass;
     private Class<? extends Partitioner> partitionerClass;
     private Class<? extends Reducer> reducerClass;
+    private Class<? extends Reducer> combinerClass;
     private Class<? extends OutputFormat> outputFormatClass;
     private Class<?> outputKeyClass;
     private Class<?> outputValueClass;
@@ -95,11 +110,30 @@ public final class KafkaJobBuilder {
     private String taskMemorySettings;
     private int numReduceTasks = 10;
     private int kafkaFetchSizeBytes = 5 * 1024 * 1024;
+    private int mapperThreads = 1;
+    private long targetBytesPerReducer;
+    private int maxAutoReduceTasks;
+    private int autoTaskMemoryBaseMb;
+    private long uberThresholdBytes;
+    private String hdfsOffsetStorePath;
     private boolean useS3 = false;
     private String s3Bucket;
     private String s3AccessKey;
     private String s3SecretyKey;
     private String outputFormatPath;
+    private String outputTopic;
+    private Class<? extends OutputPathExtractor> outputPathExtractorClass;
+    private Class<? extends CompressionCodec> outputCompressionCodec;
+    private Class<? extends CompressionCodec> mapOutputCompressionCodec;
+
+    private static final long MEGABYTE = 1024 * 1024;
+
+    /**
+     * Heap the application master of an uber job needs on top of its tasks, in megabytes.
+     */
+    private static final int UBER_AM_OVERHEAD_MB = 512;
+
+    private static final Pattern XMX = Pattern.compile("-Xmx(\\d+)([kKmMgG]?)");
 
     // enforce use of the builder
     private KafkaJobBuilder() {
@@ -117,6 +151,23 @@ public final class KafkaJobBuilder {
      *             if any required parameters are not set.
      */
     public Job configureJob(final Configuration conf) throws Exception {
+        final Job job = configureUnsizedJob(conf);
+        sizeJob(job);
+        return job;
+    }
+
+    /**
+     * Same as {@link #configureJob(Configuration)}, but without sizing the job from its planned input, for callers
+     * that change the input of the job before calling {@link #sizeJob(Job)} themselves.
+     * 
+     * @param conf
+     *            the job conf.
+     * @return a configured {@link Job}, not yet sized.
+     * @throws Exception
+     * @throws IllegalArgumentException
+     *             if any required parameters are not set.
+     */
+    Job configureUnsizedJob(final Configuration conf) throws Exception {
         validateSettings();
         final Job job = Job.getInstance(conf, getDefaultedJobName());
 
@@ -126,13 +177,24 @@ public final class KafkaJobBuilder {
             final TopicConf topicConf = Iterables.getOnlyElement(getQueueMappers());
             KafkaInputFormat.setTopic(job, topicConf.getTopic());
             KafkaInputFormat.setConsumerGroup(job, topicConf.getConsumerGroup());
-            job.setMapperClass(topicConf.getMapper());
+            if (getMapperThreads() > 1) {
+                job.setMapperClass(MultithreadedMapper.class);
+                job.getConfiguration().setClass(MultithreadedMapper.MAP_CLASS, topicConf.getMapper(), Mapper.class);
+                MultithreadedMapper.setNumberOfThreads(job, getMapperThreads());
+            } else {
+                job.setMapperClass(topicConf.getMapper());
+            }
         } else {
             job.setInputFormatClass(MultipleKafkaInputFormat.class);
             for (final TopicConf topicConf : getQueueMappers()) {
                 MultipleKafkaInputFormat.addTopic(job, topicConf.getTopic(), topicConf.getConsumerGroup(),
                         topicConf.getMapper());
             }
+            if (getMapperThreads() > 1) {
+                // must come after addTopic, which sets the DelegatingMapper
+                job.setMapperClass(MultithreadedDelegatingMapper.class);
+                MultithreadedDelegatingMapper.setNumberOfThreads(job, getMapperThreads());
+            }
         }
 
         if (getMapOutputKeyClass() != null) {
@@ -148,6 +210,9 @@ public final class KafkaJobBuilder {
         } else {
             job.setReducerClass(getReducerClass());
             job.setNumReduceTasks(getNumReduceTasks());
+            if (getCombinerClass() != null) {
+                job.setCombinerClass(getCombinerClass());
+            }
         }
 
         if (getPartitionerClass() != null) {
@@ -162,6 +227,23 @@ public final class KafkaJobBuilder {
             TextOutputFormat.setOutputPath(job, getDefaultedOutputPath());
         } else if (getOutputFormat() == SupportedOutputFormat.SEQUENCE_FILE) {
             SequenceFileOutputFormat.setOutputPath(job, getDefaultedOutputPath());
+        } else if (getOutputFormat() == SupportedOutputFormat.PARTITIONED_SEQUENCE_FILE) {
+            PartitionedOutputFormat.setOutputPath(job, getDefaultedOutputPath());
+            PartitionedOutputFormat.setPathExtractorClass(job, getOutputPathExtractorClass());
+        } else if (getOutputFormat() == SupportedOutputFormat.KAFKA) {
+            KafkaOutputFormat.setTopic(job, getOutputTopic());
+        }
+
+        if (getOutputCompressionCodec() != null && isFileOutputFormat()) {
+            FileOutputFormat.setCompressOutput(job, true);
+            FileOutputFormat.setOutputCompressorClass(job, getOutputCompressionCodec());
+            // compress whole blocks of records rather than records one at a time
+            SequenceFileOutputFormat.setOutputCompressionType(job, CompressionType.BLOCK);
+        }
+        if (getMapOutputCompressionCodec() != null) {
+            job.getConfiguration().setBoolean(MRJobConfig.MAP_OUTPUT_COMPRESS, true);
+            job.getConfiguration().setClass(MRJobConfig.MAP_OUTPUT_COMPRESS_CODEC, getMapOutputCompressionCodec(),
+                    CompressionCodec.class);
         }
 
         if (usingS3()) {
@@ -178,6 +260,10 @@ public final class KafkaJobBuilder {
         // setup kafka input format specifics
         KafkaInputFormat.setZkConnect(job, getZkConnect());
         KafkaInputFormat.setKafkaFetchSizeBytes(job, getKafkaFetchSizeBytes());
+        if (!Strings.isNullOrEmpty(getHdfsOffsetStorePath())) {
+            KafkaInputFormat.setOffsetStoreClass(job, HdfsOffsetStore.class);
+            HdfsOffsetStore.setPath(job, new Path(getHdfsOffsetStorePath()));
+        }
 
         job.setSpeculativeExecution(false);
         job.setJarByClass(getClass());
@@ -186,10 +272,145 @@ public final class KafkaJobBuilder {
         if (!Strings.isNullOrEmpty(getTaskMemorySettings())) {
             job.getConfiguration().set("mapred.child.java.opts", getTaskMemorySettings());
         }
+        if (getAutoTaskMemoryBaseMb() > 0) {
+            final int heapMb = getAutoMapHeapMb(getAutoTaskMemoryBaseMb(), getKafkaFetchSizeBytes(),
+                    KafkaInputFormat.getKafkaPrefetchDepth(job.getConfiguration()));
+            job.getConfiguration().set(MRJobConfig.MAP_JAVA_OPTS, String.format("-Xmx%dm", heapMb));
+            // leave a quarter of the container for the non-heap memory of the JVM
+            job.getConfiguration().setInt(MRJobConfig.MAP_MEMORY_MB, heapMb + heapMb / 4);
+        }
 
         return job;
     }
 
+    /**
+     * Sizes the reducers and the uber task of {@code job} from its planned input. This queries Kafka and the offset
+     * store, like starting the job.
+     * 
+     * @param job
+     *            a job configured by {@link #configureUnsizedJob(Configuration)}.
+     * @throws IOException
+     */
+    void sizeJob(final Job job) throws IOException {
+        final boolean autoReduceTasks = getTargetBytesPerReducer() > 0 && getReducerClass() != null;
+        if (autoReduceTasks || getUberThresholdBytes() > 0) {
+            long inputBytes = 0;
+            long sampledBytes = 0;
+            int mapTasks = 0;
+            for (final KafkaInputPlan plan : planInput(job.getConfiguration())) {
+                inputBytes += plan.getSplitBytes();
+                sampledBytes += plan.getEstimatedSampledBytes();
+                mapTasks += plan.getEstimatedMapTasks();
+            }
+            if (autoReduceTasks) {
+                // the reducers only see the messages that are sampled
+                job.setNumReduceTasks(getAutoNumReduceTasks(sampledBytes, getTargetBytesPerReducer(),
+                        getMaxAutoReduceTasks()));
+            }
+            if (getUberThresholdBytes() > 0 && inputBytes <= getUberThresholdBytes()) {
+                configureUberTask(job, inputBytes, mapTasks);
+            }
+        }
+    }
+
+    /**
+     * Runs the whole job inside its application master, which saves the startup of a container per task.
+     */
+    @VisibleForTesting
+    void configureUberTask(final Job job, final long inputBytes, final int mapTasks) {
+        final Configuration conf = job.getConfiguration();
+        conf.setBoolean(MRJobConfig.JOB_UBERTASK_ENABLE, true);
+        conf.setInt(MRJobConfig.JOB_UBERTASK_MAXMAPS, Math.max(mapTasks, 1));
+        conf.setLong(MRJobConfig.JOB_UBERTASK_MAXBYTES, Math.max(inputBytes, 1));
+        // an uber job runs at most one reducer
+        if (job.getNumReduceTasks() > 1) {
+            job.setNumReduceTasks(1);
+        }
+        // the tasks must fit in the application master, next to its own work
+        if (getAutoTaskMemoryBaseMb() > 0) {
+            final int mapHeapMb = getAutoMapHeapMb(getAutoTaskMemoryBaseMb(), getKafkaFetchSizeBytes(),
+                    KafkaInputFormat.getKafkaPrefetchDepth(conf));
+            final String amOpts = conf.get(MRJobConfig.MR_AM_COMMAND_OPTS, MRJobConfig.DEFAULT_MR_AM_COMMAND_OPTS);
+            final int amHeapMb = Math.max(getHeapMb(amOpts), mapHeapMb + UBER_AM_OVERHEAD_MB);
+            conf.set(MRJobConfig.MR_AM_COMMAND_OPTS, setHeapMb(amOpts, amHeapMb));
+            // leave a quarter of the container for the non-heap memory of the JVM, as for the map tasks
+            conf.setInt(MRJobConfig.MR_AM_VMEM_MB, Math.max(amHeapMb + amHeapMb / 4,
+                    conf.getInt(MRJobConfig.MR_AM_VMEM_MB, MRJobConfig.DEFAULT_MR_AM_VMEM_MB)));
+        }
+    }
+
+    /**
+     * @return the maximum heap set by the last {@code -Xmx} option of {@code javaOpts}, in megabytes, or {@code 0} if
+     *         there is none.
+     */
+    @VisibleForTesting
+    static int getHeapMb(@Nullable final String javaOpts) {
+        long heapMb = 0;
+        if (javaOpts != null) {
+            final Matcher matcher = XMX.matcher(javaOpts);
+            while (matcher.find()) {
+                final long size = Long.parseLong(matcher.group(1));
+                final String unit = matcher.group(2).toLowerCase();
+                if (unit.equals("g")) {
+                    heapMb = size * 1024;
+                } else if (unit.equals("m")) {
+                    heapMb = size;
+                } else if (unit.equals("k")) {
+                    heapMb = size / 1024;
+                } else {
+                    heapMb = size / MEGABYTE;
+                }
+            }
+        }
+        return (int) heapMb;
+    }
+
+    /**
+     * @return {@code javaOpts} with its {@code -Xmx} options replaced by (or, if there are none, followed by) one of
+     *         {@code heapMb} megabytes.
+     */
+    @VisibleForTesting
+    static String setHeapMb(@Nullable final String javaOpts, final int heapMb) {
+        final String xmx = String.format("-Xmx%dm", heapMb);
+        if (Strings.isNullOrEmpty(javaOpts)) {
+            return xmx;
+        }
+        final Matcher matcher = XMX.matcher(javaOpts);
+        return matcher.find() ? matcher.replaceAll(xmx) : javaOpts + " " + xmx;
+    }
+
+    private List<KafkaInputPlan> planInput(final Configuration conf) throws IOException {
+        final List<KafkaInputPlan> plans = Lists.newArrayList();
+        for (final TopicConf topicConf : getQueueMappers()) {
+            plans.add(KafkaInputFormat.getPlan(conf, topicConf.getTopic(), topicConf.getConsumerGroup()));
+        }
+        return plans;
+    }
+
+    /**
+     * @return enough reducers to give each about {@code targetBytesPerReducer} bytes of the input, between {@code 1}
+     *         and {@code maxReduceTasks}.
+     */
+    @VisibleForTesting
+    static int getAutoNumReduceTasks(final long inputBytes, final long targetBytesPerReducer,
+            final int maxReduceTasks) {
+        final long reduceTasks = (inputBytes + targetBytesPerReducer - 1) / targetBytesPerReducer;
+        return (int) Math.max(1, Math.min(reduceTasks, maxReduceTasks));
+    }
+
+    /**
+     * A {@link KafkaRecordReader} holds the message set being fetched, the one being mapped, and up to
+     * {@code prefetchDepth} decoded ones in between; a compressed message set is held both compressed and
+     * decompressed, so this allows for twice the fetch size for each.
+     * 
+     * @return the map heap in megabytes: {@code baseMb} for the mapper itself, plus the buffers of the record reader.
+     */
+    @VisibleForTesting
+    static int getAutoMapHeapMb(final int baseMb, final int fetchSizeBytes, final int prefetchDepth) {
+        final long readerBytes = 2L * fetchSizeBytes * (prefetchDepth + 2);
+        return baseMb + (int) ((readerBytes + MEGABYTE - 1) / MEGABYTE);
+    }
+
     private String getDefaultedJobName() {
         final String jobName;
         if (Strings.isNullOrEmpty(getJobName())) {
@@ -332,6 +553,85 @@ public final class KafkaJobBuilder {
         return this;
     }
 
+    /**
+     * Derives the number of reduce tasks from the input of the job (optional): {@link #configureJob(Configuration)}
+     * plans the input of every queue, like the job will when it starts, and uses one reducer for every
+     * {@code targetBytesPerReducer} bytes to be read, but no more than {@code maxReduceTasks}. This overrides
+     * {@link #setNumReduceTasks(int)}.
+     * 
+     * <p/>
+     * Note that the input is planned from the offsets committed when the job is configured.
+     * 
+     * @param targetBytesPerReducer
+     *            the number of input bytes per reducer.
+     * @param maxReduceTasks
+     *            the maximum number of reduce tasks.
+     * @return {@code this}
+     * @see KafkaInputFormat#getPlan(Configuration, String, String)
+     */
+    public KafkaJobBuilder setAutoNumReduceTasks(final long targetBytesPerReducer, final int maxReduceTasks) {
+        checkArgument(targetBytesPerReducer > 0, "targetBytesPerReducer must be positive.");
+        checkArgument(maxReduceTasks > 0, "maxReduceTasks must be positive.");
+        this.targetBytesPerReducer = targetBytesPerReducer;
+        this.maxAutoReduceTasks = maxReduceTasks;
+        return this;
+    }
+
+    /**
+     * Derives the heap and container size of map tasks from the Kafka fetch size and
+     * {@link KafkaInputFormat#getKafkaPrefetchDepth(Configuration) prefetch depth} (optional): the heap is
+     * {@code baseHeapMb} plus twice the fetch size for every message set the record reader may hold at once, and the
+     * container is a quarter bigger than the heap. This sets {@code mapreduce.map.java.opts} and
+     * {@code mapreduce.map.memory.mb}, which take precedence over {@link #setTaskMemorySettings(String)} for mappers.
+     * 
+     * @param baseHeapMb
+     *            the heap needed by the mapper itself, in megabytes.
+     * @return {@code this}
+     */
+    public KafkaJobBuilder setAutoTaskMemory(final int baseHeapMb) {
+        checkArgument(baseHeapMb > 0, "baseHeapMb must be positive.");
+        this.autoTaskMemoryBaseMb = baseHeapMb;
+        return this;
+    }
+
+    /**
+     * Runs small jobs as a single "uber" task inside their application master (optional): if the input planned by
+     * {@link #configureJob(Configuration)} is at most {@code thresholdBytes}, the job is configured to run all of its
+     * map tasks, and at most one reduce task, in the application master's JVM, one after the other. The record readers
+     * and offset commits are the same as in any other job; only the startup of a YARN container per task is saved,
+     * which dominates jobs whose consumer groups are nearly caught up.
+     * 
+     * <p/>
+     * Note that the input is planned from the offsets committed when the job is configured. If
+     * {@link #setAutoTaskMemory(int)} is used, the application master gets the memory of a map task.
+     * 
+     * @param thresholdBytes
+     *            the largest number of input bytes to run as an uber task.
+     * @return {@code this}
+     */
+    public KafkaJobBuilder setUberThresholdBytes(final long thresholdBytes) {
+        checkArgument(thresholdBytes > 0, "thresholdBytes must be positive.");
+        this.uberThresholdBytes = thresholdBytes;
+        return this;
+    }
+
+    /**
+     * Sets the combiner of this job (optional), which pre-aggregates map output before it is shuffled. It only runs
+     * when the job has a {@link Reducer}.
+     * 
+     * <p/>
+     * The combiner sees the output of every mapper of the job; for combining logic specific to one topic, aggregate in
+     * its mapper with a {@link com.conductor.hadoop.MapSideAggregator}.
+     * 
+     * @param combinerClass
+     *            the combiner class.
+     * @return {@code this}
+     */
+    public KafkaJobBuilder setCombinerClass(final Class<? extends Reducer> combinerClass) {
+        this.combinerClass = combinerClass;
+        return this;
+    }
+
     /**
      * Sets the {@link Partitioner} of this job (optional).
      * 
@@ -357,6 +657,35 @@ public final class KafkaJobBuilder {
         return this;
     }
 
+    /**
+     * Sets the number of threads each map task runs its {@link Mapper} on (optional, defaults to {@code 1}). Useful
+     * when mappers are CPU-bound; every thread gets its own instance of the mapper.
+     * 
+     * @param mapperThreads
+     *            the number of mapper threads per task.
+     * @return {@code this}
+     * @see MultithreadedMapper
+     * @see MultithreadedDelegatingMapper
+     */
+    public KafkaJobBuilder setMapperThreads(final int mapperThreads) {
+        checkArgument(mapperThreads > 0, "mapperThreads must be positive.");
+        this.mapperThreads = mapperThreads;
+        return this;
+    }
+
+    /**
+     * Keeps consumer group offsets in {@code path} on HDFS rather than in Zookeeper (optional).
+     * 
+     * @param path
+     *            the root directory of the offsets.
+     * @return {@code this}
+     * @see HdfsOffsetStore
+     */
+    public KafkaJobBuilder setHdfsOffsetStorePath(final String path) {
+        this.hdfsOffsetStorePath = path;
+        return this;
+    }
+
     /**
      * Job will use {@link NullOutputFormat}.
      * 
@@ -426,6 +755,59 @@ public final class KafkaJobBuilder {
         return setSequenceFileOutputFormat(null);
     }
 
+    /**
+     * Job will use a {@link PartitionedOutputFormat} of {@link SequenceFileOutputFormat}s, writing every record under
+     * the subdirectory of {@code outputPath} picked by {@code extractorClass} (e.g. one per key and hour, see
+     * {@link HourlyOutputPathExtractor}). If {@code outputPath} is null, the job will generate one as specified by
+     * {@link #setSequenceFileOutputFormat()}.
+     * 
+     * <p/>
+     * Note that {@link BytesWritable} is used for output key and value.
+     * 
+     * @param extractorClass
+     *            the extractor class.
+     * @param outputPath
+     *            (optional) the fully specified output path of the job.
+     * @return {@code this}
+     * @see PartitionedOutputFormat#setMaxOpenWriters(Job, int)
+     */
+    public KafkaJobBuilder setPartitionedOutputFormat(final Class<? extends OutputPathExtractor> extractorClass,
+            @Nullable final String outputPath) {
+        this.outputPathExtractorClass = checkNotNull(extractorClass, "extractorClass is null.");
+        return configureOutput(outputPath, PartitionedOutputFormat.class, BytesWritable.class, BytesWritable.class,
+                SupportedOutputFormat.PARTITIONED_SEQUENCE_FILE);
+    }
+
+    /**
+     * Job will use a {@link PartitionedOutputFormat} as specified by
+     * {@link #setPartitionedOutputFormat(Class, String)}, generating a unique output path.
+     * 
+     * @param extractorClass
+     *            the extractor class.
+     * @return {@code this}
+     */
+    public KafkaJobBuilder setPartitionedOutputFormat(final Class<? extends OutputPathExtractor> extractorClass) {
+        return setPartitionedOutputFormat(extractorClass, null);
+    }
+
+    /**
+     * Job will use {@link KafkaOutputFormat}, publishing every output value to {@code topic} on the same Kafka cluster
+     * it reads from.
+     * 
+     * <p/>
+     * Note that {@link BytesWritable} is used for output key and value; keys only pick the partition of each value.
+     * 
+     * @param topic
+     *            the output topic.
+     * @return {@code this}
+     */
+    public KafkaJobBuilder setKafkaOutputFormat(final String topic) {
+        checkArgument(!Strings.isNullOrEmpty(topic), "topic is empty.");
+        this.outputTopic = topic;
+        return configureOutput(null, KafkaOutputFormat.class, BytesWritable.class, BytesWritable.class,
+                SupportedOutputFormat.KAFKA);
+    }
+
     private KafkaJobBuilder configureOutput(final String outputPath,
             final Class<? extends OutputFormat> outputFormatClass, final Class<?> outputKeyClass,
             final Class<?> outputValueClass, final SupportedOutputFormat outputFormat) {
@@ -437,6 +819,35 @@ public final class KafkaJobBuilder {
         return this;
     }
 
+    /**
+     * Compresses the files written by the job with {@code codec} (optional, output is not compressed by default).
+     * Sequence files are compressed a block of records at a time; text files must use a
+     * {@link SplittableCompressionCodec} (e.g. {@link BZip2Codec}) so that downstream jobs can still split them.
+     * Ignored for outputs that are not files.
+     * 
+     * @param codec
+     *            the compression codec.
+     * @return {@code this}
+     */
+    public KafkaJobBuilder setOutputCompression(final Class<? extends CompressionCodec> codec) {
+        this.outputCompressionCodec = codec;
+        return this;
+    }
+
+    /**
+     * Compresses the intermediate output of the mappers with {@code codec} (optional, not compressed by default), which
+     * cuts down the data shuffled to the reducers. {@link org.apache.hadoop.io.compress.SnappyCodec} is a good choice
+     * when the native libraries are available.
+     * 
+     * @param codec
+     *            the compression codec.
+     * @return {@code this}
+     */
+    public KafkaJobBuilder setMapOutputCompression(final Class<? extends CompressionCodec> codec) {
+        this.mapOutputCompressionCodec = codec;
+        return this;
+    }
+
     /**
      * Job will set {@link LazyOutputFormat#setOutputFormatClass(Job, Class)}.
      * 
@@ -479,6 +890,10 @@ public final class KafkaJobBuilder {
         if (usingS3() && Strings.isNullOrEmpty(getOutputFormatPath())) {
             checkArgument(!Strings.isNullOrEmpty(getS3Bucket()), "Specified s3 output, but no bucket.");
         }
+        if (getOutputCompressionCodec() != null && getOutputFormat() == SupportedOutputFormat.TEXT_FILE) {
+            checkArgument(SplittableCompressionCodec.class.isAssignableFrom(getOutputCompressionCodec()),
+                    "Text output must use a splittable compression codec, e.g. BZip2Codec.");
+        }
         if (getOutputFormatPath() != null
                 && (getOutputFormatPath().startsWith("s3://") || getOutputFormatPath().startsWith("s3n://"))
                 && !usingS3()) {
@@ -520,6 +935,10 @@ public final class KafkaJobBuilder {
         return reducerClass;
     }
 
+    public Class<? extends Reducer> getCombinerClass() {
+        return combinerClass;
+    }
+
     public String getZkConnect() {
         return zkConnect;
     }
@@ -532,10 +951,34 @@ public final class KafkaJobBuilder {
         return numReduceTasks;
     }
 
+    public long getTargetBytesPerReducer() {
+        return targetBytesPerReducer;
+    }
+
+    public int getMaxAutoReduceTasks() {
+        return maxAutoReduceTasks;
+    }
+
+    public int getAutoTaskMemoryBaseMb() {
+        return autoTaskMemoryBaseMb;
+    }
+
+    public long getUberThresholdBytes() {
+        return uberThresholdBytes;
+    }
+
     public int getKafkaFetchSizeBytes() {
         return kafkaFetchSizeBytes;
     }
 
+    public int getMapperThreads() {
+        return mapperThreads;
+    }
+
+    public String getHdfsOffsetStorePath() {
+        return hdfsOffsetStorePath;
+    }
+
     public Class<? extends OutputFormat> getOutputFormatClass() {
         return outputFormatClass;
     }
@@ -560,6 +1003,28 @@ public final class KafkaJobBuilder {
         return s3Bucket;
     }
 
+    public Class<? extends CompressionCodec> getOutputCompressionCodec() {
+        return outputCompressionCodec;
+    }
+
+    public Class<? extends CompressionCodec> getMapOutputCompressionCodec() {
+        return mapOutputCompressionCodec;
+    }
+
+    private boolean isFileOutputFormat() {
+        return getOutputFormat() == SupportedOutputFormat.TEXT_FILE
+                || getOutputFormat() == SupportedOutputFormat.SEQUENCE_FILE
+                || getOutputFormat() == SupportedOutputFormat.PARTITIONED_SEQUENCE_FILE;
+    }
+
+    public Class<? extends OutputPathExtractor> getOutputPathExtractorClass() {
+        return outputPathExtractorClass;
+    }
+
+    public String getOutputTopic() {
+        return outputTopic;
+    }
+
     public String getOutputFormatPath() {
         return outputFormatPath;
     }
@@ -0,0 +1,313 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.conductor.kafka.hadoop;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.conductor.kafka.OffsetStore;
+import com.conductor.kafka.Partition;
+import com.conductor.kafka.hadoop.MultipleKafkaInputFormat.TopicConf;
+import com.conductor.kafka.zk.ZkUtils;
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Continuously runs incremental jobs configured by a {@link KafkaJobBuilder}, one micro-batch after another.
+ *
+ * <p/>
+ * Batch {@code N+1} is planned and submitted while batch {@code N} is still running: it starts where batch {@code N}
+ * was planned to end, rather than where the consumer groups last committed. To make that safe, every batch reads a
+ * frozen window of offsets (see {@link KafkaInputFormat#setStartOffsets(Job, String, String, Map)} and
+ * {@link KafkaInputFormat#setEndOffsets(Job, String, String, Map)}), and batches are committed strictly in order, each
+ * one only after it and all of the batches before it succeeded. At most {@link #setMaxBatchesInFlight(int)} batches are
+ * submitted at any given time.
+ *
+ * <p/>
+ * Offsets are committed directly by the runner, so do not call {@link OffsetStore#commit(String, String)} for
+ * consumer groups driven by a runner; its batches do not write temporary offsets (see
+ * {@link KafkaInputFormat#setCommitOffsets(Job, boolean)}). Committing a batch to Zookeeper writes one offset per
+ * partition; if the runner dies part way through a commit, a restarted runner will re-read that batch for the
+ * partitions that were not yet committed. Offset stores that write all partitions at once, like
+ * {@link HdfsOffsetStore}, do not have this problem.
+ *
+ * <p/>
+ * If a batch fails, every batch submitted after it is killed, none of them are committed, and {@link #run()} throws.
+ *
+ * @see KafkaJobBuilder
+ */
+@Beta
+public class KafkaMicroBatchRunner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KafkaMicroBatchRunner.class);
+
+    /**
+     * Default number of batches that may be running at once, 2.
+     */
+    public static final int DEFAULT_MAX_BATCHES_IN_FLIGHT = 2;
+    /**
+     * Default time to wait before planning again when there is no new data, 30 seconds.
+     */
+    public static final long DEFAULT_IDLE_SLEEP_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private final KafkaJobBuilder builder;
+    private final Configuration conf;
+    private int maxBatchesInFlight = DEFAULT_MAX_BATCHES_IN_FLIGHT;
+    private long idleSleepMs = DEFAULT_IDLE_SLEEP_MS;
+    private long batchId;
+    private volatile boolean stopped;
+
+    /**
+     * @param builder
+     *            the builder used to configure every batch.
+     * @param conf
+     *            the base configuration of every batch.
+     */
+    public KafkaMicroBatchRunner(final KafkaJobBuilder builder, final Configuration conf) {
+        this.builder = checkNotNull(builder, "builder is null.");
+        this.conf = checkNotNull(conf, "conf is null.");
+    }
+
+    /**
+     * Sets the number of batches that may be running at once (optional, defaults to
+     * {@link #DEFAULT_MAX_BATCHES_IN_FLIGHT}).
+     *
+     * @param maxBatchesInFlight
+     *            the maximum number of batches running at once.
+     * @return {@code this}
+     */
+    public KafkaMicroBatchRunner setMaxBatchesInFlight(final int maxBatchesInFlight) {
+        checkArgument(maxBatchesInFlight > 0, "maxBatchesInFlight must be positive.");
+        this.maxBatchesInFlight = maxBatchesInFlight;
+        return this;
+    }
+
+    /**
+     * Sets how long to wait before planning again when there is no new data (optional, defaults to
+     * {@link #DEFAULT_IDLE_SLEEP_MS}).
+     *
+     * @param idleSleepMs
+     *            the idle time in milliseconds.
+     * @return {@code this}
+     */
+    public KafkaMicroBatchRunner setIdleSleepMs(final long idleSleepMs) {
+        this.idleSleepMs = idleSleepMs;
+        return this;
+    }
+
+    /**
+     * Runs batches until {@link #stop()} is called, at which point the batches that are already running are completed
+     * and committed before returning.
+     *
+     * @throws Exception
+     *             if a batch could not be planned, submitted, or did not succeed.
+     */
+    public void run() throws Exception {
+        final LinkedList<Batch> inFlight = Lists.newLinkedList();
+        // where the next batch starts; partitions that are not in here start from their last commit
+        final Map<TopicConf, Map<Partition, Long>> nextStartOffsets = Maps.newHashMap();
+        try {
+            while (!stopped) {
+                // commit whatever has already finished, in order
+                while (!inFlight.isEmpty() && inFlight.getFirst().getJob().isComplete()) {
+                    complete(inFlight.removeFirst());
+                }
+                if (inFlight.size() >= maxBatchesInFlight) {
+                    complete(inFlight.removeFirst());
+                    continue;
+                }
+
+                final Batch batch = plan(nextStartOffsets);
+                if (batch == null) {
+                    LOG.info(String.format("No new data, sleeping for %d ms", idleSleepMs));
+                    Thread.sleep(idleSleepMs);
+                    continue;
+                }
+                LOG.info(String.format("Submitting batch %d", batch.getId()));
+                batch.getJob().submit();
+                inFlight.addLast(batch);
+                nextStartOffsets.putAll(batch.getEndOffsets());
+            }
+            while (!inFlight.isEmpty()) {
+                complete(inFlight.removeFirst());
+            }
+        } catch (final Exception e) {
+            for (final Batch batch : inFlight) {
+                LOG.warn(String.format("Killing batch %d", batch.getId()));
+                batch.getJob().killJob();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Stops planning new batches; {@link #run()} returns once the running batches have been committed.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    private void complete(final Batch batch) throws Exception {
+        if (!batch.getJob().waitForCompletion(false)) {
+            throw new IOException(String.format("Batch %d (%s) did not succeed", batch.getId(), batch.getJob()
+                    .getJobID()));
+        }
+        commit(batch);
+    }
+
+    /**
+     * Configures the next batch, starting from {@code startOffsets} and freezing its end offsets.
+     *
+     * @param startOffsets
+     *            the offsets to start from, by topic input.
+     * @return the next batch, or {@code null} if there is nothing to read.
+     * @throws Exception
+     */
+    @VisibleForTesting
+    Batch plan(final Map<TopicConf, Map<Partition, Long>> startOffsets) throws Exception {
+        // the job is sized once its window of offsets is frozen
+        final Job job = builder.configureUnsizedJob(conf);
+        // the runner commits offsets itself
+        KafkaInputFormat.setCommitOffsets(job, false);
+        final Batch batch = new Batch(++batchId, job);
+        boolean empty = true;
+        for (final TopicConf topicConf : builder.getQueueMappers()) {
+            final String topic = topicConf.getTopic();
+            final String group = topicConf.getConsumerGroup();
+            final Map<Partition, Long> starts = startOffsets.containsKey(topicConf) ? startOffsets.get(topicConf)
+                    : Collections.<Partition, Long> emptyMap();
+            KafkaInputFormat.setStartOffsets(job, group, topic, starts);
+
+            // partitions without any new data end where they started
+            final Map<Partition, Long> ends = Maps.newHashMap(starts);
+            final Map<Partition, Long> commits = Maps.newHashMap();
+            for (final InputSplit split : getInputSplits(job.getConfiguration(), topic, group)) {
+                final KafkaInputSplit kafkaSplit = (KafkaInputSplit) split;
+                if (kafkaSplit.isPartitionCommitter()) {
+                    ends.put(kafkaSplit.getPartition(), kafkaSplit.getEndOffset());
+                    commits.put(kafkaSplit.getPartition(), kafkaSplit.getEndOffset());
+                }
+                empty = false;
+            }
+            KafkaInputFormat.setEndOffsets(job, group, topic, ends);
+            batch.getEndOffsets().put(topicConf, ends);
+            batch.getCommitOffsets().put(topicConf, commits);
+        }
+        if (empty) {
+            return null;
+        }
+        builder.sizeJob(job);
+
+        // every batch needs its own output directory
+        final Path outputPath = FileOutputFormat.getOutputPath(job);
+        if (outputPath != null) {
+            FileOutputFormat.setOutputPath(job, new Path(outputPath, String.format("batch_%06d", batch.getId())));
+        }
+        return batch;
+    }
+
+    /**
+     * Commits the end offsets of every partition read by {@code batch}.
+     *
+     * @param batch
+     *            a batch that completed successfully.
+     * @throws IOException
+     */
+    @VisibleForTesting
+    void commit(final Batch batch) throws IOException {
+        final OffsetStore offsetStore = getOffsetStore(batch.getJob().getConfiguration());
+        try {
+            for (final Map.Entry<TopicConf, Map<Partition, Long>> entry : batch.getCommitOffsets().entrySet()) {
+                offsetStore.setLastCommits(entry.getKey().getConsumerGroup(), entry.getValue());
+            }
+            LOG.info(String.format("Committed batch %d", batch.getId()));
+        } finally {
+            IOUtils.closeQuietly(offsetStore);
+        }
+    }
+
+    /*
+     * We make the following methods visible for testing so that we can mock these components out in unit tests
+     */
+
+    @VisibleForTesting
+    List<InputSplit> getInputSplits(final Configuration conf, final String topic, final String group)
+            throws IOException {
+        return new KafkaInputFormat().getInputSplits(conf, topic, group);
+    }
+
+    @VisibleForTesting
+    ZkUtils getZk() {
+        return new ZkUtils(conf);
+    }
+
+    @VisibleForTesting
+    OffsetStore getOffsetStore(final Configuration jobConf) {
+        return KafkaInputFormat.isZkOffsetStore(jobConf) ? getZk() : KafkaInputFormat.newOffsetStore(jobConf);
+    }
+
+    /**
+     * A submitted (or about to be submitted) job, along with the offsets it reads up to.
+     */
+    @VisibleForTesting
+    static class Batch {
+        private final long id;
+        private final Job job;
+        private final Map<TopicConf, Map<Partition, Long>> endOffsets = Maps.newHashMap();
+        private final Map<TopicConf, Map<Partition, Long>> commitOffsets = Maps.newHashMap();
+
+        Batch(final long id, final Job job) {
+            this.id = id;
+            this.job = job;
+        }
+
+        long getId() {
+            return id;
+        }
+
+        Job getJob() {
+            return job;
+        }
+
+        /**
+         * @return the end offset of every partition known to this batch, including those it does not read.
+         */
+        Map<TopicConf, Map<Partition, Long>> getEndOffsets() {
+            return endOffsets;
+        }
+
+        /**
+         * @return the end offset of every partition read by this batch.
+         */
+        Map<TopicConf, Map<Partition, Long>> getCommitOffsets() {
+            return commitOffsets;
+        }
+    }
+}
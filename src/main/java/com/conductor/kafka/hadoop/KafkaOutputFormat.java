@@ -0,0 +1,398 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.conductor.kafka.hadoop;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import kafka.javaapi.producer.Producer;
+import kafka.javaapi.producer.ProducerData;
+import kafka.message.Message;
+import kafka.producer.Partitioner;
+import kafka.producer.ProducerConfig;
+import kafka.serializer.DefaultEncoder;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapred.InvalidJobConfException;
+import org.apache.hadoop.mapreduce.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.conductor.kafka.zk.ZkUtils;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * An {@link OutputFormat} that publishes every value to a Kafka topic, so that jobs can enrich a topic and republish it
+ * without going through HDFS.
+ *
+ * <p/>
+ * Keys only pick the partition a value is published to: values with equal keys go to the same partition, and values
+ * with {@code null} or {@link NullWritable} keys are spread over all partitions. Values are batched per partition (see
+ * {@link #setBatchSize(Job, int)}), and every batch is sent as a single (optionally compressed, see
+ * {@link #setCompression(Job, Compression)}) message set on a background thread while the task keeps writing. At most
+ * {@link #setMaxInFlightBatches(Job, int)} batches are outstanding at once, and the batches of a partition are sent in
+ * order.
+ *
+ * <p/>
+ * Closing the record writer, which Hadoop does right before committing the task, sends the remaining batches and waits
+ * for all of them to be acknowledged, so a task only succeeds once all of its output is in Kafka. Kafka has no notion
+ * of uncommitted output though: messages of failed or speculative attempts are published too, so turn speculative
+ * execution off (as {@link KafkaJobBuilder} does).
+ *
+ * <p/>
+ * The producer connects to the Kafka cluster of {@link KafkaInputFormat#getZkConnect(Configuration)}. Any other Kafka
+ * producer setting can be passed with a {@code kafka.output.producer.} prefix, e.g.
+ * {@code kafka.output.producer.socket.timeout.ms}.
+ *
+ * @see KafkaJobBuilder#setKafkaOutputFormat(String)
+ */
+public class KafkaOutputFormat<K> extends OutputFormat<K, BytesWritable> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KafkaOutputFormat.class);
+
+    /**
+     * Default number of messages per partition batch, 200.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 200;
+    /**
+     * Default number of batches that may be in flight at once, 4.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT_BATCHES = 4;
+
+    /**
+     * The compression codecs supported by Kafka.
+     */
+    public static enum Compression {
+        NONE(0), GZIP(1), SNAPPY(2);
+
+        private final int codec;
+
+        private Compression(final int codec) {
+            this.codec = codec;
+        }
+
+        /**
+         * @return the Kafka {@code compression.codec} of this compression.
+         */
+        public int getCodec() {
+            return codec;
+        }
+    }
+
+    @Override
+    public RecordWriter<K, BytesWritable> getRecordWriter(final TaskAttemptContext context) throws IOException,
+            InterruptedException {
+        final Configuration conf = context.getConfiguration();
+        final String topic = getTopic(conf);
+        return new KafkaRecordWriter<K>(getProducer(conf), topic, getNumPartitions(conf, topic), getBatchSize(conf),
+                getMaxInFlightBatches(conf));
+    }
+
+    @Override
+    public void checkOutputSpecs(final JobContext context) throws IOException, InterruptedException {
+        if (Strings.isNullOrEmpty(getTopic(context.getConfiguration()))) {
+            throw new InvalidJobConfException("Output topic not set.");
+        }
+        if (Strings.isNullOrEmpty(KafkaInputFormat.getZkConnect(context.getConfiguration()))) {
+            throw new InvalidJobConfException("Zookeeper connection string not set.");
+        }
+    }
+
+    @Override
+    public OutputCommitter getOutputCommitter(final TaskAttemptContext context) throws IOException,
+            InterruptedException {
+        return new KafkaOutputCommitter();
+    }
+
+    /*
+     * We make the following methods visible for testing so that we can mock these components out in unit tests
+     */
+
+    @VisibleForTesting
+    Producer<Integer, Message> getProducer(final Configuration conf) {
+        final Properties props = new Properties();
+        final String zkRoot = KafkaInputFormat.getZkRoot(conf);
+        props.setProperty("zk.connect", KafkaInputFormat.getZkConnect(conf) + (zkRoot.equals("/") ? "" : zkRoot));
+        props.setProperty("producer.type", "sync");
+        props.setProperty("serializer.class", DefaultEncoder.class.getName());
+        props.setProperty("partitioner.class", IndexPartitioner.class.getName());
+        props.setProperty("compression.codec", String.valueOf(getCompression(conf).getCodec()));
+        for (final Map.Entry<String, String> entry : conf.getValByRegex("^kafka\\.output\\.producer\\.").entrySet()) {
+            props.setProperty(entry.getKey().substring("kafka.output.producer.".length()), entry.getValue());
+        }
+        return new Producer<Integer, Message>(new ProducerConfig(props));
+    }
+
+    @VisibleForTesting
+    int getNumPartitions(final Configuration conf, final String topic) {
+        final ZkUtils zk = new ZkUtils(conf);
+        try {
+            // a topic that does not exist yet gets created by the broker on first write
+            return Math.max(1, zk.getPartitions(topic).size());
+        } finally {
+            IOUtils.closeQuietly(zk);
+        }
+    }
+
+    /**
+     * Batches values per partition, and sends the batches on background threads.
+     */
+    @VisibleForTesting
+    static class KafkaRecordWriter<K> extends RecordWriter<K, BytesWritable> {
+        private final Producer<Integer, Message> producer;
+        private final String topic;
+        private final int batchSize;
+        private final int maxInFlightBatches;
+        private final List<List<Message>> batches;
+        // the batches of a partition always go through the same sender, which keeps them in order
+        private final ExecutorService[] senders;
+        private final Semaphore inFlight;
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        private int nextPartition;
+
+        KafkaRecordWriter(final Producer<Integer, Message> producer, final String topic, final int numPartitions,
+                final int batchSize, final int maxInFlightBatches) {
+            this.producer = producer;
+            this.topic = topic;
+            this.batchSize = batchSize;
+            this.maxInFlightBatches = maxInFlightBatches;
+            this.batches = Lists.newArrayListWithCapacity(numPartitions);
+            for (int i = 0; i < numPartitions; i++) {
+                batches.add(Lists.<Message> newArrayListWithCapacity(batchSize));
+            }
+            this.senders = new ExecutorService[Math.min(numPartitions, maxInFlightBatches)];
+            for (int i = 0; i < senders.length; i++) {
+                senders[i] = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true)
+                        .setNameFormat(String.format("kafka-output-%s-%d", topic, i)).build());
+            }
+            this.inFlight = new Semaphore(maxInFlightBatches);
+        }
+
+        @Override
+        public void write(final K key, final BytesWritable value) throws IOException, InterruptedException {
+            checkFailure();
+            final int partition;
+            if (key == null || key instanceof NullWritable) {
+                partition = nextPartition;
+            } else {
+                partition = (key.hashCode() & Integer.MAX_VALUE) % batches.size();
+            }
+            final List<Message> batch = batches.get(partition);
+            batch.add(new Message(Arrays.copyOf(value.getBytes(), value.getLength())));
+            if (batch.size() >= batchSize) {
+                send(partition);
+                if (partition == nextPartition) {
+                    nextPartition = (nextPartition + 1) % batches.size();
+                }
+            }
+        }
+
+        private void send(final int partition) throws InterruptedException {
+            final List<Message> batch = batches.set(partition, Lists.<Message> newArrayListWithCapacity(batchSize));
+            inFlight.acquire();
+            senders[partition % senders.length].execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        producer.send(new ProducerData<Integer, Message>(topic, partition, batch));
+                    } catch (final Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        inFlight.release();
+                    }
+                }
+            });
+        }
+
+        /**
+         * Sends every pending batch, and waits until all batches have been acknowledged.
+         */
+        void flush() throws IOException, InterruptedException {
+            for (int partition = 0; partition < batches.size(); partition++) {
+                if (!batches.get(partition).isEmpty()) {
+                    send(partition);
+                }
+            }
+            inFlight.acquire(maxInFlightBatches);
+            inFlight.release(maxInFlightBatches);
+            checkFailure();
+        }
+
+        private void checkFailure() throws IOException {
+            final Throwable t = failure.get();
+            if (t != null) {
+                Throwables.propagateIfPossible(t, IOException.class);
+                throw new IOException("Could not send to Kafka topic " + topic, t);
+            }
+        }
+
+        @Override
+        public void close(final TaskAttemptContext context) throws IOException, InterruptedException {
+            try {
+                flush();
+                LOG.info(String.format("Flushed all batches to Kafka topic %s", topic));
+            } catch (final InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while flushing to Kafka topic " + topic);
+            } finally {
+                for (final ExecutorService sender : senders) {
+                    sender.shutdownNow();
+                }
+                producer.close();
+            }
+        }
+    }
+
+    /**
+     * Sends messages to the partition chosen by {@link KafkaRecordWriter}, which is the key of the producer data.
+     */
+    public static class IndexPartitioner implements Partitioner<Integer> {
+        @Override
+        public int partition(final Integer key, final int numPartitions) {
+            return key % numPartitions;
+        }
+    }
+
+    /**
+     * Kafka messages are visible as soon as they are sent, so there is nothing to commit: the record writer has already
+     * flushed every batch by the time Hadoop commits the task.
+     */
+    private static class KafkaOutputCommitter extends OutputCommitter {
+        @Override
+        public void setupJob(final JobContext jobContext) {
+        }
+
+        @Override
+        public void setupTask(final TaskAttemptContext taskContext) {
+        }
+
+        @Override
+        public boolean needsTaskCommit(final TaskAttemptContext taskContext) {
+            return false;
+        }
+
+        @Override
+        public void commitTask(final TaskAttemptContext taskContext) {
+        }
+
+        @Override
+        public void abortTask(final TaskAttemptContext taskContext) {
+        }
+    }
+
+    /**
+     * Sets the topic the job publishes to (required).
+     *
+     * @param job
+     *            the job being configured.
+     * @param topic
+     *            the output topic.
+     */
+    public static void setTopic(final Job job, final String topic) {
+        job.getConfiguration().set("kafka.output.topic", topic);
+    }
+
+    /**
+     * Gets the topic the job publishes to.
+     *
+     * @param conf
+     *            the job conf.
+     * @return the output topic.
+     */
+    public static String getTopic(final Configuration conf) {
+        return conf.get("kafka.output.topic");
+    }
+
+    /**
+     * Sets the number of messages sent to a partition at once (optional, defaults to {@link #DEFAULT_BATCH_SIZE}).
+     *
+     * @param job
+     *            the job being configured.
+     * @param batchSize
+     *            the number of messages per batch.
+     */
+    public static void setBatchSize(final Job job, final int batchSize) {
+        job.getConfiguration().setInt("kafka.output.batch.size", batchSize);
+    }
+
+    /**
+     * Gets the number of messages sent to a partition at once.
+     *
+     * @param conf
+     *            the job conf.
+     * @return the number of messages per batch.
+     */
+    public static int getBatchSize(final Configuration conf) {
+        return conf.getInt("kafka.output.batch.size", DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Sets the number of batches each task may have in flight at once (optional, defaults to
+     * {@link #DEFAULT_MAX_IN_FLIGHT_BATCHES}); once reached, writing blocks until a batch has been acknowledged.
+     *
+     * @param job
+     *            the job being configured.
+     * @param maxInFlightBatches
+     *            the number of batches in flight.
+     */
+    public static void setMaxInFlightBatches(final Job job, final int maxInFlightBatches) {
+        job.getConfiguration().setInt("kafka.output.max.in.flight.batches", maxInFlightBatches);
+    }
+
+    /**
+     * Gets the number of batches each task may have in flight at once.
+     *
+     * @param conf
+     *            the job conf.
+     * @return the number of batches in flight.
+     */
+    public static int getMaxInFlightBatches(final Configuration conf) {
+        return conf.getInt("kafka.output.max.in.flight.batches", DEFAULT_MAX_IN_FLIGHT_BATCHES);
+    }
+
+    /**
+     * Sets the compression of the batches (optional, defaults to {@link Compression#NONE}).
+     *
+     * @param job
+     *            the job being configured.
+     * @param compression
+     *            the compression codec.
+     */
+    public static void setCompression(final Job job, final Compression compression) {
+        job.getConfiguration().setEnum("kafka.output.compression", compression);
+    }
+
+    /**
+     * Gets the compression of the batches.
+     *
+     * @param conf
+     *            the job conf.
+     * @return the compression codec.
+     */
+    public static Compression getCompression(final Configuration conf) {
+        return conf.getEnum("kafka.output.compression", Compression.NONE);
+    }
+}
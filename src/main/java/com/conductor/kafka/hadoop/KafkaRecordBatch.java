@@ -0,0 +1,120 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.conductor.kafka.hadoop;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The messages of one Kafka message set, laid out in flat arrays so that a {@link KafkaBatchMapper} can process them in
+ * a tight loop: message {@code i} (for {@code 0 <= i < size()}) is at Kafka offset {@code getOffsets()[i]}, and its
+ * payload is the {@code getPayloadLengths()[i]} bytes of {@code getPayloads()} starting at
+ * {@code getPayloadOffsets()[i]}.
+ *
+ * <pre>
+ * <code>
+ * final byte[] payloads = batch.getPayloads();
+ * for (int i = 0; i &lt; batch.size(); i++) {
+ *     process(payloads, batch.getPayloadOffsets()[i], batch.getPayloadLengths()[i]);
+ * }
+ * </code>
+ * </pre>
+ *
+ * A batch is reused by its record reader, so its arrays are only valid until the next batch is read, and may be longer
+ * than {@link #size()}.
+ *
+ * @see KafkaBatchInputFormat
+ */
+public class KafkaRecordBatch {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] offsets = new long[INITIAL_CAPACITY];
+    private int[] payloadOffsets = new int[INITIAL_CAPACITY];
+    private int[] payloadLengths = new int[INITIAL_CAPACITY];
+    private byte[] payloads = new byte[INITIAL_CAPACITY * 64];
+    private int size;
+    private int payloadsSize;
+
+    /**
+     * Empties this batch, keeping its arrays.
+     */
+    public void clear() {
+        size = 0;
+        payloadsSize = 0;
+    }
+
+    /**
+     * Appends a message to this batch.
+     *
+     * @param offset
+     *            the Kafka offset of the message.
+     * @param payload
+     *            the payload of the message, from its position to its limit; its position is not changed.
+     */
+    public void add(final long offset, final ByteBuffer payload) {
+        if (size == offsets.length) {
+            final int capacity = size * 2;
+            offsets = Arrays.copyOf(offsets, capacity);
+            payloadOffsets = Arrays.copyOf(payloadOffsets, capacity);
+            payloadLengths = Arrays.copyOf(payloadLengths, capacity);
+        }
+        final int length = payload.remaining();
+        if (payloadsSize + length > payloads.length) {
+            payloads = Arrays.copyOf(payloads, Math.max(payloads.length * 2, payloadsSize + length));
+        }
+        payload.duplicate().get(payloads, payloadsSize, length);
+        offsets[size] = offset;
+        payloadOffsets[size] = payloadsSize;
+        payloadLengths[size] = length;
+        payloadsSize += length;
+        size++;
+    }
+
+    /**
+     * @return the number of messages in this batch.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the Kafka offsets of the messages.
+     */
+    public long[] getOffsets() {
+        return offsets;
+    }
+
+    /**
+     * @return where the payload of each message starts in {@link #getPayloads()}.
+     */
+    public int[] getPayloadOffsets() {
+        return payloadOffsets;
+    }
+
+    /**
+     * @return the length of the payload of each message.
+     */
+    public int[] getPayloadLengths() {
+        return payloadLengths;
+    }
+
+    /**
+     * @return the payloads of all messages, one after the other.
+     */
+    public byte[] getPayloads() {
+        return payloads;
+    }
+}
@@ -17,7 +17,9 @@ package com.conductor.kafka.hadoop;
 import static com.conductor.kafka.hadoop.KafkaInputFormat.*;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
 
 import kafka.api.FetchRequest;
 import kafka.common.ErrorMapping;
@@ -29,11 +31,15 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.mapreduce.*;
+import org.apache.hadoop.util.ReflectionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import scala.collection.Iterator;
+import scala.collection.JavaConversions;
 
+import com.conductor.kafka.Broker;
+import com.conductor.kafka.OffsetStore;
 import com.conductor.kafka.zk.ZkUtils;
 import com.google.common.annotations.VisibleForTesting;
 
@@ -55,11 +61,50 @@ import com.google.common.annotations.VisibleForTesting;
  * @author <a href="mailto:cgreen@conductor.com">Casey Green</a>
  */
 public class KafkaRecordReader extends RecordReader<LongWritable, BytesWritable> {
+
+    public static enum Counter {
+        /**
+         * The number of message checksums verified.
+         */
+        CHECKSUMS_VERIFIED,
+        /**
+         * The number of messages dropped by the {@link PayloadFilter}.
+         */
+        MESSAGES_FILTERED,
+        /**
+         * The number of payload bytes dropped by the {@link PayloadFilter}.
+         */
+        BYTES_FILTERED,
+        /**
+         * The number of messages left out of the sample set by
+         * {@link KafkaInputFormat#setMessageSampleRate(org.apache.hadoop.mapreduce.Job, float)}.
+         */
+        MESSAGES_NOT_SAMPLED,
+        /**
+         * The time spent holding fetches to the broker's bandwidth cap, in milliseconds.
+         */
+        THROTTLED_MILLIS,
+        /**
+         * The time spent waiting for a turn to read from the broker, in milliseconds.
+         */
+        BROKER_WAIT_MILLIS
+    }
+
+    /**
+     * How often a reader waiting for its turn to read from a broker reports progress, so that its task does not time
+     * out.
+     */
+    private static final long BROKER_WAIT_PROGRESS_MS = TimeUnit.SECONDS.toMillis(30);
+
     private static final Logger LOG = LoggerFactory.getLogger(KafkaInputFormat.class);
 
     private Configuration conf;
     private KafkaInputSplit split;
     private SimpleConsumer consumer;
+    private ReusableBufferFetcher fetcher;
+    private MessageSetDecoder decoder;
+    private TaskAttemptContext context;
+    private long kafkaVerified;
     private Iterator<MessageAndOffset> currentMessageItr;
     private LongWritable key;
     private BytesWritable value;
@@ -68,6 +113,21 @@ public class KafkaRecordReader extends RecordReader<LongWritable, BytesWritable>
     private long pos;
     private int fetchSize;
     private long currentOffset;
+    private MessageSetPrefetcher prefetcher;
+    private TimestampExtractor timestampExtractor;
+    private PayloadFilter filter;
+    private long messagesFiltered;
+    private long bytesFiltered;
+    private float messageSampleRate;
+    private long sampleSeed;
+    private long messagesNotSampled;
+    private BandwidthThrottler throttler;
+    private ZkUtils brokerReaders;
+    private String brokerReaderPath;
+    private long brokerWaitMs;
+    private long startTimestamp;
+    private long endTimestamp;
+    private boolean pastEndTimestamp;
 
     /**
      * {@inheritDoc}
@@ -88,7 +148,41 @@ public class KafkaRecordReader extends RecordReader<LongWritable, BytesWritable>
         this.currentOffset = inputSplit.getStartOffset();
         this.end = inputSplit.getEndOffset();
         this.fetchSize = KafkaInputFormat.getKafkaFetchSizeBytes(conf);
-        this.consumer = getConsumer(inputSplit, conf);
+        this.timestampExtractor = getTimestampExtractor(conf);
+        this.filter = getFilter(conf);
+        this.messagesFiltered = 0;
+        this.bytesFiltered = 0;
+        this.messageSampleRate = KafkaInputFormat.getMessageSampleRate(conf);
+        this.sampleSeed = KafkaInputFormat.getSampleSeed(conf);
+        this.messagesNotSampled = 0;
+        this.startTimestamp = KafkaInputFormat.getStartTimestamp(conf);
+        this.endTimestamp = KafkaInputFormat.getEndTimestamp(conf);
+        this.pastEndTimestamp = false;
+        this.context = context;
+        final ChecksumMode checksumMode = getKafkaChecksumMode(conf);
+        this.decoder = checksumMode == ChecksumMode.KAFKA ? null : new MessageSetDecoder(
+                checksumMode == ChecksumMode.PURE_JAVA);
+        this.kafkaVerified = 0;
+        final long maxBrokerBytesPerSecond = getMaxBrokerBytesPerSecond(conf);
+        final int maxConcurrentSplits = getMaxConcurrentSplitsPerBroker(conf);
+        this.throttler = maxBrokerBytesPerSecond == DEFAULT_MAX_BROKER_BYTES_PER_SECOND ? null
+                : new BandwidthThrottler(getBytesPerSecondShare(maxBrokerBytesPerSecond, inputSplit.getBrokerSplits(),
+                        maxConcurrentSplits));
+        this.brokerWaitMs = 0;
+        if (maxConcurrentSplits != DEFAULT_MAX_CONCURRENT_SPLITS_PER_BROKER) {
+            // before anything is fetched, including by the prefetcher
+            waitForBroker(maxConcurrentSplits);
+        }
+        final int prefetchDepth = KafkaInputFormat.getKafkaPrefetchDepth(conf);
+        // the mapper's message set, the prefetched ones, and the one being fetched must all stay valid
+        this.fetcher = KafkaInputFormat.getKafkaReuseFetchBuffers(conf) ? getFetcher(inputSplit, conf,
+                prefetchDepth + 2) : null;
+        // a fetcher has its own connection to the broker
+        this.consumer = fetcher == null ? getConsumer(inputSplit, conf) : null;
+        this.prefetcher = prefetchDepth > 0 ? getPrefetcher(prefetchDepth) : null;
+        if (prefetcher != null) {
+            prefetcher.start();
+        }
     }
 
     /**
@@ -96,12 +190,79 @@ public class KafkaRecordReader extends RecordReader<LongWritable, BytesWritable>
      */
     @Override
     public void close() throws IOException {
-        consumer.close();
-        if (split.isPartitionCommitter()) {
+        if (prefetcher != null) {
+            prefetcher.close();
+        }
+        if (fetcher != null) {
+            fetcher.close();
+            fetcher = null;
+        }
+        incrementCounter(Counter.CHECKSUMS_VERIFIED, decoder == null ? kafkaVerified : decoder.getVerified());
+        if (filter != null) {
+            incrementCounter(Counter.MESSAGES_FILTERED, messagesFiltered);
+            incrementCounter(Counter.BYTES_FILTERED, bytesFiltered);
+        }
+        if (messageSampleRate < DEFAULT_SAMPLE_RATE) {
+            incrementCounter(Counter.MESSAGES_NOT_SAMPLED, messagesNotSampled);
+        }
+        if (throttler != null) {
+            incrementCounter(Counter.THROTTLED_MILLIS, throttler.getThrottledMs());
+        }
+        if (consumer != null) {
+            SimpleConsumerPool.getInstance().release(consumer);
+            consumer = null;
+        }
+        if (brokerReaders != null) {
+            incrementCounter(Counter.BROKER_WAIT_MILLIS, brokerWaitMs);
+            try {
+                brokerReaders.removeBrokerReader(brokerReaderPath);
+            } finally {
+                IOUtils.closeQuietly(brokerReaders);
+                brokerReaders = null;
+            }
+        }
+        if (split.isPartitionCommitter() && KafkaInputFormat.isCommitOffsets(conf)) {
             commitOffset();
         }
     }
 
+    /**
+     * Registers this reader with Zookeeper, and waits until fewer than {@code maxConcurrentSplits} readers of its
+     * broker, from any job, registered before it.
+     */
+    private void waitForBroker(final int maxConcurrentSplits) throws IOException, InterruptedException {
+        final Broker broker = split.getPartition().getBroker();
+        brokerReaders = getZk();
+        brokerReaderPath = brokerReaders.addBrokerReader(broker);
+        final long start = System.currentTimeMillis();
+        while (!brokerReaders.awaitBrokerReadersAhead(broker, brokerReaderPath, maxConcurrentSplits,
+                BROKER_WAIT_PROGRESS_MS)) {
+            // keep the task from timing out while it waits
+            context.progress();
+        }
+        brokerWaitMs = System.currentTimeMillis() - start;
+        if (brokerWaitMs > 0) {
+            LOG.info(String.format("%s waited %d ms to read from broker %d", split, brokerWaitMs, broker.getId()));
+        }
+    }
+
+    /**
+     * @return the share of {@code maxBrokerBytesPerSecond} of one of {@code brokerSplits} splits, of which at most
+     *         {@code maxConcurrentSplits} read at once.
+     */
+    @VisibleForTesting
+    static long getBytesPerSecondShare(final long maxBrokerBytesPerSecond, final int brokerSplits,
+            final int maxConcurrentSplits) {
+        return Math.max(1, maxBrokerBytesPerSecond / Math.max(1, Math.min(brokerSplits, maxConcurrentSplits)));
+    }
+
+    private void incrementCounter(final Counter name, final long amount) {
+        final org.apache.hadoop.mapreduce.Counter counter = context.getCounter(name);
+        if (counter != null) {
+            counter.increment(amount);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -140,17 +301,88 @@ public class KafkaRecordReader extends RecordReader<LongWritable, BytesWritable>
         if (value == null) {
             value = new BytesWritable();
         }
-        if (continueItr()) {
+        final MessageAndOffset msg = nextMessage();
+        if (msg == null) {
+            return false;
+        }
+        final ByteBuffer buffer = msg.message().payload();
+        value.set(buffer.array(), buffer.arrayOffset(), msg.message().payloadSize());
+        key.set(msg.offset());
+        return true;
+    }
+
+    /**
+     * Reads the rest of the current message set (or the next one, if the current one is done) into {@code batch}.
+     * 
+     * @param batch
+     *            the batch to fill; it is cleared first.
+     * @return {@code false} if there are no more messages in the split.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public boolean nextBatch(final KafkaRecordBatch batch) throws IOException, InterruptedException {
+        batch.clear();
+        // stop at the end of the message set, rather than fetching the next one
+        while (batch.size() == 0 || canCallNext()) {
+            final MessageAndOffset msg = nextMessage();
+            if (msg == null) {
+                break;
+            }
+            batch.add(msg.offset(), msg.message().payload());
+        }
+        return batch.size() > 0;
+    }
+
+    /**
+     * @return the next message of the split within the time range and the sample that the {@link PayloadFilter}
+     *         accepts, or {@code null} if there is none.
+     */
+    MessageAndOffset nextMessage() throws IOException, InterruptedException {
+        while (continueItr()) {
             final MessageAndOffset msg = getCurrentMessageItr().next();
             final long msgOffset = msg.offset();
-            final Message message = msg.message();
-            final ByteBuffer buffer = message.payload();
-            value.set(buffer.array(), buffer.arrayOffset(), message.payloadSize());
-            key.set(msgOffset);
+            if (decoder == null) {
+                // Kafka's own iterator verifies every message
+                kafkaVerified++;
+            }
+            if (timestampExtractor != null) {
+                final long timestamp = timestampExtractor.getTimestamp(msgOffset, msg.message().payload());
+                if (timestamp >= endTimestamp && !split.isPartitionCommitter()) {
+                    // timestamps may be out of order, and only the committer's offset is kept, so the rest of this
+                    // split must still be read
+                    pos = msgOffset;
+                    continue;
+                }
+                if (timestamp >= endTimestamp) {
+                    // stop here, and only commit up to the last message consumed so that the next job in the
+                    // same consumer group picks up from this message
+                    LOG.debug(String.format("%s reached end timestamp %d at offset %d", split, endTimestamp,
+                            msgOffset));
+                    pastEndTimestamp = true;
+                    currentOffset = pos;
+                    pos = end;
+                    return null;
+                }
+                if (timestamp >= 0 && timestamp < startTimestamp) {
+                    pos = msgOffset;
+                    continue;
+                }
+            }
+            if (messageSampleRate < DEFAULT_SAMPLE_RATE && !isSampled(msgOffset, sampleSeed, messageSampleRate)) {
+                messagesNotSampled++;
+                pos = msgOffset;
+                continue;
+            }
+            if (filter != null && !filter.accept(msgOffset, msg.message().payload())) {
+                messagesFiltered++;
+                bytesFiltered += msg.message().payloadSize();
+                pos = msgOffset;
+                continue;
+            }
             pos = msgOffset;
-            return true;
+            return msg;
         }
-        return false;
+        return null;
     }
 
     /**
@@ -161,28 +393,102 @@ public class KafkaRecordReader extends RecordReader<LongWritable, BytesWritable>
      * @return true if you can call {@link scala.collection.Iterator#next()} on {@code currentMessageItr}.
      */
     @VisibleForTesting
-    boolean continueItr() {
+    boolean continueItr() throws IOException, InterruptedException {
+        if (pastEndTimestamp) {
+            return false;
+        }
+        if (prefetcher != null) {
+            return continuePrefetchedItr();
+        }
         final long remaining = end - currentOffset;
         if (!canCallNext() && remaining > 0) {
-            final int theFetchSize = (fetchSize > remaining) ? (int) remaining : fetchSize;
-            LOG.debug(String.format("%s fetching %d bytes starting at offset %d", split.toString(), theFetchSize,
-                    currentOffset));
-            final FetchRequest request = new FetchRequest(split.getPartition().getTopic(), split.getPartition()
-                    .getPartId(), currentOffset, theFetchSize);
-            final ByteBufferMessageSet msg = consumer.fetch(request);
-            final int errorCode = msg.getErrorCode();
-            if (errorCode == ErrorMapping.OffsetOutOfRangeCode()) {
+            final ByteBufferMessageSet msg = fetch(currentOffset);
+            if (msg == null) {
                 return false;
-            }
-            if (errorCode != ErrorMapping.NoError()) {
-                ErrorMapping.maybeThrowException(errorCode);
             } // --> else we try to grab the next iterator
-            currentMessageItr = msg.iterator();
-            currentOffset += msg.validBytes();
+            currentMessageItr = iterator(msg, currentOffset);
+            currentOffset += validBytes(msg);
         }
         return canCallNext();
     }
 
+    /**
+     * Same contract as {@link #continueItr()}, but the message sets are taken pre-decoded from the {@link #prefetcher}.
+     * Note that {@code currentOffset} only advances once a batch is handed to the mapper, so the committed offset never
+     * includes batches that were prefetched but not consumed.
+     */
+    private boolean continuePrefetchedItr() throws IOException, InterruptedException {
+        while (!canCallNext()) {
+            final MessageSetPrefetcher.Batch batch = prefetcher.take();
+            if (batch == null) {
+                return false;
+            }
+            currentMessageItr = JavaConversions.asIterator(batch.getMessages().iterator());
+            currentOffset = batch.getNextOffset();
+        }
+        return true;
+    }
+
+    /**
+     * Fetches the message set starting at {@code offset}, bounded by both the fetch size and the end of the split.
+     * 
+     * @param offset
+     *            the offset to fetch from.
+     * @return the message set, or {@code null} if {@code offset} is out of range.
+     * @throws IOException
+     *             if reading with reusable buffers fails.
+     */
+    @VisibleForTesting
+    ByteBufferMessageSet fetch(final long offset) throws IOException {
+        final long remaining = end - offset;
+        final int theFetchSize = (fetchSize > remaining) ? (int) remaining : fetchSize;
+        LOG.debug(String.format("%s fetching %d bytes starting at offset %d", split.toString(), theFetchSize, offset));
+        final FetchRequest request = new FetchRequest(split.getPartition().getTopic(), split.getPartition().getPartId(),
+                offset, theFetchSize);
+        final ByteBufferMessageSet msg = fetcher != null ? fetcher.fetch(request) : consumer.fetch(request);
+        final int errorCode = msg.getErrorCode();
+        if (errorCode == ErrorMapping.OffsetOutOfRangeCode()) {
+            return null;
+        }
+        if (errorCode != ErrorMapping.NoError()) {
+            ErrorMapping.maybeThrowException(errorCode);
+        }
+        if (throttler != null) {
+            try {
+                throttler.throttle(msg.getBuffer().remaining());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttling fetches from " + split);
+            }
+        }
+        return msg;
+    }
+
+    /**
+     * Decodes a message set with Kafka's own iterator, or with a {@link MessageSetDecoder} depending on the
+     * {@link ChecksumMode}.
+     * 
+     * @param messageSet
+     *            the message set.
+     * @param offset
+     *            the offset of the start of the message set.
+     * @return the messages.
+     */
+    Iterator<MessageAndOffset> iterator(final ByteBufferMessageSet messageSet, final long offset) {
+        if (decoder == null) {
+            return messageSet.iterator();
+        }
+        return JavaConversions.asIterator(decoder.decode(messageSet.getBuffer(), offset).iterator());
+    }
+
+    /**
+     * @return the number of bytes of the complete messages of the message set.
+     */
+    long validBytes(final ByteBufferMessageSet messageSet) {
+        // Kafka verifies the checksums of the messages to count their bytes
+        return decoder == null ? messageSet.validBytes() : MessageSetDecoder.validBytes(messageSet.getBuffer());
+    }
+
     @VisibleForTesting
     boolean canCallNext() {
         return getCurrentMessageItr() != null && getCurrentMessageItr().hasNext();
@@ -190,18 +496,18 @@ public class KafkaRecordReader extends RecordReader<LongWritable, BytesWritable>
 
     @VisibleForTesting
     void commitOffset() throws IOException {
-        ZkUtils zk = null;
+        OffsetStore offsetStore = null;
         try {
-            zk = getZk();
+            offsetStore = getOffsetStore();
             /**
              * Note: last parameter (temp) MUST be true. It is up to the ToolRunner to commit offsets upon successful
              * job execution. Reason: since there are multiple input splits per partition, the consumer group could get
              * into a bad state if this split finished successfully and committed the offset while another input split
              * from the same partition didn't finish successfully.
              */
-            zk.setLastCommit(getConsumerGroup(conf), split.getPartition(), currentOffset, true);
+            offsetStore.setLastCommit(getConsumerGroup(conf), split.getPartition(), currentOffset, true);
         } finally {
-            IOUtils.closeQuietly(zk);
+            IOUtils.closeQuietly(offsetStore);
         }
     }
 
@@ -211,8 +517,31 @@ public class KafkaRecordReader extends RecordReader<LongWritable, BytesWritable>
 
     @VisibleForTesting
     SimpleConsumer getConsumer(final KafkaInputSplit split, final Configuration conf) {
-        return new SimpleConsumer(split.getPartition().getBroker().getHost(), split.getPartition().getBroker()
-                .getPort(), getKafkaSocketTimeoutMs(conf), getKafkaBufferSizeBytes(conf));
+        return SimpleConsumerPool.getInstance().acquire(split.getPartition().getBroker(), getKafkaSocketTimeoutMs(conf),
+                getKafkaBufferSizeBytes(conf));
+    }
+
+    @VisibleForTesting
+    ReusableBufferFetcher getFetcher(final KafkaInputSplit split, final Configuration conf, final int buffers) {
+        return new ReusableBufferFetcher(split.getPartition().getBroker(), getKafkaSocketTimeoutMs(conf),
+                getKafkaBufferSizeBytes(conf), KafkaInputFormat.getKafkaFetchSizeBytes(conf), buffers);
+    }
+
+    @VisibleForTesting
+    TimestampExtractor getTimestampExtractor(final Configuration conf) {
+        final Class<? extends TimestampExtractor> extractorClass = KafkaInputFormat.getTimestampExtractorClass(conf);
+        return extractorClass == null ? null : ReflectionUtils.newInstance(extractorClass, conf);
+    }
+
+    @VisibleForTesting
+    PayloadFilter getFilter(final Configuration conf) {
+        final Class<? extends PayloadFilter> filterClass = KafkaInputFormat.getPayloadFilterClass(conf);
+        return filterClass == null ? null : ReflectionUtils.newInstance(filterClass, conf);
+    }
+
+    @VisibleForTesting
+    MessageSetPrefetcher getPrefetcher(final int prefetchDepth) {
+        return new MessageSetPrefetcher(this, currentOffset, end, prefetchDepth);
     }
 
     @VisibleForTesting
@@ -220,6 +549,11 @@ public class KafkaRecordReader extends RecordReader<LongWritable, BytesWritable>
         return new ZkUtils(conf);
     }
 
+    @VisibleForTesting
+    OffsetStore getOffsetStore() {
+        return KafkaInputFormat.isZkOffsetStore(conf) ? getZk() : KafkaInputFormat.newOffsetStore(conf);
+    }
+
     public Configuration getConf() {
         return conf;
     }
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.conductor.kafka.hadoop;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import kafka.common.InvalidMessageSizeException;
+import kafka.message.CompressionUtils;
+import kafka.message.InvalidMessageException;
+import kafka.message.Message;
+import kafka.message.MessageAndOffset;
+
+import org.apache.hadoop.util.PureJavaCrc32;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Decodes Kafka 0.7 message sets like {@link kafka.message.ByteBufferMessageSet#iterator()} does, including the
+ * offsets it assigns to the messages of compressed message sets, but either without verifying checksums at all, or
+ * verifying them with Hadoop's {@link PureJavaCrc32}, which is much faster than {@link java.util.zip.CRC32} for the
+ * short payloads of small messages.
+ *
+ * <p/>
+ * A message set is laid out as {@code size, message, size, message, ...}, and a message as
+ * {@code magic, [attributes,] crc, payload}; only the payload is checksummed.
+ *
+ * @see KafkaInputFormat#setKafkaChecksumMode(org.apache.hadoop.mapreduce.Job, KafkaInputFormat.ChecksumMode)
+ */
+class MessageSetDecoder {
+
+    private final boolean verifyChecksums;
+    private final AtomicLong verified = new AtomicLong();
+    private final PureJavaCrc32 crc = new PureJavaCrc32();
+
+    /**
+     * @param verifyChecksums
+     *            whether to verify the checksum of every message.
+     */
+    MessageSetDecoder(final boolean verifyChecksums) {
+        this.verifyChecksums = verifyChecksums;
+    }
+
+    /**
+     * Decodes a message set, decompressing compressed messages.
+     *
+     * @param messageSet
+     *            the message set, from its position to its limit; its position is not changed.
+     * @param initialOffset
+     *            the Kafka offset of the start of the message set.
+     * @return the messages, each with the offset after it.
+     * @throws InvalidMessageException
+     *             if a checksum does not match.
+     * @throws InvalidMessageSizeException
+     *             if the first message is incomplete, e.g. because it is bigger than the fetch size.
+     */
+    List<MessageAndOffset> decode(final ByteBuffer messageSet, final long initialOffset) {
+        final List<MessageAndOffset> messages = Lists.newArrayList();
+        final ByteBuffer buffer = messageSet.duplicate();
+        long offset = initialOffset;
+        Message message;
+        while ((message = nextMessage(buffer, offset == initialOffset, offset)) != null) {
+            final long nextOffset = offset + 4 + message.size();
+            if (isCompressed(message)) {
+                // every message but the last gets the offset of the compressed message, so it is consumed as a whole
+                final ByteBuffer decompressed = CompressionUtils.decompress(message).getBuffer().duplicate();
+                Message inner = nextMessage(decompressed, false, offset);
+                while (inner != null) {
+                    final Message following = nextMessage(decompressed, false, offset);
+                    messages.add(new MessageAndOffset(inner, following == null ? nextOffset : offset));
+                    inner = following;
+                }
+            } else {
+                messages.add(new MessageAndOffset(message, nextOffset));
+            }
+            offset = nextOffset;
+        }
+        return messages;
+    }
+
+    /**
+     * Reads the next message from {@code buffer}, advancing it.
+     *
+     * @return the message, or {@code null} if there are no more complete messages.
+     */
+    private Message nextMessage(final ByteBuffer buffer, final boolean first, final long offset) {
+        if (buffer.remaining() < 4) {
+            return null;
+        }
+        final int size = buffer.getInt(buffer.position());
+        if (size < 0 || buffer.remaining() - 4 < size) {
+            if (first || size < 0) {
+                throw new InvalidMessageSizeException(String.format("Invalid message size %d at offset %d with only "
+                        + "%d bytes left; the message may be larger than the fetch size.", size, offset,
+                        buffer.remaining() - 4));
+            }
+            return null;
+        }
+        buffer.position(buffer.position() + 4);
+        final ByteBuffer slice = buffer.slice();
+        slice.limit(size);
+        buffer.position(buffer.position() + size);
+        final Message message = new Message(slice);
+        if (verifyChecksums) {
+            verify(message, offset);
+        }
+        return message;
+    }
+
+    private void verify(final Message message, final long offset) {
+        final ByteBuffer payload = message.payload();
+        crc.reset();
+        crc.update(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+        if (crc.getValue() != message.checksum()) {
+            throw new InvalidMessageException(String.format("Invalid checksum of the message at offset %d: "
+                    + "expected %d, computed %d", offset, message.checksum(), crc.getValue()));
+        }
+        verified.incrementAndGet();
+    }
+
+    private static boolean isCompressed(final Message message) {
+        return message.magic() == Message.MagicVersion2()
+                && (message.buffer().get(Message.AttributeOffset()) & Message.CompressionCodeMask()) != 0;
+    }
+
+    /**
+     * Counts the bytes of the complete messages of a message set, without decoding them.
+     *
+     * @param messageSet
+     *            the message set, from its position to its limit.
+     * @return the number of bytes up to the end of the last complete message.
+     */
+    static long validBytes(final ByteBuffer messageSet) {
+        final ByteBuffer buffer = messageSet.duplicate();
+        long validBytes = 0;
+        while (buffer.remaining() >= 4) {
+            final int size = buffer.getInt();
+            if (size < 0 || buffer.remaining() < size) {
+                break;
+            }
+            buffer.position(buffer.position() + size);
+            validBytes += 4 + size;
+        }
+        return validBytes;
+    }
+
+    /**
+     * @return the number of checksums verified so far.
+     */
+    long getVerified() {
+        return verified.get();
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.conductor.kafka.hadoop;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import kafka.message.ByteBufferMessageSet;
+import kafka.message.MessageAndOffset;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import scala.collection.Iterator;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Fetches and decodes the message sets of a {@link KafkaInputSplit} on a helper thread, handing fully decoded batches
+ * to the {@link KafkaRecordReader} through a bounded queue.
+ *
+ * <p/>
+ * Iterating a {@link ByteBufferMessageSet} is where Kafka validates checksums and decompresses compressed message
+ * sets, so moving the iteration off of the task thread lets the mapper work on batch {@code N} while batch {@code N+1}
+ * is being fetched and decompressed.
+ *
+ * @see KafkaInputFormat#setKafkaPrefetchDepth(org.apache.hadoop.mapreduce.Job, int)
+ */
+class MessageSetPrefetcher implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MessageSetPrefetcher.class);
+
+    /**
+     * Upper bound on how long {@link #close()} waits for the helper thread to exit.
+     */
+    private static final long SHUTDOWN_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10);
+
+    private final KafkaRecordReader reader;
+    private final BlockingQueue<Batch> queue;
+    private final Thread thread;
+    private final long endOffset;
+    private volatile boolean closed;
+    private boolean finished;
+
+    /**
+     * Creates a prefetcher; call {@link #start()} to begin fetching.
+     *
+     * @param reader
+     *            the reader whose {@link KafkaRecordReader#fetch(long)} is called on the helper thread.
+     * @param startOffset
+     *            the first offset to fetch.
+     * @param endOffset
+     *            the (exclusive) offset to stop fetching at.
+     * @param depth
+     *            the maximum number of decoded batches waiting to be consumed.
+     */
+    MessageSetPrefetcher(final KafkaRecordReader reader, final long startOffset, final long endOffset,
+            final int depth) {
+        this.reader = reader;
+        this.endOffset = endOffset;
+        this.queue = new ArrayBlockingQueue<Batch>(depth);
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                prefetch(startOffset);
+            }
+        }, "kafka-prefetch-" + reader.getSplit());
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Starts the helper thread.
+     */
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Takes the next decoded batch, blocking until one is available.
+     *
+     * @return the next batch, or {@code null} if there is nothing left to read.
+     * @throws IOException
+     *             if the helper thread failed to fetch or decode a message set.
+     * @throws InterruptedException
+     */
+    Batch take() throws IOException, InterruptedException {
+        if (finished) {
+            return null;
+        }
+        final Batch batch = queue.take();
+        if (batch.error != null) {
+            finished = true;
+            if (batch.error instanceof IOException) {
+                throw (IOException) batch.error;
+            } else if (batch.error instanceof RuntimeException) {
+                throw (RuntimeException) batch.error;
+            }
+            throw new IOException(batch.error);
+        }
+        if (batch.isEnd()) {
+            finished = true;
+            return null;
+        }
+        return batch;
+    }
+
+    /**
+     * Stops the helper thread; any batches that have not been taken are discarded.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        thread.interrupt();
+        try {
+            thread.join(SHUTDOWN_TIMEOUT_MS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void prefetch(final long startOffset) {
+        long offset = startOffset;
+        try {
+            while (!closed && offset < endOffset) {
+                final ByteBufferMessageSet messageSet = reader.fetch(offset);
+                if (messageSet == null) {
+                    // offset out of range
+                    break;
+                }
+                // iterating here is what does the checksum validation and decompression
+                final List<MessageAndOffset> messages = Lists.newArrayList();
+                final Iterator<MessageAndOffset> itr = reader.iterator(messageSet, offset);
+                while (itr.hasNext()) {
+                    messages.add(itr.next());
+                }
+                final long validBytes = reader.validBytes(messageSet);
+                offset += validBytes;
+                queue.put(new Batch(messages, offset, null));
+                if (validBytes == 0) {
+                    // nothing could be read at this offset; the serial reader gives up here as well
+                    break;
+                }
+            }
+            queue.put(Batch.END);
+        } catch (final InterruptedException e) {
+            LOG.debug("Prefetcher interrupted, exiting.");
+        } catch (final Throwable t) {
+            if (!closed) {
+                LOG.error("Failed to prefetch " + reader.getSplit(), t);
+                try {
+                    queue.put(new Batch(null, offset, t));
+                } catch (final InterruptedException e) {
+                    LOG.debug("Prefetcher interrupted while reporting an error, exiting.");
+                }
+            }
+        }
+    }
+
+    /**
+     * A decoded message set, along with the offset immediately after it.
+     */
+    static class Batch {
+        static final Batch END = new Batch(Collections.<MessageAndOffset> emptyList(), -1, null);
+
+        private final List<MessageAndOffset> messages;
+        private final long nextOffset;
+        private final Throwable error;
+
+        Batch(final List<MessageAndOffset> messages, final long nextOffset, final Throwable error) {
+            this.messages = messages;
+            this.nextOffset = nextOffset;
+            this.error = error;
+        }
+
+        List<MessageAndOffset> getMessages() {
+            return messages;
+        }
+
+        long getNextOffset() {
+            return nextOffset;
+        }
+
+        boolean isEnd() {
+            return this == END;
+        }
+    }
+}
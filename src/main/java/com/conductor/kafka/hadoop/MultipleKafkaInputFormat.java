@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.util.List;
 import java.util.Set;
 
+import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.LongWritable;
@@ -57,6 +58,11 @@ public class MultipleKafkaInputFormat extends InputFormat<LongWritable, BytesWri
 
     private static final String TOPICS_CONF = "kafka.topics";
 
+    /**
+     * Default number of Kafka splits read by each map task, 1.
+     */
+    public static final int DEFAULT_SPLITS_PER_TASK = 1;
+
     /**
      * Creates input splits for each {@link TopicConf} set up by {@link #addTopic(Job, String, String, Class)}.
      * 
@@ -66,18 +72,67 @@ public class MultipleKafkaInputFormat extends InputFormat<LongWritable, BytesWri
     @Override
     public List<InputSplit> getSplits(final JobContext context) throws IOException, InterruptedException {
         final Configuration conf = context.getConfiguration();
-        final List<InputSplit> splits = Lists.newArrayList();
+        final List<List<InputSplit>> topicSplits = Lists.newArrayList();
+        final List<InputSplit> kafkaSplits = Lists.newArrayList();
         final List<TopicConf> topicConfs = getTopics(conf);
         warnOnDuplicateTopicConsumers(topicConfs);
         for (final TopicConf topicConf : topicConfs) {
             final String topic = topicConf.getTopic();
             final String group = topicConf.getConsumerGroup();
             final Class<? extends Mapper> delegateMapper = topicConf.getMapper();
+            final List<InputSplit> taggedSplits = Lists.newArrayList();
             for (final InputSplit inputSplit : getInputSplits(conf, group, topic)) {
-                splits.add(new TaggedInputSplit(inputSplit, conf, KafkaInputFormat.class, delegateMapper));
+                kafkaSplits.add(inputSplit);
+                taggedSplits.add(new TaggedInputSplit(inputSplit, conf, getInputFormatClass(delegateMapper),
+                        delegateMapper));
+            }
+            topicSplits.add(taggedSplits);
+        }
+        // the splits of each topic are interleaved across brokers; interleave the topics too
+        final List<InputSplit> splits = interleave(topicSplits);
+        if (KafkaInputFormat.getMaxBrokerBytesPerSecond(conf) != KafkaInputFormat.DEFAULT_MAX_BROKER_BYTES_PER_SECOND) {
+            // the topics share the bandwidth of their brokers
+            KafkaInputFormat.setBrokerSplits(kafkaSplits);
+        }
+
+        final int splitsPerTask = getSplitsPerTask(conf);
+        if (splitsPerTask <= 1) {
+            return splits;
+        }
+        final List<InputSplit> multiSplits = Lists.newArrayList();
+        for (final List<InputSplit> partition : Lists.partition(splits, splitsPerTask)) {
+            final List<TaggedInputSplit> taggedSplits = Lists.newArrayList();
+            for (final InputSplit split : partition) {
+                taggedSplits.add((TaggedInputSplit) split);
+            }
+            multiSplits.add(new MultiTaggedInputSplit(taggedSplits, conf));
+        }
+        return multiSplits;
+    }
+
+    /**
+     * @return the first element of each list, then the second one of each list, etc.
+     */
+    @VisibleForTesting
+    static <T> List<T> interleave(final List<List<T>> lists) {
+        final List<T> interleaved = Lists.newArrayList();
+        final int size = size(lists);
+        for (int i = 0; interleaved.size() < size; i++) {
+            for (final List<T> list : lists) {
+                if (i < list.size()) {
+                    interleaved.add(list.get(i));
+                }
             }
         }
-        return splits;
+        return interleaved;
+    }
+
+    private static int size(final List<? extends List<?>> lists) {
+        int size = 0;
+        for (final List<?> list : lists) {
+            size += list.size();
+        }
+        return size;
     }
 
     @VisibleForTesting
@@ -106,8 +161,9 @@ public class MultipleKafkaInputFormat extends InputFormat<LongWritable, BytesWri
     @Override
     public RecordReader<LongWritable, BytesWritable> createRecordReader(final InputSplit split,
             final TaskAttemptContext context) throws IOException, InterruptedException {
-        final TaggedInputSplit taggedInputSplit = (TaggedInputSplit) split;
-        final TaskAttemptContext taskAttemptContextClone = new TaskAttemptContextImpl(taggedInputSplit.getConf(),
+        // either a TaggedInputSplit or a MultiTaggedInputSplit
+        final Configuration splitConf = ((Configurable) split).getConf();
+        final TaskAttemptContext taskAttemptContextClone = new TaskAttemptContextImpl(splitConf,
                 context.getTaskAttemptID());
         taskAttemptContextClone.setStatus(context.getStatus());
         return new DelegatingRecordReader<LongWritable, BytesWritable>(split, taskAttemptContextClone);
@@ -166,6 +222,47 @@ public class MultipleKafkaInputFormat extends InputFormat<LongWritable, BytesWri
         } else {
             job.getConfiguration().set(TOPICS_CONF, format("%s;%s", existingTopicConf, topicConfig));
         }
+        // so that every split only needs to write a few small class ids
+        TaggedInputSplit.addToClassDictionary(job.getConfiguration(), KafkaInputSplit.class,
+                getInputFormatClass(mapperClass), mapperClass);
+    }
+
+    /**
+     * @return the input format that reads the topic of {@code mapperClass}: {@link KafkaBatchInputFormat} for a
+     *         {@link KafkaBatchMapper}, {@link KafkaDecodedInputFormat} for a {@link TypeRoutingMapper},
+     *         {@link KafkaInputFormat} otherwise.
+     */
+    private static Class<? extends InputFormat> getInputFormatClass(final Class<? extends Mapper> mapperClass) {
+        if (KafkaBatchMapper.class.isAssignableFrom(mapperClass)) {
+            return KafkaBatchInputFormat.class;
+        }
+        return TypeRoutingMapper.class.isAssignableFrom(mapperClass) ? KafkaDecodedInputFormat.class
+                : KafkaInputFormat.class;
+    }
+
+    /**
+     * Sets the number of Kafka splits read by each map task (optional). Each task reads its splits one after the
+     * other, each with its own {@link Mapper}; see {@link MultiTaggedInputSplit}. Use this to cut down the task startup
+     * cost of jobs with many small splits.
+     * 
+     * @param job
+     *            the job being configured.
+     * @param splitsPerTask
+     *            the number of splits per map task.
+     */
+    public static void setSplitsPerTask(final Job job, final int splitsPerTask) {
+        job.getConfiguration().setInt("kafka.splits.per.task", splitsPerTask);
+    }
+
+    /**
+     * Gets the number of Kafka splits read by each map task.
+     * 
+     * @param conf
+     *            the job conf.
+     * @return the number of splits per map task.
+     */
+    public static int getSplitsPerTask(final Configuration conf) {
+        return conf.getInt("kafka.splits.per.task", DEFAULT_SPLITS_PER_TASK);
     }
 
     /**
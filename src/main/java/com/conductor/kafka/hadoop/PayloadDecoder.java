@@ -0,0 +1,51 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+package com.conductor.kafka.hadoop;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes the payloads of Kafka messages into values, e.g. Avro records, Thrift structs or JSON lines, so that
+ * mappers read from a {@link KafkaDecodedInputFormat} get typed values rather than raw bytes.
+ *
+ * <p/>
+ * Implementations must have a no-arg constructor, and may implement {@link org.apache.hadoop.conf.Configurable} to
+ * receive the job configuration. A single instance decodes every message of a split, and should decode into value
+ * objects it reuses rather than allocate per message; a decoder of several types keeps one value object per type, so
+ * that {@link com.conductor.hadoop.TypeRoutingMapper} can route values by their class.
+ *
+ * @param <T>
+ *            the type of the decoded values.
+ *
+ * @see KafkaInputFormat#setPayloadDecoderClass(org.apache.hadoop.mapreduce.Job, Class)
+ * @see TextPayloadDecoder
+ */
+public interface PayloadDecoder<T> {
+
+    /**
+     * Decodes the payload of a message.
+     *
+     * @param offset
+     *            the Kafka offset of the message.
+     * @param payload
+     *            the message payload; implementations must not rely on, or modify, anything outside of
+     *            {@code [position, limit)}.
+     * @return the decoded value, which only needs to stay valid until the next call, or {@code null} to skip the
+     *         message.
+     * @throws IOException
+     *             if the payload cannot be decoded.
+     */
+    T decode(long offset, ByteBuffer payload) throws IOException;
+}
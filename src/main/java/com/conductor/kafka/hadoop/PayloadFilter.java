@@ -0,0 +1,44 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+package com.conductor.kafka.hadoop;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decides, from its raw payload, whether the {@link KafkaRecordReader} hands a Kafka message to the mapper at all.
+ * Use it for cheap checks, e.g. of a prefix or a key, that would otherwise drop most messages in the mapper: rejected
+ * messages are never copied out of the fetched message set, and are counted by
+ * {@link KafkaRecordReader.Counter#MESSAGES_FILTERED} and {@link KafkaRecordReader.Counter#BYTES_FILTERED}.
+ *
+ * <p/>
+ * Implementations must have a no-arg constructor, and may implement {@link org.apache.hadoop.conf.Configurable} to
+ * receive the job configuration. A single instance is used for every message of a split, so implementations should
+ * avoid allocating per message.
+ *
+ * @see KafkaInputFormat#setPayloadFilterClass(org.apache.hadoop.mapreduce.Job, Class)
+ */
+public interface PayloadFilter {
+
+    /**
+     * Returns whether to read a message.
+     *
+     * @param offset
+     *            the Kafka offset of the message.
+     * @param payload
+     *            the message payload; implementations must not rely on, or modify, anything outside of
+     *            {@code [position, limit)}.
+     * @return {@code true} to hand the message to the mapper, {@code false} to drop it.
+     */
+    boolean accept(long offset, ByteBuffer payload);
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.conductor.kafka.hadoop;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+
+import kafka.api.FetchRequest;
+import kafka.message.ByteBufferMessageSet;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.conductor.kafka.Broker;
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Fetches message sets from a Kafka broker into a fixed ring of buffers that are allocated once and reused, rather
+ * than into a new buffer per fetch like {@link kafka.consumer.SimpleConsumer} does. This keeps the multi-megabyte
+ * fetch buffers of a {@link KafkaRecordReader} from churning through the heap.
+ *
+ * <p/>
+ * A message set returned by {@link #fetch(FetchRequest)}, and every message read from it, is only valid until the
+ * ring wraps around, i.e. for the next {@code buffers - 1} fetches. The buffers are on the heap because Kafka's
+ * {@link kafka.message.Message} computes its checksum from the backing array of its buffer.
+ *
+ * <p/>
+ * This speaks the Kafka 0.7 fetch protocol: the request is sent as {@code size, request id, request}, and the
+ * response comes back as {@code size, error code, message set}.
+ *
+ * @see KafkaInputFormat#setKafkaReuseFetchBuffers(org.apache.hadoop.mapreduce.Job, boolean)
+ */
+class ReusableBufferFetcher implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReusableBufferFetcher.class);
+
+    private final Broker broker;
+    private final int soTimeoutMs;
+    private final int socketBufferSize;
+    private final ByteBuffer[] buffers;
+    private final ByteBuffer sizeBuffer = ByteBuffer.allocate(4);
+    private int next;
+    private SocketChannel channel;
+    private ReadableByteChannel in;
+
+    /**
+     * @param broker
+     *            the broker to fetch from.
+     * @param soTimeoutMs
+     *            the socket timeout.
+     * @param socketBufferSize
+     *            the socket receive buffer size.
+     * @param fetchSize
+     *            the largest fetch size that will be requested.
+     * @param buffers
+     *            the number of message sets that must stay valid at once.
+     */
+    ReusableBufferFetcher(final Broker broker, final int soTimeoutMs, final int socketBufferSize,
+            final int fetchSize, final int buffers) {
+        this.broker = broker;
+        this.soTimeoutMs = soTimeoutMs;
+        this.socketBufferSize = socketBufferSize;
+        this.buffers = new ByteBuffer[buffers];
+        for (int i = 0; i < buffers; i++) {
+            // the response is the error code followed by at most fetchSize bytes of messages
+            this.buffers[i] = ByteBuffer.allocate(fetchSize + 2);
+        }
+    }
+
+    /**
+     * Fetches a message set, reconnecting and retrying once if the connection fails, like
+     * {@link kafka.consumer.SimpleConsumer#fetch(FetchRequest)}.
+     *
+     * @param request
+     *            the fetch request.
+     * @return the message set, backed by one of the buffers of the ring.
+     * @throws IOException
+     *             if the fetch fails again after reconnecting.
+     */
+    ByteBufferMessageSet fetch(final FetchRequest request) throws IOException {
+        try {
+            return doFetch(request);
+        } catch (final IOException e) {
+            LOG.info(String.format("Reconnecting to %s:%d after: %s", broker.getHost(), broker.getPort(), e));
+            disconnect();
+            return doFetch(request);
+        }
+    }
+
+    private ByteBufferMessageSet doFetch(final FetchRequest request) throws IOException {
+        connect();
+        final ByteBuffer send = ByteBuffer.allocate(4 + 2 + request.sizeInBytes());
+        send.putInt(2 + request.sizeInBytes());
+        send.putShort(request.id());
+        request.writeTo(send);
+        send.flip();
+        while (send.hasRemaining()) {
+            channel.write(send);
+        }
+
+        sizeBuffer.clear();
+        readFully(sizeBuffer);
+        sizeBuffer.flip();
+        final int size = sizeBuffer.getInt();
+        if (size < 2) {
+            throw new IOException(String.format("Invalid response size %d from %s", size, broker));
+        }
+        ByteBuffer buffer = buffers[next];
+        if (buffer.capacity() < size) {
+            LOG.warn(String.format("Growing a fetch buffer from %d to %d bytes", buffer.capacity(), size));
+            buffer = ByteBuffer.allocate(size);
+            buffers[next] = buffer;
+        }
+        next = (next + 1) % buffers.length;
+
+        buffer.clear();
+        buffer.limit(size);
+        readFully(buffer);
+        buffer.flip();
+        final int errorCode = buffer.getShort();
+        return new ByteBufferMessageSet(buffer.slice(), request.offset(), errorCode);
+    }
+
+    private void readFully(final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) < 0) {
+                throw new EOFException("Connection to " + broker + " closed.");
+            }
+        }
+    }
+
+    private void connect() throws IOException {
+        if (channel != null) {
+            return;
+        }
+        channel = SocketChannel.open();
+        channel.socket().setReceiveBufferSize(socketBufferSize);
+        channel.socket().setSoTimeout(soTimeoutMs);
+        channel.socket().setKeepAlive(true);
+        channel.socket().setTcpNoDelay(true);
+        channel.connect(new InetSocketAddress(broker.getHost(), broker.getPort()));
+        // reading through the socket's stream, rather than the channel, honors the socket timeout
+        in = Channels.newChannel(channel.socket().getInputStream());
+    }
+
+    private void disconnect() {
+        IOUtils.closeQuietly(in);
+        IOUtils.closeQuietly(channel);
+        in = null;
+        channel = null;
+    }
+
+    @VisibleForTesting
+    int getBufferCount() {
+        return buffers.length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        disconnect();
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.conductor.kafka.hadoop;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import kafka.consumer.SimpleConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.conductor.kafka.Broker;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A per-JVM pool of {@link SimpleConsumer}s, one per {@link Broker} (and socket settings), shared by the
+ * {@link KafkaInputFormat} while planning and the {@link KafkaRecordReader}s of a task. With JVM reuse, several splits
+ * per task, uber tasks, or repeated planning in a driver, this saves connecting to the same brokers over and over.
+ *
+ * <p/>
+ * Consumers are reference counted: every {@link #acquire(Broker, int, int)} must be matched by a
+ * {@link #release(SimpleConsumer)}, and a consumer that no one holds is closed after {@link #DEFAULT_IDLE_TIMEOUT_MS}.
+ * Kafka's {@link SimpleConsumer} serializes its requests, and reconnects after a failed one, so a consumer may be
+ * held by several readers at once.
+ */
+class SimpleConsumerPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SimpleConsumerPool.class);
+
+    static final long DEFAULT_IDLE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private static final SimpleConsumerPool INSTANCE = new SimpleConsumerPool(DEFAULT_IDLE_TIMEOUT_MS);
+
+    private final long idleTimeoutMs;
+    private final Map<Key, Entry> entries = Maps.newHashMap();
+    private final Map<SimpleConsumer, Entry> consumers = new IdentityHashMap<SimpleConsumer, Entry>();
+    private ScheduledExecutorService evictor;
+
+    @VisibleForTesting
+    SimpleConsumerPool(final long idleTimeoutMs) {
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * @return the pool of this JVM.
+     */
+    static SimpleConsumerPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the pooled consumer of {@code broker}, creating it if needed.
+     *
+     * @param broker
+     *            the broker to connect to.
+     * @param soTimeoutMs
+     *            the socket timeout of the consumer.
+     * @param bufferSize
+     *            the socket buffer size of the consumer.
+     * @return a consumer, to be given back with {@link #release(SimpleConsumer)}.
+     */
+    synchronized SimpleConsumer acquire(final Broker broker, final int soTimeoutMs, final int bufferSize) {
+        final Key key = new Key(broker, soTimeoutMs, bufferSize);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(key, newConsumer(broker, soTimeoutMs, bufferSize));
+            entries.put(key, entry);
+            consumers.put(entry.consumer, entry);
+        }
+        entry.references++;
+        return entry.consumer;
+    }
+
+    /**
+     * Gives back a consumer from {@link #acquire(Broker, int, int)}; once no one holds it, it is closed after it has
+     * been idle for a while. Consumers that did not come from this pool are closed right away.
+     *
+     * @param consumer
+     *            the consumer.
+     */
+    synchronized void release(final SimpleConsumer consumer) {
+        final Entry entry = consumers.get(consumer);
+        if (entry == null) {
+            consumer.close();
+            return;
+        }
+        if (--entry.references == 0) {
+            entry.idleSince = System.currentTimeMillis();
+            scheduleEviction();
+        }
+    }
+
+    /**
+     * Closes the consumers no one has held for at least the idle timeout, as of {@code now}.
+     */
+    @VisibleForTesting
+    synchronized void evictIdle(final long now) {
+        for (final Entry entry : entries.values().toArray(new Entry[entries.size()])) {
+            if (entry.references == 0 && now - entry.idleSince >= idleTimeoutMs) {
+                LOG.debug("Closing idle consumer of " + entry.key.broker);
+                entries.remove(entry.key);
+                consumers.remove(entry.consumer);
+                entry.consumer.close();
+            }
+        }
+    }
+
+    @VisibleForTesting
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private void scheduleEviction() {
+        if (evictor == null) {
+            evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+                    .setNameFormat("kafka-consumer-pool-evictor").build());
+        }
+        evictor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                evictIdle(System.currentTimeMillis());
+            }
+        }, idleTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    @VisibleForTesting
+    SimpleConsumer newConsumer(final Broker broker, final int soTimeoutMs, final int bufferSize) {
+        return new SimpleConsumer(broker.getHost(), broker.getPort(), soTimeoutMs, bufferSize);
+    }
+
+    private static final class Key {
+        private final Broker broker;
+        private final int soTimeoutMs;
+        private final int bufferSize;
+
+        Key(final Broker broker, final int soTimeoutMs, final int bufferSize) {
+            this.broker = broker;
+            this.soTimeoutMs = soTimeoutMs;
+            this.bufferSize = bufferSize;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key that = (Key) o;
+            return broker.equals(that.broker) && soTimeoutMs == that.soTimeoutMs && bufferSize == that.bufferSize;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(broker, soTimeoutMs, bufferSize);
+        }
+    }
+
+    private static final class Entry {
+        private final Key key;
+        private final SimpleConsumer consumer;
+        private int references;
+        private long idleSince;
+
+        Entry(final Key key, final SimpleConsumer consumer) {
+            this.key = key;
+            this.consumer = consumer;
+        }
+    }
+}
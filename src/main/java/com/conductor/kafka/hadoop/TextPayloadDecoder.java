@@ -0,0 +1,32 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+package com.conductor.kafka.hadoop;
+
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.io.Text;
+
+/**
+ * Decodes UTF-8 payloads, e.g. JSON lines, into a single reused {@link Text}.
+ */
+public class TextPayloadDecoder implements PayloadDecoder<Text> {
+
+    private final Text text = new Text();
+
+    @Override
+    public Text decode(final long offset, final ByteBuffer payload) {
+        text.set(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+        return text;
+    }
+}
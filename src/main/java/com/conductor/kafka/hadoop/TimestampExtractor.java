@@ -0,0 +1,45 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.conductor.kafka.hadoop;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Extracts a timestamp from a Kafka message so that the {@link KafkaRecordReader} can enforce the time range set by
+ * {@link KafkaInputFormat#setStartTimestamp(org.apache.hadoop.mapreduce.Job, long)} and
+ * {@link KafkaInputFormat#setEndTimestamp(org.apache.hadoop.mapreduce.Job, long)}.
+ *
+ * <p/>
+ * Implementations must have a no-arg constructor, and may implement {@link org.apache.hadoop.conf.Configurable} to
+ * receive the job configuration. A single instance is used for every message of a split, so implementations should
+ * avoid allocating per message.
+ *
+ * @see KafkaInputFormat#setTimestampExtractorClass(org.apache.hadoop.mapreduce.Job, Class)
+ */
+public interface TimestampExtractor {
+
+    /**
+     * Returns the timestamp of a message.
+     *
+     * @param offset
+     *            the Kafka offset of the message.
+     * @param payload
+     *            the message payload; implementations must not rely on, or modify, anything outside of
+     *            {@code [position, limit)}.
+     * @return the timestamp of the message in milliseconds since the epoch, or a negative number if the message has no
+     *         timestamp, in which case it will always be read.
+     */
+    long getTimestamp(long offset, ByteBuffer payload);
+}
@@ -16,10 +16,15 @@ package com.conductor.kafka.zk;
 
 import static java.lang.String.format;
 
-import java.io.Closeable;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
+import org.I0Itec.zkclient.IZkChildListener;
 import org.I0Itec.zkclient.ZkClient;
 import org.I0Itec.zkclient.exception.ZkMarshallingError;
 import org.I0Itec.zkclient.exception.ZkNoNodeException;
@@ -29,6 +34,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.conductor.kafka.Broker;
+import com.conductor.kafka.OffsetStore;
 import com.conductor.kafka.Partition;
 import com.conductor.kafka.hadoop.KafkaInputFormat;
 import com.google.common.annotations.VisibleForTesting;
@@ -42,6 +48,9 @@ import com.google.common.collect.Ranges;
  * as well as consumer group offset operations and queries.
  * 
  * <p/>
+ * This is the default {@link OffsetStore}; every offset is a separate Zookeeper node.
+ * 
+ * <p/>
  * Thanks to <a href="https://github.com/miniway">Dongmin Yu</a> for providing the inspiration for this code.
  * 
  * <p/>
@@ -50,7 +59,7 @@ import com.google.common.collect.Ranges;
  * 
  * @author <a href="mailto:cgreen@conductor.com">Casey Green</a>
  */
-public class ZkUtils implements Closeable {
+public class ZkUtils implements OffsetStore {
 
     private static Logger LOG = LoggerFactory.getLogger(ZkUtils.class);
 
@@ -185,6 +194,7 @@ public class ZkUtils implements Closeable {
      *            the partition.
      * @return the last offset, {@code -1} if the {@code group} has never committed an offset.
      */
+    @Override
     public long getLastCommit(String group, Partition partition) {
         final String offsetPath = getOffsetsPath(group, partition);
         final String offset = client.readData(offsetPath, true);
@@ -214,6 +224,7 @@ public class ZkUtils implements Closeable {
      *            topic partition, and then commit it once the user has finished consuming <em>all</em> topic
      *            partitions.
      */
+    @Override
     public void setLastCommit(final String group, final Partition partition, final long commit, final boolean temp) {
         final String path = temp ? getTempOffsetsPath(group, partition) : getOffsetsPath(group, partition);
         if (!client.exists(path)) {
@@ -222,6 +233,21 @@ public class ZkUtils implements Closeable {
         client.writeData(path, commit);
     }
 
+    /**
+     * Sets the last offsets of the {@code group} for several partitions, one Zookeeper node at a time.
+     * 
+     * @param group
+     *            the consumer group.
+     * @param commits
+     *            the commit offset of each partition.
+     */
+    @Override
+    public void setLastCommits(final String group, final Map<Partition, Long> commits) {
+        for (final Map.Entry<Partition, Long> commit : commits.entrySet()) {
+            setLastCommit(group, commit.getKey(), commit.getValue(), false);
+        }
+    }
+
     /**
      * Commits any temporary offsets of the {@code group} for a given {@code topic}.
      * 
@@ -231,6 +257,7 @@ public class ZkUtils implements Closeable {
      *            the topic.
      * @return true if the commit was successful, false otherwise.
      */
+    @Override
     public boolean commit(final String group, final String topic) {
         for (final Partition partition : getPartitionsWithTempOffsets(topic, group)) {
             final String path = getTempOffsetsPath(group, partition);
@@ -241,6 +268,102 @@ public class ZkUtils implements Closeable {
         return true;
     }
 
+    /**
+     * Registers a reader of the {@code broker} as an ephemeral sequential node, which goes away with this client's
+     * session, so that the readers of a broker, across all jobs, can take turns.
+     * 
+     * @param broker
+     *            the broker.
+     * @return the path of the reader's node.
+     * @see #getBrokerReadersAhead(Broker, String)
+     */
+    public String addBrokerReader(final Broker broker) {
+        final String path = getBrokerReadersPath(broker.getId());
+        if (!client.exists(path)) {
+            client.createPersistent(path, true);
+        }
+        return client.createEphemeralSequential(path + "/reader-", "");
+    }
+
+    /**
+     * Counts the readers of the {@code broker} that registered before the reader at {@code readerPath}.
+     * 
+     * @param broker
+     *            the broker.
+     * @param readerPath
+     *            the path returned by {@link #addBrokerReader(Broker)}.
+     * @return the number of readers ahead.
+     */
+    public int getBrokerReadersAhead(final Broker broker, final String readerPath) {
+        return countReadersAhead(getChildrenParentMayNotExist(getBrokerReadersPath(broker.getId())), readerPath);
+    }
+
+    /**
+     * Waits until fewer than {@code maxReadersAhead} readers of the {@code broker} registered before the reader at
+     * {@code readerPath}. Rather than polling, this watches the readers of the broker, and only counts them again when
+     * they change.
+     * 
+     * @param broker
+     *            the broker.
+     * @param readerPath
+     *            the path returned by {@link #addBrokerReader(Broker)}.
+     * @param maxReadersAhead
+     *            the number of readers ahead to wait for.
+     * @param timeoutMs
+     *            the longest time to wait, in milliseconds.
+     * @return {@code true} if fewer than {@code maxReadersAhead} readers are ahead, {@code false} if the wait timed
+     *         out.
+     * @throws InterruptedException
+     */
+    public boolean awaitBrokerReadersAhead(final Broker broker, final String readerPath, final int maxReadersAhead,
+            final long timeoutMs) throws InterruptedException {
+        final String path = getBrokerReadersPath(broker.getId());
+        final BlockingQueue<List<String>> changes = new LinkedBlockingQueue<List<String>>();
+        final IZkChildListener listener = new IZkChildListener() {
+            @Override
+            public void handleChildChange(final String parentPath, final List<String> currentChildren) {
+                changes.add(currentChildren == null ? Collections.<String> emptyList() : currentChildren);
+            }
+        };
+        // subscribe before counting, so that no change is missed
+        client.subscribeChildChanges(path, listener);
+        try {
+            final long deadline = System.currentTimeMillis() + timeoutMs;
+            List<String> readers = getChildrenParentMayNotExist(path);
+            while (countReadersAhead(readers, readerPath) >= maxReadersAhead) {
+                readers = changes.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                if (readers == null) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            client.unsubscribeChildChanges(path, listener);
+        }
+    }
+
+    private static int countReadersAhead(final List<String> readers, final String readerPath) {
+        final String reader = readerPath.substring(readerPath.lastIndexOf('/') + 1);
+        int ahead = 0;
+        for (final String other : readers) {
+            // sequence numbers are zero-padded, so they sort as strings
+            if (other.compareTo(reader) < 0) {
+                ahead++;
+            }
+        }
+        return ahead;
+    }
+
+    /**
+     * Unregisters a reader registered by {@link #addBrokerReader(Broker)}.
+     * 
+     * @param readerPath
+     *            the path of the reader's node.
+     */
+    public void removeBrokerReader(final String readerPath) {
+        client.delete(readerPath);
+    }
+
     private List<Partition> getPartitionsWithTempOffsets(final String topic, final String group) {
         final List<String> brokerPartIds = getChildrenParentMayNotExist(getTempOffsetsSubPath(group, topic));
         return Lists.transform(brokerPartIds, new Function<String, Partition>() {
@@ -279,6 +402,11 @@ public class ZkUtils implements Closeable {
         return format("%s/consumers/%s/offsets-temp/%s", zkRoot, group, topic);
     }
 
+    @VisibleForTesting
+    String getBrokerReadersPath(final int brokerId) {
+        return format("%s/kangaroo/readers/%d", zkRoot, brokerId);
+    }
+
     @VisibleForTesting
     String getBrokerIdSubPath() {
         return format("%s/brokers/ids", zkRoot);
@@ -0,0 +1,179 @@
+package com.conductor.hadoop;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.*;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.junit.Test;
+
+import com.conductor.kafka.Broker;
+import com.conductor.kafka.Partition;
+import com.conductor.kafka.hadoop.KafkaInputSplit;
+import com.google.common.collect.Lists;
+
+public class DelegatingRecordReaderTest {
+
+    private final Configuration conf = new Configuration(false);
+    private final Partition partition = new Partition("topic", 0, new Broker("127.0.0.1", 9092, 1));
+
+    @Test
+    public void testReadMultiTaggedInputSplit() throws Exception {
+        final TaskAttemptContext context = mock(TaskAttemptContext.class);
+        when(context.getConfiguration()).thenReturn(conf);
+        final List<TaggedInputSplit> splits = Lists.newArrayList(tag(0, 2), tag(2, 2), tag(5, 6));
+        final MultiTaggedInputSplit split = new MultiTaggedInputSplit(splits, conf);
+
+        final DelegatingRecordReader<LongWritable, LongWritable> reader;
+        reader = new DelegatingRecordReader<LongWritable, LongWritable>(split, context);
+        reader.initialize(split, context);
+        // nothing is read until asked
+        assertEquals(0f, reader.getProgress(), 0);
+        assertNull(reader.originalRR);
+
+        final List<Long> values = Lists.newArrayList();
+        while (reader.nextKeyValue()) {
+            values.add(reader.getCurrentValue().get());
+        }
+        assertEquals(Lists.newArrayList(0l, 1l, 5l), values);
+        assertEquals(1f, reader.getProgress(), 0);
+        reader.close();
+    }
+
+    @Test
+    public void testRunMultiTaggedInputSplit() throws Exception {
+        final List<TaggedInputSplit> splits = Lists.newArrayList(tag(0, 2, RecordingMapper.class), tag(5, 7,
+                RecordingMapper.class));
+        final MultiTaggedInputSplit split = new MultiTaggedInputSplit(splits, conf);
+        final TaskAttemptContext taskContext = mock(TaskAttemptContext.class);
+        when(taskContext.getConfiguration()).thenReturn(conf);
+        final DelegatingRecordReader<LongWritable, LongWritable> reader;
+        reader = new DelegatingRecordReader<LongWritable, LongWritable>(split, taskContext);
+        final MapContext<LongWritable, LongWritable, Object, Object> mapContext;
+        mapContext = new MapContextImpl<LongWritable, LongWritable, Object, Object>(conf, new TaskAttemptID(), reader,
+                null, null, mock(StatusReporter.class), split);
+        final Mapper<LongWritable, LongWritable, Object, Object>.Context context;
+        context = new WrappedMapper<LongWritable, LongWritable, Object, Object>().getMapContext(mapContext);
+        reader.initialize(split, context);
+
+        RecordingMapper.reader = reader;
+        RecordingMapper.events.clear();
+        new DelegatingMapper<LongWritable, LongWritable, Object, Object>().run(context);
+
+        // the records are read by the task's reader, which had moved on to the second split when the first one ended
+        assertEquals(Lists.newArrayList("0:0", "0:1", "0:cleanup:0.5", "5:5", "5:6", "5:cleanup:1.0"),
+                RecordingMapper.events);
+        assertEquals(1f, reader.getProgress(), 0);
+    }
+
+    @Test
+    public void testReusableMappers() throws Exception {
+        final Job job = mock(Job.class);
+        when(job.getConfiguration()).thenReturn(conf);
+        assertFalse(DelegatingMapper.isReusableMapperClass(conf, ReusableMapper.class));
+        DelegatingMapper.addReusableMapperClass(job, ReusableMapper.class);
+        DelegatingMapper.addReusableMapperClass(job, ReusableMapper.class);
+        assertTrue(DelegatingMapper.isReusableMapperClass(conf, ReusableMapper.class));
+        assertEquals(ReusableMapper.class.getName(), conf.get(DelegatingMapper.REUSABLE_MAPPERS_CONF));
+
+        assertSame(DelegatingMapper.getMapper(ReusableMapper.class, conf),
+                DelegatingMapper.getMapper(ReusableMapper.class, conf));
+        assertNotSame(DelegatingMapper.getMapper(Mapper.class, conf), DelegatingMapper.getMapper(Mapper.class, conf));
+    }
+
+    private TaggedInputSplit tag(final long start, final long end) {
+        return tag(start, end, Mapper.class);
+    }
+
+    private TaggedInputSplit tag(final long start, final long end, final Class<? extends Mapper> mapperClass) {
+        return new TaggedInputSplit(new KafkaInputSplit(partition, start, end, false), conf, RangeInputFormat.class,
+                mapperClass);
+    }
+
+    public static class ReusableMapper extends Mapper<Object, Object, Object, Object> {
+    }
+
+    /**
+     * Records the values it maps, prefixed by the start of its split, and the progress of the task's reader on
+     * cleanup.
+     */
+    public static class RecordingMapper extends Mapper<LongWritable, LongWritable, Object, Object> {
+        static final List<String> events = Lists.newArrayList();
+        static RecordReader<?, ?> reader;
+
+        @Override
+        protected void map(final LongWritable key, final LongWritable value, final Context context) {
+            events.add(getStart(context) + ":" + value.get());
+        }
+
+        @Override
+        protected void cleanup(final Context context) throws IOException, InterruptedException {
+            events.add(getStart(context) + ":cleanup:" + reader.getProgress());
+        }
+
+        private static long getStart(final Context context) {
+            return ((KafkaInputSplit) ((TaggedInputSplit) context.getInputSplit()).getInputSplit()).getStartOffset();
+        }
+    }
+
+    /**
+     * Reads the offsets of a {@link KafkaInputSplit} as values.
+     */
+    public static class RangeInputFormat extends InputFormat<LongWritable, LongWritable> {
+        @Override
+        public List<InputSplit> getSplits(final JobContext context) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public RecordReader<LongWritable, LongWritable> createRecordReader(final InputSplit split,
+                final TaskAttemptContext context) {
+            return new RecordReader<LongWritable, LongWritable>() {
+                private final LongWritable value = new LongWritable();
+                private long next;
+                private long end;
+
+                @Override
+                public void initialize(final InputSplit split, final TaskAttemptContext context) {
+                    next = ((KafkaInputSplit) split).getStartOffset();
+                    end = ((KafkaInputSplit) split).getEndOffset();
+                }
+
+                @Override
+                public boolean nextKeyValue() {
+                    if (next >= end) {
+                        return false;
+                    }
+                    value.set(next++);
+                    return true;
+                }
+
+                @Override
+                public LongWritable getCurrentKey() {
+                    return value;
+                }
+
+                @Override
+                public LongWritable getCurrentValue() {
+                    return value;
+                }
+
+                @Override
+                public float getProgress() {
+                    return next >= end ? 1 : 0;
+                }
+
+                @Override
+                public void close() throws IOException {
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.conductor.hadoop;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.junit.Test;
+
+public class MapSideAggregatorTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAggregate() throws Exception {
+        final TaskInputOutputContext<Object, Object, Text, LongWritable> context = mock(TaskInputOutputContext.class);
+        final MapSideAggregator<Text, LongWritable> aggregator = new MapSideAggregator.LongSum<Text>(
+                new Configuration(false), 2);
+
+        // the output objects are reused, like in a real mapper
+        final Text key = new Text();
+        final LongWritable one = new LongWritable(1);
+        key.set("a");
+        aggregator.aggregate(key, one, context);
+        key.set("b");
+        aggregator.aggregate(key, one, context);
+        key.set("a");
+        aggregator.aggregate(key, one, context);
+        assertEquals(2, aggregator.size());
+        verify(context, never()).write(any(Text.class), any(LongWritable.class));
+
+        // a third key flushes the first two
+        key.set("c");
+        aggregator.aggregate(key, one, context);
+        verify(context).write(new Text("a"), new LongWritable(2));
+        verify(context).write(new Text("b"), new LongWritable(1));
+        assertEquals(1, aggregator.size());
+        assertEquals(1, one.get());
+
+        aggregator.flush(context);
+        verify(context).write(new Text("c"), new LongWritable(1));
+        assertEquals(0, aggregator.size());
+    }
+}
@@ -0,0 +1,56 @@
+package com.conductor.hadoop;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Job;
+import org.junit.Test;
+
+import com.conductor.hadoop.MultithreadedDelegatingMapper.QueueRecordReader;
+import com.conductor.hadoop.MultithreadedDelegatingMapper.Record;
+
+public class MultithreadedDelegatingMapperTest {
+
+    @Test
+    public void testSetGet() throws Exception {
+        final Configuration conf = new Configuration(false);
+        final Job job = mock(Job.class);
+        when(job.getConfiguration()).thenReturn(conf);
+
+        assertEquals(10, MultithreadedDelegatingMapper.getNumberOfThreads(conf));
+        MultithreadedDelegatingMapper.setNumberOfThreads(job, 3);
+        assertEquals(3, MultithreadedDelegatingMapper.getNumberOfThreads(conf));
+
+        assertEquals(1000, MultithreadedDelegatingMapper.getQueueSize(conf));
+        MultithreadedDelegatingMapper.setQueueSize(job, 50);
+        assertEquals(50, MultithreadedDelegatingMapper.getQueueSize(conf));
+    }
+
+    @Test
+    public void testQueueRecordReader() throws Exception {
+        final BlockingQueue<Record> queue = new ArrayBlockingQueue<Record>(3);
+        final QueueRecordReader<String, String> reader1 = new QueueRecordReader<String, String>(queue);
+        final QueueRecordReader<String, String> reader2 = new QueueRecordReader<String, String>(queue);
+
+        queue.put(new Record("k1", "v1"));
+        queue.put(new Record("k2", "v2"));
+        assertTrue(reader1.nextKeyValue());
+        assertEquals("k1", reader1.getCurrentKey());
+        assertEquals("v1", reader1.getCurrentValue());
+        assertTrue(reader2.nextKeyValue());
+        assertEquals("k2", reader2.getCurrentKey());
+
+        // every reader sees the end marker
+        queue.put(MultithreadedDelegatingMapper.END);
+        assertFalse(reader1.nextKeyValue());
+        assertFalse(reader2.nextKeyValue());
+        assertFalse(reader1.nextKeyValue());
+        assertEquals(1f, reader1.getProgress(), 0);
+        assertEquals(1, queue.size());
+    }
+}
@@ -0,0 +1,103 @@
+package com.conductor.hadoop;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.conductor.hadoop.PartitionedOutputFormat.PartitionedRecordWriter;
+import com.google.common.collect.Lists;
+
+public class PartitionedOutputFormatTest {
+
+    private final Configuration conf = new Configuration(false);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testLeastRecentlyUsedWriters() throws Exception {
+        final TaskAttemptContext context = mock(TaskAttemptContext.class);
+        when(context.getConfiguration()).thenReturn(conf);
+        when(context.getTaskAttemptID()).thenReturn(new TaskAttemptID());
+        final FileOutputFormat<Text, Text> delegate = mock(FileOutputFormat.class);
+        final RecordWriter<Text, Text> a = mock(RecordWriter.class);
+        final RecordWriter<Text, Text> b = mock(RecordWriter.class);
+        final RecordWriter<Text, Text> c = mock(RecordWriter.class);
+        final RecordWriter<Text, Text> a2 = mock(RecordWriter.class);
+        when(delegate.getRecordWriter(any(TaskAttemptContext.class))).thenReturn(a, b, c, a2);
+
+        final PartitionedRecordWriter<Text, Text> writer = new PartitionedRecordWriter<Text, Text>(context, delegate,
+                new KeyPathExtractor(), 2);
+        writer.write(new Text("a"), new Text("1"));
+        writer.write(new Text("b"), new Text("2"));
+        writer.write(new Text("a"), new Text("3"));
+        assertEquals(2, writer.getOpenWriters());
+        verify(a, times(2)).write(eq(new Text("a")), any(Text.class));
+
+        // b is the least recently used
+        writer.write(new Text("c"), new Text("4"));
+        verify(b).close(context);
+        verify(a, never()).close(context);
+        assertEquals(2, writer.getOpenWriters());
+
+        // a is evicted, and then reopened in a new file
+        writer.write(new Text("b"), new Text("5"));
+        verify(a).close(context);
+        writer.close(context);
+        verify(c).close(context);
+
+        final ArgumentCaptor<TaskAttemptContext> contexts = ArgumentCaptor.forClass(TaskAttemptContext.class);
+        verify(delegate, times(4)).getRecordWriter(contexts.capture());
+        final List<String> names = Lists.newArrayList();
+        for (final TaskAttemptContext opened : contexts.getAllValues()) {
+            names.add(opened.getConfiguration().get("mapreduce.output.basename"));
+        }
+        assertEquals(Lists.newArrayList("key=a/part", "key=b/part", "key=c/part", "key=b/part_1"), names);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @SuppressWarnings("unchecked")
+    public void testAbsolutePath() throws Exception {
+        final TaskAttemptContext context = mock(TaskAttemptContext.class);
+        when(context.getConfiguration()).thenReturn(conf);
+        final PartitionedRecordWriter<Text, Text> writer = new PartitionedRecordWriter<Text, Text>(context,
+                mock(FileOutputFormat.class), new KeyPathExtractor(), 2);
+        writer.write(new Text("/etc"), new Text("1"));
+    }
+
+    @Test
+    public void testHourlyOutputPathExtractor() throws Exception {
+        final HourlyOutputPathExtractor<Text, Text> extractor = new HourlyOutputPathExtractor<Text, Text>() {
+            @Override
+            protected String getKey(final Text key, final Text value) {
+                return key == null ? null : key.toString();
+            }
+
+            @Override
+            protected long getTimestamp(final Text key, final Text value) {
+                return Long.parseLong(value.toString());
+            }
+        };
+        // Mon, 13 Oct 2014 05:30:00 UTC
+        assertEquals("my_key/dt=2014-10-13/hour=05", extractor.getPath(new Text("my_key"), new Text("1413178200000")));
+        assertEquals("dt=2014-10-13/hour=05", extractor.getPath(null, new Text("1413178200000")));
+        assertEquals("my_key/dt=2014-10-13/hour=06", extractor.getPath(new Text("my_key"), new Text("1413181800000")));
+        assertEquals("my_key/dt=unknown", extractor.getPath(new Text("my_key"), new Text("-1")));
+    }
+
+    private static class KeyPathExtractor implements OutputPathExtractor<Text, Text> {
+        @Override
+        public String getPath(final Text key, final Text value) {
+            return key.toString().startsWith("/") ? key.toString() : "key=" + key;
+        }
+    }
+}
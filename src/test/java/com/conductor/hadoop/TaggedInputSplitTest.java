@@ -0,0 +1,66 @@
+package com.conductor.hadoop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.*;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.Test;
+
+import com.conductor.kafka.Broker;
+import com.conductor.kafka.Partition;
+import com.conductor.kafka.hadoop.KafkaInputFormat;
+import com.conductor.kafka.hadoop.KafkaInputSplit;
+
+public class TaggedInputSplitTest {
+
+    private final KafkaInputSplit split = new KafkaInputSplit(new Partition("topic", 1, new Broker("127.0.0.1", 9092,
+            1)), 10, 20, true);
+
+    @Test
+    public void testWriteReadWithDictionary() throws Exception {
+        final Configuration conf = new Configuration(false);
+        final byte[] legacy = write(new TaggedInputSplit(split, conf, KafkaInputFormat.class, Mapper.class));
+
+        TaggedInputSplit.addToClassDictionary(conf, KafkaInputSplit.class, KafkaInputFormat.class);
+        TaggedInputSplit.addToClassDictionary(conf, KafkaInputFormat.class, Mapper.class);
+        assertEquals(KafkaInputSplit.class.getName() + "," + KafkaInputFormat.class.getName() + ","
+                + Mapper.class.getName(), conf.get(TaggedInputSplit.CLASS_DICTIONARY_CONF));
+
+        final byte[] compact = write(new TaggedInputSplit(split, conf, KafkaInputFormat.class, Mapper.class));
+        assertTrue(compact.length + 100 < legacy.length);
+        assertRead(compact, conf);
+
+        // splits written before the dictionary existed can still be read
+        assertRead(legacy, conf);
+    }
+
+    @Test
+    public void testWriteReadWithoutDictionary() throws Exception {
+        final Configuration conf = new Configuration(false);
+        // the mapper isn't in the dictionary, so the class names are written out
+        TaggedInputSplit.addToClassDictionary(conf, KafkaInputSplit.class, KafkaInputFormat.class);
+        assertRead(write(new TaggedInputSplit(split, conf, KafkaInputFormat.class, Mapper.class)), conf);
+    }
+
+    private byte[] write(final TaggedInputSplit taggedSplit) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        taggedSplit.write(out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private void assertRead(final byte[] bytes, final Configuration conf) throws IOException {
+        final TaggedInputSplit result = ReflectionUtils.newInstance(TaggedInputSplit.class, conf);
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        result.readFields(in);
+        assertEquals(-1, in.read());
+        assertEquals(split, result.getInputSplit());
+        assertEquals(KafkaInputFormat.class, result.getInputFormatClass());
+        assertEquals(Mapper.class, result.getMapperClass());
+    }
+}
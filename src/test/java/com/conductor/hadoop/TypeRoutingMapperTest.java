@@ -0,0 +1,93 @@
+package com.conductor.hadoop;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.junit.Test;
+
+public class TypeRoutingMapperTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRun() throws Exception {
+        final Configuration conf = new Configuration(false);
+        final Job job = mock(Job.class);
+        when(job.getConfiguration()).thenReturn(conf);
+        TypeRoutingMapper.addRoute(job, Text.class, TextMapper.class);
+        TypeRoutingMapper.addRoute(job, IntWritable.class, WritableMapper.class);
+        TypeRoutingMapper.addRoute(job, Object.class, WritableMapper.class);
+        final Map<Class<?>, Class<? extends RoutedMapper>> routes = TypeRoutingMapper.getRoutes(conf);
+        assertEquals(3, routes.size());
+        assertEquals(TextMapper.class, routes.get(Text.class));
+
+        final Mapper<LongWritable, Object, Object, Object>.Context context = mock(Mapper.Context.class);
+        final Counter unrouted = mock(Counter.class);
+        when(context.getConfiguration()).thenReturn(conf);
+        when(context.getCounter(TypeRoutingMapper.Counter.UNROUTED)).thenReturn(unrouted);
+        when(context.nextKeyValue()).thenReturn(true, true, true, false);
+        when(context.getCurrentKey()).thenReturn(new LongWritable(1));
+        when(context.getCurrentValue()).thenReturn(new Text("a"), new IntWritable(2), new LongWritable(3));
+
+        new TypeRoutingMapper<LongWritable, Object, Object>().run(context);
+        verify(context).write("text", new Text("a"));
+        verify(context).write("writable", new IntWritable(2));
+        // the catch-all route goes to the same mapper instance, which is set up and cleaned up once
+        verify(context).write("writable", new LongWritable(3));
+        verify(context).write("setup", WritableMapper.class);
+        verify(context).write("cleanup", WritableMapper.class);
+        verify(unrouted, never()).increment(anyLong());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testUnrouted() throws Exception {
+        final Configuration conf = new Configuration(false);
+        final Job job = mock(Job.class);
+        when(job.getConfiguration()).thenReturn(conf);
+        TypeRoutingMapper.addRoute(job, Text.class, TextMapper.class);
+
+        final Mapper<LongWritable, Object, Object, Object>.Context context = mock(Mapper.Context.class);
+        final Counter unrouted = mock(Counter.class);
+        when(context.getConfiguration()).thenReturn(conf);
+        when(context.getCounter(TypeRoutingMapper.Counter.UNROUTED)).thenReturn(unrouted);
+        when(context.nextKeyValue()).thenReturn(true, true, false);
+        when(context.getCurrentValue()).thenReturn(new IntWritable(1), new IntWritable(2));
+
+        new TypeRoutingMapper<LongWritable, Object, Object>().run(context);
+        verify(unrouted, times(2)).increment(1);
+    }
+
+    public static class TextMapper extends RoutedMapper<LongWritable, Text, Object, Object> {
+        @Override
+        protected void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+            context.write("text", value);
+        }
+    }
+
+    public static class WritableMapper extends RoutedMapper<LongWritable, Object, Object, Object> {
+        @Override
+        protected void setup(Context context) throws IOException, InterruptedException {
+            context.write("setup", WritableMapper.class);
+        }
+
+        @Override
+        protected void map(LongWritable key, Object value, Context context) throws IOException, InterruptedException {
+            context.write("writable", value);
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            context.write("cleanup", WritableMapper.class);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ * 
+ */
+
+package com.conductor.kafka;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+import org.junit.Test;
+
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+
+public class PartitionTest {
+
+    private final Broker broker = new Broker("127.0.0.1", 9092, 1);
+    private final Partition partition = new Partition("topic_name", 3, broker);
+
+    @Test
+    public void testSerialization() throws Exception {
+        final byte[] bytes = toBytes(partition);
+        final Partition actual = new Partition();
+        actual.readFields(ByteStreams.newDataInput(bytes));
+        assertEquals(partition, actual);
+
+        // the old encoding took 2 + 10 + 4 + (2 + 9 + 4 + 4) bytes
+        assertTrue(bytes.length < 35);
+    }
+
+    @Test
+    public void testBrokerSerialization() throws Exception {
+        final Broker actual = new Broker();
+        actual.readFields(ByteStreams.newDataInput(toBytes(broker)));
+        assertEquals(broker, actual);
+    }
+
+    @Test
+    public void testReadLegacy() throws Exception {
+        final ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeUTF("topic_name");
+        out.writeInt(3);
+        out.writeUTF("127.0.0.1");
+        out.writeInt(9092);
+        out.writeInt(1);
+
+        final Partition actual = new Partition();
+        actual.readFields(ByteStreams.newDataInput(out.toByteArray()));
+        assertEquals(partition, actual);
+    }
+
+    @Test
+    public void testReadLegacyBroker() throws Exception {
+        final ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeUTF("127.0.0.1");
+        out.writeInt(9092);
+        out.writeInt(1);
+
+        final Broker actual = new Broker();
+        actual.readFields(ByteStreams.newDataInput(out.toByteArray()));
+        assertEquals(broker, actual);
+    }
+
+    @Test
+    public void testInterning() throws Exception {
+        final byte[] bytes = toBytes(new Partition("topic_name", 3, new Broker("127.0.0.1", 9092, 1)));
+        final Partition first = new Partition();
+        first.readFields(ByteStreams.newDataInput(bytes));
+        final Partition second = new Partition();
+        second.readFields(ByteStreams.newDataInput(bytes));
+
+        assertSame(first.getTopic(), second.getTopic());
+        assertSame(first.getBroker(), second.getBroker());
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownVersion() throws Exception {
+        final ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeShort(0xFFFF);
+        out.writeByte(99);
+        new Partition().readFields(ByteStreams.newDataInput(out.toByteArray()));
+    }
+
+    private static byte[] toBytes(final Writable writable) throws IOException {
+        final ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        writable.write(out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,47 @@
+package com.conductor.kafka.hadoop;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class BandwidthThrottlerTest {
+
+    @Test
+    public void testThrottle() throws Exception {
+        final List<Long> sleeps = Lists.newArrayList();
+        final long[] now = { 0 };
+        final BandwidthThrottler throttler = new BandwidthThrottler(1000) {
+            @Override
+            long nanoTime() {
+                return now[0];
+            }
+
+            @Override
+            void sleep(final long ms) {
+                sleeps.add(ms);
+                now[0] += TimeUnit.MILLISECONDS.toNanos(ms);
+            }
+        };
+
+        // 500 bytes at 1000 bytes/s take half a second
+        throttler.throttle(500);
+        assertEquals(Lists.newArrayList(500l), sleeps);
+        // the mapper took a quarter of a second, so only another quarter is left to wait
+        now[0] += TimeUnit.MILLISECONDS.toNanos(250);
+        throttler.throttle(500);
+        assertEquals(Lists.newArrayList(500l, 250l), sleeps);
+        assertEquals(750, throttler.getThrottledMs());
+
+        // after a long idle time, at most a second's worth of bytes goes through without waiting
+        now[0] += TimeUnit.SECONDS.toNanos(60);
+        throttler.throttle(1000);
+        assertEquals(2, sleeps.size());
+        throttler.throttle(500);
+        assertEquals(Lists.newArrayList(500l, 250l, 500l), sleeps);
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.conductor.kafka.hadoop;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.conductor.kafka.Broker;
+import com.conductor.kafka.Partition;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+
+public class HdfsOffsetStoreTest {
+
+    private final Configuration conf = new Configuration(false);
+    private final Broker broker = new Broker("127.0.0.1", 9092, 1);
+    private final Partition p1 = new Partition("topic", 0, broker);
+    private final Partition p2 = new Partition("topic", 1, broker);
+    private File dir;
+    private FileSystem fs;
+    private HdfsOffsetStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDir();
+        fs = FileSystem.getLocal(conf);
+        store = new HdfsOffsetStore(fs, new Path(dir.getAbsolutePath()), conf);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    @Test
+    public void testNeverCommitted() throws Exception {
+        assertEquals(-1, store.getLastCommit("group", p1));
+    }
+
+    @Test
+    public void testSetLastCommits() throws Exception {
+        store.setLastCommits("group", ImmutableMap.of(p1, 10l, p2, 20l));
+        store.setLastCommit("group", p2, 30l, false);
+
+        final HdfsOffsetStore other = new HdfsOffsetStore(fs, new Path(dir.getAbsolutePath()), conf);
+        assertEquals(10, other.getLastCommit("group", p1));
+        assertEquals(30, other.getLastCommit("group", p2));
+        assertEquals(-1, other.getLastCommit("other_group", p1));
+        assertEquals(1, fs.listStatus(store.getDir("group", "topic")).length);
+    }
+
+    @Test
+    public void testCommit() throws Exception {
+        store.setLastCommit("group", p1, 10l, false);
+        store.setLastCommit("group", p1, 15l, true);
+        store.setLastCommit("group", p2, 25l, true);
+
+        // temporary offsets are not visible until they are committed
+        assertEquals(10, store.getLastCommit("group", p1));
+        assertEquals(-1, store.getLastCommit("group", p2));
+
+        assertTrue(store.commit("group", "topic"));
+        assertEquals(15, store.getLastCommit("group", p1));
+        assertEquals(25, store.getLastCommit("group", p2));
+        assertFalse(fs.exists(store.getTempDir("group", "topic")));
+
+        // nothing left to commit
+        assertTrue(store.commit("group", "topic"));
+        assertEquals(15, store.getLastCommit("group", p1));
+    }
+
+    @Test
+    public void testNewOffsetStore() throws Exception {
+        conf.setClass("kafka.offset.store.class", HdfsOffsetStore.class, Object.class);
+        conf.set("kafka.offset.store.hdfs.path", dir.getAbsolutePath());
+        assertTrue(KafkaInputFormat.newOffsetStore(conf) instanceof HdfsOffsetStore);
+    }
+}
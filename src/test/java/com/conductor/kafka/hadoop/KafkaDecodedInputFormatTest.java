@@ -0,0 +1,71 @@
+package com.conductor.kafka.hadoop;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.ByteBuffer;
+
+import kafka.message.Message;
+import kafka.message.MessageAndOffset;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.junit.Test;
+
+import com.conductor.kafka.hadoop.KafkaDecodedInputFormat.KafkaDecodedRecordReader;
+
+public class KafkaDecodedInputFormatTest {
+
+    @Test
+    public void testNextKeyValue() throws Exception {
+        final Configuration conf = new Configuration(false);
+        final Job job = mock(Job.class);
+        when(job.getConfiguration()).thenReturn(conf);
+        assertNull(KafkaInputFormat.getPayloadDecoderClass(conf));
+        KafkaInputFormat.setPayloadDecoderClass(job, SkipEmptyDecoder.class);
+        assertEquals(SkipEmptyDecoder.class, KafkaInputFormat.getPayloadDecoderClass(conf));
+
+        final TaskAttemptContext context = mock(TaskAttemptContext.class);
+        when(context.getConfiguration()).thenReturn(conf);
+        final InputSplit split = mock(InputSplit.class);
+        final KafkaRecordReader delegate = mock(KafkaRecordReader.class);
+        when(delegate.nextMessage()).thenReturn(new MessageAndOffset(new Message("a".getBytes()), 10l),
+                new MessageAndOffset(new Message(new byte[0]), 20l),
+                new MessageAndOffset(new Message("bc".getBytes()), 30l), null);
+
+        final KafkaDecodedRecordReader reader = new KafkaDecodedRecordReader(delegate);
+        reader.initialize(split, context);
+        verify(delegate).initialize(split, context);
+
+        assertTrue(reader.nextKeyValue());
+        assertEquals(10l, reader.getCurrentKey().get());
+        final Object first = reader.getCurrentValue();
+        assertEquals(new Text("a"), first);
+
+        // the empty message is skipped, and the value reused
+        assertTrue(reader.nextKeyValue());
+        assertEquals(30l, reader.getCurrentKey().get());
+        assertEquals(new Text("bc"), reader.getCurrentValue());
+        assertSame(first, reader.getCurrentValue());
+
+        assertFalse(reader.nextKeyValue());
+        assertNull(reader.getCurrentValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoDecoder() throws Exception {
+        final TaskAttemptContext context = mock(TaskAttemptContext.class);
+        when(context.getConfiguration()).thenReturn(new Configuration(false));
+        new KafkaDecodedRecordReader(mock(KafkaRecordReader.class)).initialize(mock(InputSplit.class), context);
+    }
+
+    public static class SkipEmptyDecoder extends TextPayloadDecoder {
+        @Override
+        public Text decode(final long offset, final ByteBuffer payload) {
+            return payload.hasRemaining() ? super.decode(offset, payload) : null;
+        }
+    }
+}
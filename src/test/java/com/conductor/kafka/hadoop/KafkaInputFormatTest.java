@@ -16,10 +16,14 @@ package com.conductor.kafka.hadoop;
 
 import static java.lang.String.format;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import kafka.api.OffsetRequest;
 import kafka.consumer.SimpleConsumer;
@@ -34,6 +38,7 @@ import com.conductor.kafka.Broker;
 import com.conductor.kafka.Partition;
 import com.conductor.kafka.zk.ZkUtils;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
  * @author cgreen
@@ -70,6 +75,12 @@ public class KafkaInputFormatTest {
         KafkaInputFormat.setMaxSplitsPerPartition(mockJob, 2);
         assertEquals(2, KafkaInputFormat.getMaxSplitsPerPartition(conf));
 
+        KafkaInputFormat.setMaxBytesPerPartition(mockJob, 1024l);
+        assertEquals(1024l, KafkaInputFormat.getMaxBytesPerPartition(conf));
+
+        KafkaInputFormat.setMaxBytesPerTopic(mockJob, 4096l);
+        assertEquals(4096l, KafkaInputFormat.getMaxBytesPerTopic(conf));
+
         KafkaInputFormat.setKafkaFetchSizeBytes(mockJob, 88);
         assertEquals(88, KafkaInputFormat.getKafkaFetchSizeBytes(conf));
 
@@ -78,6 +89,25 @@ public class KafkaInputFormatTest {
 
         KafkaInputFormat.setKafkaSocketTimeoutMs(mockJob, 655);
         assertEquals(655, KafkaInputFormat.getKafkaSocketTimeoutMs(conf));
+
+        KafkaInputFormat.setStartTimestamp(mockJob, 1000l);
+        assertEquals(1000l, KafkaInputFormat.getStartTimestamp(conf));
+
+        assertEquals(Long.MAX_VALUE, KafkaInputFormat.getEndTimestamp(conf));
+        KafkaInputFormat.setEndTimestamp(mockJob, 2000l);
+        assertEquals(2000l, KafkaInputFormat.getEndTimestamp(conf));
+
+        assertNull(KafkaInputFormat.getTimestampExtractorClass(conf));
+        KafkaInputFormat.setTimestampExtractorClass(mockJob, TimestampExtractor.class);
+        assertEquals(TimestampExtractor.class, KafkaInputFormat.getTimestampExtractorClass(conf));
+
+        assertEquals(0, KafkaInputFormat.getKafkaPrefetchDepth(conf));
+        KafkaInputFormat.setKafkaPrefetchDepth(mockJob, 3);
+        assertEquals(3, KafkaInputFormat.getKafkaPrefetchDepth(conf));
+
+        assertEquals(8, KafkaInputFormat.getPlanningThreads(conf));
+        KafkaInputFormat.setPlanningThreads(mockJob, 2);
+        assertEquals(2, KafkaInputFormat.getPlanningThreads(conf));
     }
 
     @Test
@@ -91,9 +121,9 @@ public class KafkaInputFormatTest {
         doReturn(mockConsumer).when(inputFormat).getConsumer(broker);
         doReturn(mockZk).when(inputFormat).getZk(mockConf);
         doReturn(Lists.newArrayList(20l, 10l)).when(inputFormat).getOffsets(mockConsumer, "topic", 0, -1, 0,
-                Integer.MAX_VALUE);
+                Long.MAX_VALUE, Integer.MAX_VALUE);
         doReturn(Lists.newArrayList(30l, 20l, 0l)).when(inputFormat).getOffsets(mockConsumer, "topic", 1, 10, 0,
-                Integer.MAX_VALUE);
+                Long.MAX_VALUE, Integer.MAX_VALUE);
 
         final Partition p1 = new Partition("topic", 0, broker);
         final Partition p2 = new Partition("topic", 1, broker);
@@ -137,6 +167,145 @@ public class KafkaInputFormatTest {
         verify(mockZk, times(1)).close();
     }
 
+    @Test
+    public void testPlanInput() throws Exception {
+        final KafkaInputFormat inputFormat = spy(new KafkaInputFormat());
+        final SimpleConsumer mockConsumer1 = mock(SimpleConsumer.class);
+        final SimpleConsumer mockConsumer2 = mock(SimpleConsumer.class);
+        final ZkUtils mockZk = mock(ZkUtils.class);
+        final Configuration conf = new Configuration(false);
+
+        final Broker broker1 = new Broker("127.0.0.1", 9092, 1);
+        final Broker broker2 = new Broker("127.0.0.2", 9092, 2);
+        final Partition p1 = new Partition("topic", 0, broker1);
+        final Partition p2 = new Partition("topic", 0, broker2);
+        doReturn(mockConsumer1).when(inputFormat).getConsumer(broker1);
+        doReturn(mockConsumer2).when(inputFormat).getConsumer(broker2);
+        doReturn(mockZk).when(inputFormat).getZk(conf);
+        when(mockZk.getPartitions("topic")).thenReturn(Lists.newArrayList(p1, p2));
+        when(mockZk.getLastCommit("group", p1)).thenReturn(10l);
+        when(mockZk.getLastCommit("group", p2)).thenReturn(-1l);
+        doReturn(Lists.newArrayList(30l, 20l, 10l)).when(inputFormat).getOffsets(mockConsumer1, "topic", 0, 10, 0,
+                Long.MAX_VALUE, Integer.MAX_VALUE);
+        doReturn(Lists.newArrayList(100l, 5l)).when(inputFormat).getOffsets(mockConsumer2, "topic", 0, -1, 0,
+                Long.MAX_VALUE, Integer.MAX_VALUE);
+        when(mockConsumer1.getOffsetsBefore("topic", 0, OffsetRequest.EarliestTime(), 1)).thenReturn(new long[] { 0 });
+        when(mockConsumer1.getOffsetsBefore("topic", 0, OffsetRequest.LatestTime(), 1)).thenReturn(new long[] { 30 });
+        when(mockConsumer2.getOffsetsBefore("topic", 0, OffsetRequest.EarliestTime(), 1)).thenReturn(new long[] { 5 });
+        when(mockConsumer2.getOffsetsBefore("topic", 0, OffsetRequest.LatestTime(), 1)).thenReturn(new long[] { 100 });
+
+        final KafkaInputPlan plan = inputFormat.planInput(conf, "topic", "group", true);
+        assertEquals(2, plan.getPartitions().size());
+        final KafkaInputPlan.PartitionPlan plan1 = plan.getPartitions().get(0);
+        assertEquals(p1, plan1.getPartition());
+        assertEquals(10l, plan1.getLastCommit());
+        assertEquals(0l, plan1.getEarliestOffset());
+        assertEquals(30l, plan1.getLatestOffset());
+        assertEquals(20l, plan1.getLagBytes());
+        assertEquals(2, plan1.getSplits().size());
+        assertEquals(20l, plan1.getSplitBytes());
+        // both brokers are read by their own splits only
+        assertEquals(2, plan1.getSplits().get(0).getBrokerSplits());
+        final KafkaInputPlan.PartitionPlan plan2 = plan.getPartitions().get(1);
+        assertEquals(p2, plan2.getPartition());
+        assertEquals(95l, plan2.getLagBytes());
+        assertEquals(1, plan2.getSplits().size());
+        assertEquals(95l, plan2.getSplitBytes());
+        assertEquals(1, plan2.getSplits().get(0).getBrokerSplits());
+
+        assertEquals(115l, plan.getLagBytes());
+        assertEquals(115l, plan.getSplitBytes());
+        assertEquals(3, plan.getEstimatedMapTasks());
+        assertEquals(3, plan.getSplits().size());
+
+        // one consumer per broker, each closed
+        verify(inputFormat, times(2)).getConsumer(any(Broker.class));
+        verify(mockConsumer1).close();
+        verify(mockConsumer2).close();
+        verify(mockZk).close();
+
+        // real jobs don't need the log bounds, so they don't ask for them
+        final KafkaInputPlan jobPlan = inputFormat.planInput(conf, "topic", "group", false);
+        assertEquals(-1l, jobPlan.getLagBytes());
+        assertEquals(115l, jobPlan.getSplitBytes());
+    }
+
+    @Test
+    public void testPlanInputSampling() throws Exception {
+        final KafkaInputFormat inputFormat = spy(new KafkaInputFormat());
+        final SimpleConsumer mockConsumer = mock(SimpleConsumer.class);
+        final ZkUtils mockZk = mock(ZkUtils.class);
+        final Configuration conf = new Configuration(false);
+        final Job job = mock(Job.class);
+        when(job.getConfiguration()).thenReturn(conf);
+
+        final Broker broker = new Broker("127.0.0.1", 9092, 1);
+        final Partition partition = new Partition("topic", 0, broker);
+        doReturn(mockConsumer).when(inputFormat).getConsumer(broker);
+        doReturn(mockZk).when(inputFormat).getZk(conf);
+        when(mockZk.getPartitions("topic")).thenReturn(Lists.newArrayList(partition));
+        when(mockZk.getLastCommit("group", partition)).thenReturn(-1l);
+        // 100 splits of 10 bytes
+        final List<Long> offsets = Lists.newArrayList();
+        for (long offset = 1000; offset >= 0; offset -= 10) {
+            offsets.add(offset);
+        }
+        doReturn(offsets).when(inputFormat).getOffsets(mockConsumer, "topic", 0, -1, 0, Long.MAX_VALUE,
+                Integer.MAX_VALUE);
+
+        KafkaInputFormat.setSplitSampleRate(job, 0.25f);
+        KafkaInputFormat.setMessageSampleRate(job, 0.5f);
+        KafkaInputFormat.setSampleSeed(job, 7);
+        final KafkaInputPlan plan = inputFormat.planInput(conf, "topic", "group", false);
+        final List<KafkaInputSplit> splits = plan.getPartitions().get(0).getSplits();
+        assertTrue(splits.size() > 10 && splits.size() < 40);
+        assertEquals(10l * splits.size(), plan.getSplitBytes());
+        assertEquals(5l * splits.size(), plan.getEstimatedSampledBytes());
+        for (final KafkaInputSplit split : splits) {
+            assertFalse("A sample must not commit offsets", split.isPartitionCommitter());
+        }
+
+        // the same seed picks the same splits, another one different splits
+        assertEquals(splits, inputFormat.planInput(conf, "topic", "group", false).getPartitions().get(0).getSplits());
+        KafkaInputFormat.setSampleSeed(job, 8);
+        assertFalse(splits.equals(inputFormat.planInput(conf, "topic", "group", false).getPartitions().get(0)
+                .getSplits()));
+    }
+
+    @Test
+    public void testIsSampled() throws Exception {
+        int sampled = 0;
+        for (long offset = 0; offset < 100000; offset += 7) {
+            assertTrue(KafkaInputFormat.isSampled(offset, 3, 1f));
+            assertFalse(KafkaInputFormat.isSampled(offset, 3, 0f));
+            if (KafkaInputFormat.isSampled(offset, 3, 0.1f)) {
+                sampled++;
+                assertTrue("Samples must be nested", KafkaInputFormat.isSampled(offset, 3, 0.2f));
+            }
+        }
+        // 14286 offsets
+        assertTrue(sampled > 1250 && sampled < 1600);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPlanInputFailure() throws Exception {
+        final KafkaInputFormat inputFormat = spy(new KafkaInputFormat());
+        final SimpleConsumer mockConsumer = mock(SimpleConsumer.class);
+        final ZkUtils mockZk = mock(ZkUtils.class);
+        final Configuration conf = new Configuration(false);
+
+        final Broker broker = new Broker("127.0.0.1", 9092, 1);
+        final Partition partition = new Partition("topic", 0, broker);
+        doReturn(mockConsumer).when(inputFormat).getConsumer(broker);
+        doReturn(mockZk).when(inputFormat).getZk(conf);
+        when(mockZk.getPartitions("topic")).thenReturn(Lists.newArrayList(partition));
+        when(mockZk.getLastCommit("group", partition)).thenReturn(-1l);
+        doThrow(new IllegalStateException()).when(inputFormat).getOffsets(mockConsumer, "topic", 0, -1, 0,
+                Long.MAX_VALUE, Integer.MAX_VALUE);
+
+        inputFormat.getInputSplits(conf, "topic", "group");
+    }
+
     @Test
     public void testGetOffsets() throws Exception {
         final SimpleConsumer consumer = mock(SimpleConsumer.class);
@@ -147,9 +316,10 @@ public class KafkaInputFormatTest {
 
         final KafkaInputFormat inputFormat = new KafkaInputFormat();
 
-        // case 0: get everything (-1 last commit, 0 asOfTime, as many partitions as possible) -> all offsets
+        // case 0: get everything (-1 last commit, 0 asOfTime, as many partitions as possible) -> all offsets, up to and
+        // including the log end offset (101) as of now
         long[] expected = offsets;
-        List<Long> actual = inputFormat.getOffsets(consumer, "topic", 1, -1, 0, Integer.MAX_VALUE);
+        List<Long> actual = inputFormat.getOffsets(consumer, "topic", 1, -1, 0, Long.MAX_VALUE, Integer.MAX_VALUE);
         compareArrayContents(offsets, actual);
 
         // case 1: lastCommit of 52 -> we should only get back the first 5 offsets + the lastCommit
@@ -157,38 +327,136 @@ public class KafkaInputFormatTest {
         expected = new long[6];
         System.arraycopy(offsets, 0, expected, 0, 6);
         expected[5] = lastCommit;
-        actual = inputFormat.getOffsets(consumer, "topic", 1, lastCommit, 0, Integer.MAX_VALUE);
+        actual = inputFormat.getOffsets(consumer, "topic", 1, lastCommit, 0, Long.MAX_VALUE, Integer.MAX_VALUE);
         compareArrayContents(expected, actual);
 
         // case 2: lastCommit of 52, asOfTime 51 -> still include last offsets
         final int asOfTime = 999;
         when(consumer.getOffsetsBefore("topic", 1, asOfTime, 1)).thenReturn(new long[] { 51 });
-        actual = inputFormat.getOffsets(consumer, "topic", 1, lastCommit, asOfTime, Integer.MAX_VALUE);
+        actual = inputFormat.getOffsets(consumer, "topic", 1, lastCommit, asOfTime, Long.MAX_VALUE, Integer.MAX_VALUE);
         compareArrayContents(expected, actual);
 
         // case 3: lastCommit of 52, asOfTime 52 -> don't include last offsets
         when(consumer.getOffsetsBefore("topic", 1, asOfTime, 1)).thenReturn(new long[] { 52 });
         expected = Arrays.copyOfRange(offsets, 0, 5);
-        actual = inputFormat.getOffsets(consumer, "topic", 1, lastCommit, asOfTime, Integer.MAX_VALUE);
+        actual = inputFormat.getOffsets(consumer, "topic", 1, lastCommit, asOfTime, Long.MAX_VALUE, Integer.MAX_VALUE);
         compareArrayContents(expected, actual);
 
         // case 4: maxSplitsPerPartition == number of commits (5) -> should include all 5 offsets
-        actual = inputFormat.getOffsets(consumer, "topic", 1, lastCommit, asOfTime, 5);
+        actual = inputFormat.getOffsets(consumer, "topic", 1, lastCommit, asOfTime, Long.MAX_VALUE, 5);
         compareArrayContents(expected, actual);
 
         // case 5: maxSplitsPerPartition = number of commits - 1 (4) -> should STILL include all 5 offsets
-        actual = inputFormat.getOffsets(consumer, "topic", 1, lastCommit, asOfTime, 4);
+        actual = inputFormat.getOffsets(consumer, "topic", 1, lastCommit, asOfTime, Long.MAX_VALUE, 4);
         compareArrayContents(expected, actual);
 
         // case 6: maxSplitsPerPartition = number of commits - 2 (3) -> should exclude the first (largest) offset
-        actual = inputFormat.getOffsets(consumer, "topic", 1, lastCommit, asOfTime, 3);
+        actual = inputFormat.getOffsets(consumer, "topic", 1, lastCommit, asOfTime, Long.MAX_VALUE, 3);
         expected = Arrays.copyOfRange(offsets, 1, 5);
         compareArrayContents(expected, actual);
 
         // case 7: maxSplitsPerPartition = 1 -> should include just 2 commits
-        actual = inputFormat.getOffsets(consumer, "topic", 1, lastCommit, asOfTime, 1);
+        actual = inputFormat.getOffsets(consumer, "topic", 1, lastCommit, asOfTime, Long.MAX_VALUE, 1);
         expected = Arrays.copyOfRange(offsets, 3, 5);
         compareArrayContents(expected, actual);
+
+        // case 8: file starting at 51 last modified before endTime -> the file at 61 straddles endTime, so the splits
+        // end at 71
+        final long endTime = 2000;
+        when(consumer.getOffsetsBefore("topic", 1, endTime, 1)).thenReturn(new long[] { 51 });
+        actual = inputFormat.getOffsets(consumer, "topic", 1, -1, 0, endTime, Integer.MAX_VALUE);
+        expected = Arrays.copyOfRange(offsets, 3, offsets.length);
+        compareArrayContents(expected, actual);
+
+        // case 9: endTime before any file was modified -> only the oldest file may contain data before endTime
+        when(consumer.getOffsetsBefore("topic", 1, endTime, 1)).thenReturn(new long[] {});
+        actual = inputFormat.getOffsets(consumer, "topic", 1, -1, 0, endTime, Integer.MAX_VALUE);
+        expected = Arrays.copyOfRange(offsets, 8, offsets.length);
+        compareArrayContents(expected, actual);
+
+        // case 10: active file straddles endTime -> nothing is excluded
+        when(consumer.getOffsetsBefore("topic", 1, endTime, 1)).thenReturn(new long[] { 91 });
+        actual = inputFormat.getOffsets(consumer, "topic", 1, -1, 0, endTime, Integer.MAX_VALUE);
+        compareArrayContents(offsets, actual);
+    }
+
+    @Test
+    public void testLimitBytes() throws Exception {
+        final List<Long> offsets = Lists.newArrayList(100l, 60l, 30l, 10l);
+
+        compareArrayContents(new long[] { 100, 60, 30, 10 }, KafkaInputFormat.limitBytes(offsets, Long.MAX_VALUE));
+        compareArrayContents(new long[] { 100, 60, 30, 10 }, KafkaInputFormat.limitBytes(offsets, 90));
+        compareArrayContents(new long[] { 60, 30, 10 }, KafkaInputFormat.limitBytes(offsets, 89));
+        compareArrayContents(new long[] { 30, 10 }, KafkaInputFormat.limitBytes(offsets, 20));
+        // always read at least one split
+        compareArrayContents(new long[] { 30, 10 }, KafkaInputFormat.limitBytes(offsets, 1));
+    }
+
+    @Test
+    public void testLimitOffsets() throws Exception {
+        final List<Long> offsets = Lists.newArrayList(100l, 60l, 30l);
+
+        compareArrayContents(new long[] { 100, 60, 30 }, KafkaInputFormat.limitOffsets(offsets, 100));
+        compareArrayContents(new long[] { 100, 60, 30 }, KafkaInputFormat.limitOffsets(offsets, 120));
+        compareArrayContents(new long[] { 60, 30 }, KafkaInputFormat.limitOffsets(offsets, 60));
+        compareArrayContents(new long[] { 50, 30 }, KafkaInputFormat.limitOffsets(offsets, 50));
+        compareArrayContents(new long[] {}, KafkaInputFormat.limitOffsets(offsets, 30));
+    }
+
+    @Test
+    public void testStartEndOffsets() throws Exception {
+        final Configuration conf = new Configuration(false);
+        final Job mockJob = mock(Job.class);
+        when(mockJob.getConfiguration()).thenReturn(conf);
+        final Broker broker = new Broker("127.0.0.1", 9092, 1);
+        final Map<Partition, Long> offsets = Maps.newHashMap();
+        offsets.put(new Partition("topic", 0, broker), 10l);
+        offsets.put(new Partition("topic", 1, broker), 20l);
+
+        assertNull(KafkaInputFormat.getStartOffsets(conf, "group", "topic"));
+        KafkaInputFormat.setStartOffsets(mockJob, "group", "topic", offsets);
+        assertEquals(2, KafkaInputFormat.getStartOffsets(conf, "group", "topic").size());
+        assertEquals(10l, (long) KafkaInputFormat.getStartOffsets(conf, "group", "topic").get("1-0"));
+        assertEquals(20l, (long) KafkaInputFormat.getStartOffsets(conf, "group", "topic").get("1-1"));
+        assertNull(KafkaInputFormat.getStartOffsets(conf, "other_group", "topic"));
+
+        assertNull(KafkaInputFormat.getEndOffsets(conf, "group", "topic"));
+        KafkaInputFormat.setEndOffsets(mockJob, "group", "topic", Maps.<Partition, Long> newHashMap());
+        assertTrue(KafkaInputFormat.getEndOffsets(conf, "group", "topic").isEmpty());
+    }
+
+    @Test
+    public void testCommitOffsets() throws Exception {
+        final Configuration conf = new Configuration(false);
+        final Job mockJob = mock(Job.class);
+        when(mockJob.getConfiguration()).thenReturn(conf);
+
+        assertTrue(KafkaInputFormat.isCommitOffsets(conf));
+        KafkaInputFormat.setCommitOffsets(mockJob, false);
+        assertFalse(KafkaInputFormat.isCommitOffsets(conf));
+    }
+
+    @Test
+    public void testLimitTotalBytes() throws Exception {
+        final Broker broker = new Broker("127.0.0.1", 9092, 1);
+        final Partition p1 = new Partition("topic", 0, broker);
+        final Partition p2 = new Partition("topic", 1, broker);
+        final Partition p3 = new Partition("topic", 2, broker);
+        final Map<Partition, List<Long>> partitionOffsets = Maps.newLinkedHashMap();
+        partitionOffsets.put(p1, Lists.newArrayList(100l, 60l, 30l, 10l));
+        partitionOffsets.put(p2, Lists.newArrayList(40l, 20l, 0l));
+        partitionOffsets.put(p3, Lists.<Long> newArrayList());
+
+        // round 1: p1 [10, 30] + p2 [0, 20] = 40, round 2: p1 [30, 60] = 70, p2 [20, 40] = 90 doesn't fit
+        KafkaInputFormat.limitTotalBytes(partitionOffsets, 80);
+        compareArrayContents(new long[] { 60, 30, 10 }, partitionOffsets.get(p1));
+        compareArrayContents(new long[] { 20, 0 }, partitionOffsets.get(p2));
+        compareArrayContents(new long[] {}, partitionOffsets.get(p3));
+
+        // always read at least one split
+        KafkaInputFormat.limitTotalBytes(partitionOffsets, 1);
+        compareArrayContents(new long[] { 30, 10 }, partitionOffsets.get(p1));
+        compareArrayContents(new long[] {}, partitionOffsets.get(p2));
     }
 
     private void compareArrayContents(final long[] expected, final List<Long> actual) {
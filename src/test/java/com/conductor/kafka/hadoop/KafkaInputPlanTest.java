@@ -0,0 +1,93 @@
+package com.conductor.kafka.hadoop;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.junit.Test;
+
+import com.conductor.kafka.Broker;
+import com.conductor.kafka.Partition;
+import com.google.common.collect.Lists;
+
+public class KafkaInputPlanTest {
+
+    private static KafkaInputPlan.PartitionPlan partitionPlan(final Partition partition, final long... starts) {
+        final List<KafkaInputSplit> splits = Lists.newArrayList();
+        for (int i = 0; i < starts.length; i++) {
+            splits.add(new KafkaInputSplit(partition, starts[i], starts[i] + 10, i == 0));
+        }
+        return new KafkaInputPlan.PartitionPlan(partition, -1, -1, -1, splits);
+    }
+
+    @Test
+    public void testGetSplitsInterleavesBrokers() throws Exception {
+        final Broker broker1 = new Broker("127.0.0.1", 9092, 1);
+        final Broker broker2 = new Broker("127.0.0.2", 9092, 2);
+        final Partition p1 = new Partition("topic", 0, broker1);
+        final Partition p2 = new Partition("topic", 1, broker1);
+        final Partition p3 = new Partition("topic", 2, broker1);
+        final Partition p4 = new Partition("topic", 0, broker2);
+        // partitions come grouped by broker
+        final KafkaInputPlan plan = new KafkaInputPlan("topic", "group", Lists.newArrayList(
+                partitionPlan(p1, 20, 10), partitionPlan(p2, 20, 10), partitionPlan(p3),
+                partitionPlan(p4, 30, 20, 10)));
+
+        final List<InputSplit> splits = plan.getSplits();
+        assertEquals(7, splits.size());
+        assertEquals(7, plan.getEstimatedMapTasks());
+        final List<String> order = Lists.newArrayList();
+        for (final InputSplit split : splits) {
+            final KafkaInputSplit kafkaSplit = (KafkaInputSplit) split;
+            order.add(kafkaSplit.getPartition().getBrokerPartition() + "@" + kafkaSplit.getStartOffset());
+        }
+        assertEquals(Lists.newArrayList("1-0@20", "2-0@30", "1-1@20", "2-0@20", "1-0@10", "2-0@10", "1-1@10"), order);
+    }
+
+    @Test
+    public void testGetSplitsSurviveLengthSort() throws Exception {
+        final Broker broker1 = new Broker("127.0.0.1", 9092, 1);
+        final Broker broker2 = new Broker("127.0.0.2", 9092, 2);
+        final Partition p1 = new Partition("topic", 0, broker1);
+        final Partition p2 = new Partition("topic", 0, broker2);
+        // full Kafka files of slightly different sizes, then the partial newest ones
+        final long file = 1024 * 1024 * 1024;
+        final KafkaInputPlan plan = new KafkaInputPlan("topic", "group", Lists.newArrayList(
+                new KafkaInputPlan.PartitionPlan(p1, -1, -1, -1, Lists.newArrayList(new KafkaInputSplit(p1, 0,
+                        file - 100, false), new KafkaInputSplit(p1, file - 100, 2 * file - 300, false),
+                        new KafkaInputSplit(p1, 2 * file - 300, 2 * file, true))),
+                new KafkaInputPlan.PartitionPlan(p2, -1, -1, -1, Lists.newArrayList(new KafkaInputSplit(p2, 0,
+                        file - 50, false), new KafkaInputSplit(p2, file - 50, 2 * file - 5000, false),
+                        new KafkaInputSplit(p2, 2 * file - 5000, 2 * file, true)))));
+
+        // the way Hadoop's JobSubmitter orders splits before scheduling them
+        final List<InputSplit> splits = Lists.newArrayList(plan.getSplits());
+        Collections.sort(splits, new Comparator<InputSplit>() {
+            @Override
+            public int compare(final InputSplit o1, final InputSplit o2) {
+                try {
+                    return Long.valueOf(o2.getLength()).compareTo(o1.getLength());
+                } catch (final Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        final List<String> order = Lists.newArrayList();
+        for (final InputSplit split : splits) {
+            final KafkaInputSplit kafkaSplit = (KafkaInputSplit) split;
+            order.add(kafkaSplit.getPartition().getBrokerPartition() + "@" + kafkaSplit.getStartOffset());
+        }
+        assertEquals(Lists.newArrayList("1-0@0", "2-0@0", "1-0@" + (file - 100), "2-0@" + (file - 50), "1-0@"
+                + (2 * file - 300), "2-0@" + (2 * file - 5000)), order);
+    }
+
+    @Test
+    public void testGetSplitsEmpty() throws Exception {
+        final KafkaInputPlan plan = new KafkaInputPlan("topic", "group",
+                Collections.<KafkaInputPlan.PartitionPlan> emptyList());
+        assertTrue(plan.getSplits().isEmpty());
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.conductor.kafka.hadoop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Test;
+
+import com.conductor.kafka.Broker;
+import com.conductor.kafka.Partition;
+import com.google.common.collect.Lists;
+
+public class KafkaInputPlanToolTest {
+
+    @Test
+    public void testRun() throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final KafkaInputPlanTool tool = spy(new KafkaInputPlanTool(new PrintStream(bytes, true)));
+        tool.setConf(new Configuration(false));
+
+        final Partition partition = new Partition("the:topic", 3, new Broker("127.0.0.1", 9092, 1));
+        final KafkaInputPlan plan = new KafkaInputPlan("the:topic", "group", Lists.newArrayList(
+                new KafkaInputPlan.PartitionPlan(partition, 10, 0, 40, Lists.newArrayList(new KafkaInputSplit(
+                        partition, 20, 40, true), new KafkaInputSplit(partition, 10, 20, false)))));
+        doReturn(plan).when(tool).getPlan(any(Configuration.class), eq("the:topic"), eq("group"));
+
+        assertEquals(0, tool.run(new String[] { "the:topic:group" }));
+        final String output = bytes.toString();
+        assertTrue(output, output.startsWith("the:topic (group group)"));
+        assertTrue(output, output.contains("127.0.0.1:9092-3"));
+        assertTrue(output, output.contains("total lag: 30 bytes, to read: 30 bytes, estimated map tasks: 2"));
+
+        // bad arguments
+        assertEquals(2, tool.run(new String[] {}));
+        assertEquals(2, tool.run(new String[] { "topic" }));
+        assertEquals(2, tool.run(new String[] { "topic:" }));
+        verify(tool, times(1)).getPlan(any(Configuration.class), anyString(), anyString());
+    }
+}
@@ -33,6 +33,7 @@ public class KafkaInputSplitTest {
         final Broker broker = new Broker("127.0.0.1", 9092, 1);
         final Partition partition = new Partition("topic_name", 0, broker);
         final KafkaInputSplit split = new KafkaInputSplit(partition, 0, 10l, false);
+        split.setBrokerSplits(5);
         final ByteArrayDataOutput out = ByteStreams.newDataOutput();
         split.write(out);
 
@@ -40,5 +41,16 @@ public class KafkaInputSplitTest {
         actual.readFields(ByteStreams.newDataInput(out.toByteArray()));
 
         assertEquals(split, actual);
+        assertEquals(5, actual.getBrokerSplits());
+    }
+
+    @Test
+    public void testGetLength() throws Exception {
+        final Partition partition = new Partition("topic_name", 0, new Broker("127.0.0.1", 9092, 1));
+        final long unit = KafkaInputSplit.LENGTH_UNIT_BYTES;
+        assertEquals(0, new KafkaInputSplit(partition, 100, 100, false).getLength());
+        assertEquals(unit, new KafkaInputSplit(partition, 100, 101, false).getLength());
+        assertEquals(unit, new KafkaInputSplit(partition, 0, unit, false).getLength());
+        assertEquals(2 * unit, new KafkaInputSplit(partition, 0, unit + 1, false).getLength());
     }
 }
@@ -14,17 +14,27 @@
 
 package com.conductor.kafka.hadoop;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.*;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.BZip2Codec;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
 import org.apache.hadoop.mapreduce.*;
+import org.apache.hadoop.mapreduce.lib.map.MultithreadedMapper;
 import org.apache.hadoop.mapreduce.lib.output.*;
 import org.junit.Test;
 
 import com.conductor.hadoop.DelegatingMapper;
+import com.conductor.hadoop.MultithreadedDelegatingMapper;
+import com.conductor.hadoop.OutputPathExtractor;
+import com.conductor.hadoop.PartitionedOutputFormat;
+import com.conductor.kafka.zk.ZkUtils;
 
 /**
  * @author cgreen
@@ -103,6 +113,7 @@ public class KafkaJobBuilderTest {
         builder.setMapOutputKeyClass(Text.class);
         builder.setMapOutputValueClass(BytesWritable.class);
         builder.setReducerClass(MockReducer.class);
+        builder.setCombinerClass(MockReducer.class);
         builder.setTaskMemorySettings("-Xmx2048m");
         builder.setNumReduceTasks(100);
         builder.setParitioner(MockPartitioner.class);
@@ -114,6 +125,7 @@ public class KafkaJobBuilderTest {
         assertEquals(Text.class, job.getMapOutputKeyClass());
         assertEquals(BytesWritable.class, job.getMapOutputValueClass());
         assertEquals(MockReducer.class, job.getReducerClass());
+        assertEquals(MockReducer.class, job.getCombinerClass());
         assertEquals(MockMapper.class, job.getMapperClass());
         assertEquals("-Xmx2048m", job.getConfiguration().get("mapred.child.java.opts"));
         assertEquals(100, job.getNumReduceTasks());
@@ -148,6 +160,182 @@ public class KafkaJobBuilderTest {
         assertEquals("s3cr3t", job.getConfiguration().get("fs.s3.awsSecretAccessKey"));
     }
 
+    @Test
+    public void testMapperThreads() throws Exception {
+        builder.setZkConnect("localhost:2181");
+        builder.addQueueInput("queue_name", "group_name", MockMapper.class);
+        builder.setNullOutputFormat();
+        builder.setMapperThreads(4);
+
+        Job job = builder.configureJob(conf);
+        assertEquals(MultithreadedMapper.class, job.getMapperClass());
+        assertEquals(MockMapper.class, MultithreadedMapper.getMapperClass(job));
+        assertEquals(4, MultithreadedMapper.getNumberOfThreads(job));
+
+        builder.addQueueInput("queue_name_2", "group_name_2", MockMapper.class);
+        job = builder.configureJob(conf);
+        assertEquals(MultithreadedDelegatingMapper.class, job.getMapperClass());
+        assertEquals(4, MultithreadedDelegatingMapper.getNumberOfThreads(job.getConfiguration()));
+    }
+
+    @Test
+    public void testPartitionedOutputFormat() throws Exception {
+        builder.setZkConnect("localhost:2181");
+        builder.addQueueInput("queue_name", "group_name", MockMapper.class);
+        builder.setPartitionedOutputFormat(MockPathExtractor.class, "/a/hdfs/path");
+
+        final Job job = builder.configureJob(conf);
+        assertEquals(PartitionedOutputFormat.class, job.getOutputFormatClass());
+        assertEquals(MockPathExtractor.class, PartitionedOutputFormat.getPathExtractorClass(job.getConfiguration()));
+        assertEquals("file:/a/hdfs/path", FileOutputFormat.getOutputPath(job).toString());
+    }
+
+    @Test
+    public void testOutputCompression() throws Exception {
+        builder.setZkConnect("localhost:2181");
+        builder.addQueueInput("queue_name", "group_name", MockMapper.class);
+        builder.setReducerClass(MockReducer.class);
+        builder.setSequenceFileOutputFormat("/a/hdfs/path");
+
+        Job job = builder.configureJob(conf);
+        assertFalse(FileOutputFormat.getCompressOutput(job));
+        assertFalse(job.getConfiguration().getBoolean(MRJobConfig.MAP_OUTPUT_COMPRESS, false));
+
+        builder.setOutputCompression(DefaultCodec.class);
+        builder.setMapOutputCompression(GzipCodec.class);
+        job = builder.configureJob(conf);
+        assertTrue(FileOutputFormat.getCompressOutput(job));
+        assertEquals(DefaultCodec.class, FileOutputFormat.getOutputCompressorClass(job, null));
+        assertEquals(CompressionType.BLOCK, SequenceFileOutputFormat.getOutputCompressionType(job));
+        assertTrue(job.getConfiguration().getBoolean(MRJobConfig.MAP_OUTPUT_COMPRESS, false));
+        assertEquals(GzipCodec.class,
+                job.getConfiguration().getClass(MRJobConfig.MAP_OUTPUT_COMPRESS_CODEC, null, CompressionCodec.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTextOutputCompressionNotSplittable() throws Exception {
+        builder.setZkConnect("localhost:2181");
+        builder.addQueueInput("queue_name", "group_name", MockMapper.class);
+        builder.setTextFileOutputFormat("/a/hdfs/path");
+        builder.setOutputCompression(GzipCodec.class);
+        builder.configureJob(conf);
+    }
+
+    @Test
+    public void testTextOutputCompression() throws Exception {
+        builder.setZkConnect("localhost:2181");
+        builder.addQueueInput("queue_name", "group_name", MockMapper.class);
+        builder.setTextFileOutputFormat("/a/hdfs/path");
+        builder.setOutputCompression(BZip2Codec.class);
+        final Job job = builder.configureJob(conf);
+        assertTrue(FileOutputFormat.getCompressOutput(job));
+        assertEquals(BZip2Codec.class, FileOutputFormat.getOutputCompressorClass(job, null));
+    }
+
+    @Test
+    public void testKafkaOutputFormat() throws Exception {
+        builder.setZkConnect("localhost:2181");
+        builder.addQueueInput("queue_name", "group_name", MockMapper.class);
+        builder.setKafkaOutputFormat("output_topic");
+
+        final Job job = builder.configureJob(conf);
+        assertEquals(KafkaOutputFormat.class, job.getOutputFormatClass());
+        assertEquals(BytesWritable.class, job.getOutputKeyClass());
+        assertEquals(BytesWritable.class, job.getOutputValueClass());
+        assertEquals("output_topic", KafkaOutputFormat.getTopic(job.getConfiguration()));
+    }
+
+    @Test
+    public void testHdfsOffsetStore() throws Exception {
+        builder.setZkConnect("localhost:2181");
+        builder.addQueueInput("queue_name", "group_name", MockMapper.class);
+        builder.setNullOutputFormat();
+
+        Job job = builder.configureJob(conf);
+        assertEquals(ZkUtils.class, KafkaInputFormat.getOffsetStoreClass(job.getConfiguration()));
+
+        builder.setHdfsOffsetStorePath("/kafka/offsets");
+        job = builder.configureJob(conf);
+        assertEquals(HdfsOffsetStore.class, KafkaInputFormat.getOffsetStoreClass(job.getConfiguration()));
+        assertEquals(new Path("/kafka/offsets"), HdfsOffsetStore.getPath(job.getConfiguration()));
+    }
+
+    @Test
+    public void testAutoNumReduceTasks() throws Exception {
+        final long gb = 1024L * 1024 * 1024;
+        assertEquals(1, KafkaJobBuilder.getAutoNumReduceTasks(0, gb, 10));
+        assertEquals(1, KafkaJobBuilder.getAutoNumReduceTasks(gb, gb, 10));
+        assertEquals(2, KafkaJobBuilder.getAutoNumReduceTasks(gb + 1, gb, 10));
+        assertEquals(10, KafkaJobBuilder.getAutoNumReduceTasks(100 * gb, gb, 10));
+    }
+
+    @Test
+    public void testAutoTaskMemory() throws Exception {
+        // 2 * 5MB * (0 + 2) = 20MB of read buffers
+        assertEquals(532, KafkaJobBuilder.getAutoMapHeapMb(512, 5 * 1024 * 1024, 0));
+        // 2 * 5MB * (2 + 2) = 40MB of read buffers
+        assertEquals(552, KafkaJobBuilder.getAutoMapHeapMb(512, 5 * 1024 * 1024, 2));
+
+        builder.setZkConnect("localhost:2181");
+        builder.addQueueInput("queue_name", "group_name", MockMapper.class);
+        builder.setNullOutputFormat();
+        builder.setAutoTaskMemory(512);
+        final Job job = builder.configureJob(conf);
+        assertEquals("-Xmx532m", job.getConfiguration().get(MRJobConfig.MAP_JAVA_OPTS));
+        assertEquals(665, job.getConfiguration().getInt(MRJobConfig.MAP_MEMORY_MB, 0));
+    }
+
+    @Test
+    public void testConfigureUberTask() throws Exception {
+        builder.setZkConnect("localhost:2181");
+        builder.addQueueInput("queue_name", "group_name", MockMapper.class);
+        builder.setReducerClass(MockReducer.class);
+        builder.setNullOutputFormat();
+        builder.setNumReduceTasks(5);
+        builder.setAutoTaskMemory(2048);
+
+        final Job job = builder.configureJob(conf);
+        assertFalse(job.getConfiguration().getBoolean(MRJobConfig.JOB_UBERTASK_ENABLE, false));
+
+        builder.configureUberTask(job, 1024, 3);
+        final Configuration jobConf = job.getConfiguration();
+        assertTrue(jobConf.getBoolean(MRJobConfig.JOB_UBERTASK_ENABLE, false));
+        assertEquals(3, jobConf.getInt(MRJobConfig.JOB_UBERTASK_MAXMAPS, 0));
+        assertEquals(1024, jobConf.getLong(MRJobConfig.JOB_UBERTASK_MAXBYTES, 0));
+        assertEquals(1, job.getNumReduceTasks());
+        // the map heap, plus the application master's own
+        final int amHeapMb = KafkaJobBuilder.getHeapMb(jobConf.get(MRJobConfig.MAP_JAVA_OPTS)) + 512;
+        assertEquals(amHeapMb, KafkaJobBuilder.getHeapMb(jobConf.get(MRJobConfig.MR_AM_COMMAND_OPTS)));
+        assertEquals(amHeapMb + amHeapMb / 4, jobConf.getInt(MRJobConfig.MR_AM_VMEM_MB, 0));
+
+        // a bigger application master is left alone, and its other options are kept
+        jobConf.set(MRJobConfig.MR_AM_COMMAND_OPTS, "-Xmx8g -XX:+UseG1GC");
+        jobConf.setInt(MRJobConfig.MR_AM_VMEM_MB, 12288);
+        builder.configureUberTask(job, 1024, 3);
+        assertEquals("-Xmx8192m -XX:+UseG1GC", jobConf.get(MRJobConfig.MR_AM_COMMAND_OPTS));
+        assertEquals(12288, jobConf.getInt(MRJobConfig.MR_AM_VMEM_MB, 0));
+    }
+
+    @Test
+    public void testHeapMb() throws Exception {
+        assertEquals(0, KafkaJobBuilder.getHeapMb(null));
+        assertEquals(0, KafkaJobBuilder.getHeapMb("-XX:+UseG1GC"));
+        assertEquals(1024, KafkaJobBuilder.getHeapMb("-Xmx1024m"));
+        assertEquals(2048, KafkaJobBuilder.getHeapMb("-Xmx1g -Djava.net.preferIPv4Stack=true -Xmx2G"));
+        assertEquals(512, KafkaJobBuilder.getHeapMb("-Xmx524288k"));
+
+        assertEquals("-Xmx100m", KafkaJobBuilder.setHeapMb(null, 100));
+        assertEquals("-Xmx100m -XX:+UseG1GC", KafkaJobBuilder.setHeapMb("-Xmx1g -XX:+UseG1GC", 100));
+        assertEquals("-XX:+UseG1GC -Xmx100m", KafkaJobBuilder.setHeapMb("-XX:+UseG1GC", 100));
+    }
+
+    private static class MockPathExtractor implements OutputPathExtractor<BytesWritable, BytesWritable> {
+        @Override
+        public String getPath(final BytesWritable key, final BytesWritable value) {
+            return "";
+        }
+    }
+
     private static class MockMapper extends Mapper {
     }
 
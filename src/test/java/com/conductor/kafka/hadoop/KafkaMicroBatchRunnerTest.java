@@ -0,0 +1,101 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.conductor.kafka.hadoop;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.conductor.kafka.Broker;
+import com.conductor.kafka.Partition;
+import com.conductor.kafka.hadoop.MultipleKafkaInputFormat.TopicConf;
+import com.conductor.kafka.zk.ZkUtils;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class KafkaMicroBatchRunnerTest {
+
+    private final Configuration conf = new Configuration(false);
+    private final Broker broker = new Broker("127.0.0.1", 9092, 1);
+    private final Partition p1 = new Partition("topic", 0, broker);
+    private final Partition p2 = new Partition("topic", 1, broker);
+    private final TopicConf topicConf = new TopicConf("topic", "group", Mapper.class);
+    private KafkaMicroBatchRunner runner;
+
+    @Before
+    public void setUp() throws Exception {
+        final KafkaJobBuilder builder = KafkaJobBuilder.newBuilder().setZkConnect("localhost:2181")
+                .addQueueInput("topic", "group", Mapper.class).setTextFileOutputFormat("/a/hdfs/path");
+        runner = spy(new KafkaMicroBatchRunner(builder, conf));
+    }
+
+    @Test
+    public void testPlan() throws Exception {
+        doReturn(
+                Lists.<InputSplit> newArrayList(new KafkaInputSplit(p1, 20, 30, true), new KafkaInputSplit(p1, 10, 20,
+                        false))).when(runner).getInputSplits(any(Configuration.class), eq("topic"), eq("group"));
+
+        // p2 was read by the previous batch, but has no new data
+        final Map<Partition, Long> starts = Maps.newHashMap();
+        starts.put(p1, 10l);
+        starts.put(p2, 50l);
+        final Map<TopicConf, Map<Partition, Long>> startOffsets = Maps.newHashMap();
+        startOffsets.put(topicConf, starts);
+
+        final KafkaMicroBatchRunner.Batch batch = runner.plan(startOffsets);
+        assertEquals(1, batch.getId());
+        final Configuration jobConf = batch.getJob().getConfiguration();
+        assertEquals(10l, (long) KafkaInputFormat.getStartOffsets(jobConf, "group", "topic").get("1-0"));
+        assertEquals(50l, (long) KafkaInputFormat.getStartOffsets(jobConf, "group", "topic").get("1-1"));
+        assertEquals(30l, (long) KafkaInputFormat.getEndOffsets(jobConf, "group", "topic").get("1-0"));
+        assertEquals(50l, (long) KafkaInputFormat.getEndOffsets(jobConf, "group", "topic").get("1-1"));
+        assertEquals(30l, (long) batch.getEndOffsets().get(topicConf).get(p1));
+        assertEquals(50l, (long) batch.getEndOffsets().get(topicConf).get(p2));
+        assertEquals(1, batch.getCommitOffsets().get(topicConf).size());
+        assertEquals(30l, (long) batch.getCommitOffsets().get(topicConf).get(p1));
+        assertEquals("file:/a/hdfs/path/batch_000001", FileOutputFormat.getOutputPath(batch.getJob()).toString());
+        assertFalse("The runner commits offsets itself!", KafkaInputFormat.isCommitOffsets(jobConf));
+    }
+
+    @Test
+    public void testPlanNothingToRead() throws Exception {
+        doReturn(Lists.<InputSplit> newArrayList()).when(runner).getInputSplits(any(Configuration.class),
+                eq("topic"), eq("group"));
+        assertNull(runner.plan(Maps.<TopicConf, Map<Partition, Long>> newHashMap()));
+    }
+
+    @Test
+    public void testCommit() throws Exception {
+        final ZkUtils mockZk = mock(ZkUtils.class);
+        doReturn(mockZk).when(runner).getZk();
+        doReturn(Lists.<InputSplit> newArrayList(new KafkaInputSplit(p1, 20, 30, true))).when(runner).getInputSplits(
+                any(Configuration.class), eq("topic"), eq("group"));
+
+        final KafkaMicroBatchRunner.Batch batch = runner.plan(Maps.<TopicConf, Map<Partition, Long>> newHashMap());
+        runner.commit(batch);
+        verify(mockZk).setLastCommits("group", ImmutableMap.of(p1, 30l));
+        verify(mockZk, never()).setLastCommit(anyString(), eq(p2), anyLong(), anyBoolean());
+        verify(mockZk).close();
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2014 Conductor, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.conductor.kafka.hadoop;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.util.List;
+
+import kafka.javaapi.producer.Producer;
+import kafka.javaapi.producer.ProducerData;
+import kafka.message.Message;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.conductor.kafka.hadoop.KafkaOutputFormat.KafkaRecordWriter;
+
+public class KafkaOutputFormatTest {
+
+    @SuppressWarnings("unchecked")
+    private final Producer<Integer, Message> producer = mock(Producer.class);
+
+    @Test
+    public void testSetGet() throws Exception {
+        final Job job = Job.getInstance(new Configuration(false));
+        final Configuration conf = job.getConfiguration();
+        assertNull(KafkaOutputFormat.getTopic(conf));
+        assertEquals(KafkaOutputFormat.DEFAULT_BATCH_SIZE, KafkaOutputFormat.getBatchSize(conf));
+        assertEquals(KafkaOutputFormat.DEFAULT_MAX_IN_FLIGHT_BATCHES, KafkaOutputFormat.getMaxInFlightBatches(conf));
+        assertEquals(KafkaOutputFormat.Compression.NONE, KafkaOutputFormat.getCompression(conf));
+
+        KafkaOutputFormat.setTopic(job, "topic");
+        KafkaOutputFormat.setBatchSize(job, 10);
+        KafkaOutputFormat.setMaxInFlightBatches(job, 2);
+        KafkaOutputFormat.setCompression(job, KafkaOutputFormat.Compression.SNAPPY);
+        assertEquals("topic", KafkaOutputFormat.getTopic(conf));
+        assertEquals(10, KafkaOutputFormat.getBatchSize(conf));
+        assertEquals(2, KafkaOutputFormat.getMaxInFlightBatches(conf));
+        assertEquals(KafkaOutputFormat.Compression.SNAPPY, KafkaOutputFormat.getCompression(conf));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBatchesPerPartition() throws Exception {
+        final KafkaRecordWriter<Text> writer = new KafkaRecordWriter<Text>(producer, "topic", 2, 2, 4);
+        final Text k1 = new Text("a");
+        final Text k2 = new Text("b");
+        // make sure the two keys land on different partitions
+        assertTrue((k1.hashCode() & Integer.MAX_VALUE) % 2 != (k2.hashCode() & Integer.MAX_VALUE) % 2);
+
+        writer.write(k1, new BytesWritable(new byte[] { 1 }));
+        writer.write(k2, new BytesWritable(new byte[] { 2 }));
+        writer.write(k1, new BytesWritable(new byte[] { 3 }));
+        writer.close(mock(TaskAttemptContext.class));
+
+        final ArgumentCaptor<ProducerData> captor = ArgumentCaptor.forClass(ProducerData.class);
+        verify(producer, times(2)).send(captor.capture());
+        final List<ProducerData> sent = captor.getAllValues();
+        int messages = 0;
+        for (final ProducerData<Integer, Message> data : sent) {
+            assertEquals("topic", data.getTopic());
+            final int expected = data.getKey() == (k1.hashCode() & Integer.MAX_VALUE) % 2 ? 2 : 1;
+            assertEquals(expected, data.getData().size());
+            messages += data.getData().size();
+        }
+        assertEquals(3, messages);
+        verify(producer).close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testNullKeysFillOnePartitionAtATime() throws Exception {
+        final KafkaRecordWriter<NullWritable> writer = new KafkaRecordWriter<NullWritable>(producer, "topic", 3, 2, 1);
+        for (int i = 0; i < 4; i++) {
+            writer.write(NullWritable.get(), new BytesWritable(new byte[] { (byte) i }));
+        }
+        writer.close(mock(TaskAttemptContext.class));
+
+        final ArgumentCaptor<ProducerData> captor = ArgumentCaptor.forClass(ProducerData.class);
+        verify(producer, times(2)).send(captor.capture());
+        assertEquals(0, (int) (Integer) captor.getAllValues().get(0).getKey());
+        assertEquals(1, (int) (Integer) captor.getAllValues().get(1).getKey());
+    }
+
+    @Test(expected = IOException.class)
+    @SuppressWarnings("unchecked")
+    public void testSendFailure() throws Exception {
+        doThrow(new RuntimeException("broker down")).when(producer).send(any(ProducerData.class));
+        final KafkaRecordWriter<Text> writer = new KafkaRecordWriter<Text>(producer, "topic", 1, 1, 1);
+        writer.write(new Text("a"), new BytesWritable(new byte[] { 1 }));
+        writer.close(mock(TaskAttemptContext.class));
+    }
+
+    @Test
+    public void testIndexPartitioner() throws Exception {
+        assertEquals(1, new KafkaOutputFormat.IndexPartitioner().partition(4, 3));
+    }
+}
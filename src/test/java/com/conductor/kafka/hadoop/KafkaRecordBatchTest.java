@@ -0,0 +1,34 @@
+package com.conductor.kafka.hadoop;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class KafkaRecordBatchTest {
+
+    @Test
+    public void testAdd() throws Exception {
+        final KafkaRecordBatch batch = new KafkaRecordBatch();
+        // more messages and payload bytes than the initial capacity
+        for (int i = 0; i < 1000; i++) {
+            final ByteBuffer payload = ByteBuffer.allocate(i % 10 + 1);
+            payload.put(0, (byte) i);
+            batch.add(i, payload);
+            assertEquals(0, payload.position());
+        }
+        assertEquals(1000, batch.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, batch.getOffsets()[i]);
+            assertEquals(i % 10 + 1, batch.getPayloadLengths()[i]);
+            assertEquals((byte) i, batch.getPayloads()[batch.getPayloadOffsets()[i]]);
+        }
+
+        batch.clear();
+        assertEquals(0, batch.size());
+        batch.add(5, ByteBuffer.wrap(new byte[] { 7 }));
+        assertEquals(0, batch.getPayloadOffsets()[0]);
+        assertEquals(7, batch.getPayloads()[0]);
+    }
+}
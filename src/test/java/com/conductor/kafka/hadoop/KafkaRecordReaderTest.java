@@ -17,6 +17,8 @@ package com.conductor.kafka.hadoop;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
+import java.nio.ByteBuffer;
+
 import kafka.api.FetchRequest;
 import kafka.common.ErrorMapping;
 import kafka.consumer.SimpleConsumer;
@@ -111,6 +113,116 @@ public class KafkaRecordReaderTest {
         assertArrayEquals(messageContent, reader.getCurrentValue().getBytes());
     }
 
+    @Test
+    public void testNextBatch() throws Exception {
+        doReturn(true).when(reader).continueItr();
+        doReturn(mockIterator).when(reader).getCurrentMessageItr();
+        // two messages left in the message set
+        doReturn(true).doReturn(false).when(reader).canCallNext();
+        when(mockIterator.next()).thenReturn(new MessageAndOffset(new Message(new byte[] { 1 }), 100l),
+                new MessageAndOffset(new Message(new byte[] { 2, 3 }), 200l));
+
+        final KafkaRecordBatch batch = new KafkaRecordBatch();
+        assertTrue(reader.nextBatch(batch));
+        assertEquals(2, batch.size());
+        assertEquals(100l, batch.getOffsets()[0]);
+        assertEquals(200l, batch.getOffsets()[1]);
+        assertEquals(1, batch.getPayloadLengths()[0]);
+        assertEquals(2, batch.getPayloadLengths()[1]);
+        assertEquals(3, batch.getPayloads()[batch.getPayloadOffsets()[1] + 1]);
+        assertEquals(200l, reader.getPos());
+
+        doReturn(false).when(reader).continueItr();
+        assertFalse(reader.nextBatch(batch));
+        assertEquals(0, batch.size());
+    }
+
+    @Test
+    public void testNextKeyValueTimestampRange() throws Exception {
+        final TimestampExtractor extractor = mock(TimestampExtractor.class);
+        doReturn(extractor).when(reader).getTimestampExtractor(conf);
+        conf.setLong("kafka.timestamp.start", 1000l);
+        conf.setLong("kafka.timestamp.end", 2000l);
+        reader.initialize(split, context);
+
+        doReturn(true).when(reader).continueItr();
+        doReturn(mockIterator).when(reader).getCurrentMessageItr();
+        final MessageAndOffset tooEarly = new MessageAndOffset(new Message(new byte[] { 1 }), 10l);
+        final MessageAndOffset unknown = new MessageAndOffset(new Message(new byte[] { 2 }), 20l);
+        final MessageAndOffset inRange = new MessageAndOffset(new Message(new byte[] { 3 }), 30l);
+        final MessageAndOffset tooLate = new MessageAndOffset(new Message(new byte[] { 4 }), 40l);
+        when(mockIterator.next()).thenReturn(tooEarly, unknown, inRange, tooLate);
+        when(extractor.getTimestamp(eq(10l), any(ByteBuffer.class))).thenReturn(999l);
+        when(extractor.getTimestamp(eq(20l), any(ByteBuffer.class))).thenReturn(-1l);
+        when(extractor.getTimestamp(eq(30l), any(ByteBuffer.class))).thenReturn(1000l);
+        when(extractor.getTimestamp(eq(40l), any(ByteBuffer.class))).thenReturn(2000l);
+
+        assertTrue(reader.nextKeyValue());
+        assertEquals(20l, reader.getCurrentKey().get());
+        assertTrue(reader.nextKeyValue());
+        assertEquals(30l, reader.getCurrentKey().get());
+        assertFalse("Should have stopped at the end timestamp!", reader.nextKeyValue());
+        // the message past the end timestamp must be read again by the next job
+        assertEquals(30l, reader.getCurrentOffset());
+        assertEquals(1f, reader.getProgress(), 0f);
+    }
+
+    @Test
+    public void testNextKeyValueLateTimestampNotCommitter() throws Exception {
+        final TimestampExtractor extractor = mock(TimestampExtractor.class);
+        doReturn(extractor).when(reader).getTimestampExtractor(conf);
+        conf.setLong("kafka.timestamp.end", 2000l);
+        split.setPartitionCommitter(false);
+        reader.initialize(split, context);
+
+        doReturn(true).doReturn(true).doReturn(true).doReturn(false).when(reader).continueItr();
+        doReturn(mockIterator).when(reader).getCurrentMessageItr();
+        final MessageAndOffset inRange = new MessageAndOffset(new Message(new byte[] { 1 }), 10l);
+        final MessageAndOffset late = new MessageAndOffset(new Message(new byte[] { 2 }), 20l);
+        final MessageAndOffset afterLate = new MessageAndOffset(new Message(new byte[] { 3 }), 30l);
+        when(mockIterator.next()).thenReturn(inRange, late, afterLate);
+        when(extractor.getTimestamp(eq(10l), any(ByteBuffer.class))).thenReturn(1000l);
+        when(extractor.getTimestamp(eq(20l), any(ByteBuffer.class))).thenReturn(2000l);
+        when(extractor.getTimestamp(eq(30l), any(ByteBuffer.class))).thenReturn(1500l);
+
+        assertTrue(reader.nextKeyValue());
+        assertEquals(10l, reader.getCurrentKey().get());
+        // a split that does not commit must not stop at a late message, or the rest of it would never be read
+        assertTrue(reader.nextKeyValue());
+        assertEquals(30l, reader.getCurrentKey().get());
+        assertFalse(reader.nextKeyValue());
+        assertEquals(30l, reader.getPos());
+    }
+
+    @Test
+    public void testNextKeyValueFilter() throws Exception {
+        final PayloadFilter filter = mock(PayloadFilter.class);
+        doReturn(filter).when(reader).getFilter(conf);
+        doReturn(mockConsumer).when(reader).getConsumer(split, conf);
+        doNothing().when(reader).commitOffset();
+        reader.initialize(split, context);
+
+        doReturn(true).when(reader).continueItr();
+        doReturn(mockIterator).when(reader).getCurrentMessageItr();
+        final MessageAndOffset rejected = new MessageAndOffset(new Message(new byte[] { 1, 2 }), 10l);
+        final MessageAndOffset accepted = new MessageAndOffset(new Message(new byte[] { 3 }), 20l);
+        when(mockIterator.next()).thenReturn(rejected, accepted);
+        when(filter.accept(eq(10l), any(ByteBuffer.class))).thenReturn(false);
+        when(filter.accept(eq(20l), any(ByteBuffer.class))).thenReturn(true);
+
+        assertTrue(reader.nextKeyValue());
+        assertEquals(20l, reader.getCurrentKey().get());
+        assertArrayEquals(new byte[] { 3 }, reader.getCurrentValue().copyBytes());
+
+        final org.apache.hadoop.mapreduce.Counter messages = mock(org.apache.hadoop.mapreduce.Counter.class);
+        final org.apache.hadoop.mapreduce.Counter bytes = mock(org.apache.hadoop.mapreduce.Counter.class);
+        when(context.getCounter(KafkaRecordReader.Counter.MESSAGES_FILTERED)).thenReturn(messages);
+        when(context.getCounter(KafkaRecordReader.Counter.BYTES_FILTERED)).thenReturn(bytes);
+        reader.close();
+        verify(messages).increment(1);
+        verify(bytes).increment(2);
+    }
+
     @Test(expected = Exception.class)
     public void testContinueItrException() throws Exception {
         doReturn(mockConsumer).when(reader).getConsumer(split, conf);
@@ -121,6 +233,24 @@ public class KafkaRecordReaderTest {
         fail();
     }
 
+    @Test
+    public void testReuseFetchBuffers() throws Exception {
+        final ReusableBufferFetcher mockFetcher = mock(ReusableBufferFetcher.class);
+        // without prefetching, the mapper's message set and the one being fetched
+        doReturn(mockFetcher).when(reader).getFetcher(split, conf, 2);
+        conf.setBoolean("kafka.fetch.reuse.buffers", true);
+        reader.initialize(split, context);
+
+        when(mockFetcher.fetch(any(FetchRequest.class))).thenReturn(mockMessage);
+        when(mockMessage.getErrorCode()).thenReturn(ErrorMapping.NoError());
+        assertSame(mockMessage, reader.fetch(0));
+        // the fetcher does not need a pooled consumer
+        verify(reader, never()).getConsumer(split, conf);
+
+        reader.close();
+        verify(mockFetcher).close();
+    }
+
     @Test
     public void testContinueItrOffsetOutOfRange() throws Exception {
         doReturn(mockConsumer).when(reader).getConsumer(split, conf);
@@ -201,6 +331,52 @@ public class KafkaRecordReaderTest {
         assertFalse("Should be done with split!", reader.continueItr());
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testContinueItrPrefetched() throws Exception {
+        doReturn(mockConsumer).when(reader).getConsumer(split, conf);
+        final Iterator<MessageAndOffset> mockIterator1 = mock(Iterator.class);
+        final MessageAndOffset msg1 = new MessageAndOffset(new Message(new byte[] { 1 }), 60l);
+        when(mockIterator1.hasNext()).thenReturn(true, false);
+        when(mockIterator1.next()).thenReturn(msg1);
+        final Iterator<MessageAndOffset> mockIterator2 = mock(Iterator.class);
+        final MessageAndOffset msg2 = new MessageAndOffset(new Message(new byte[] { 2 }), 100l);
+        when(mockIterator2.hasNext()).thenReturn(true, false);
+        when(mockIterator2.next()).thenReturn(msg2);
+        when(mockConsumer.fetch(any(FetchRequest.class))).thenReturn(mockMessage);
+        when(mockMessage.getErrorCode()).thenReturn(ErrorMapping.NoError());
+        when(mockMessage.iterator()).thenReturn(mockIterator1, mockIterator2);
+        when(mockMessage.validBytes()).thenReturn(60l, 40l);
+
+        conf.setInt("kafka.fetch.prefetch.depth", 1);
+        reader.initialize(split, context);
+
+        assertTrue(reader.nextKeyValue());
+        assertEquals(60l, reader.getCurrentKey().get());
+        assertEquals(60l, reader.getCurrentOffset());
+        assertTrue(reader.nextKeyValue());
+        assertEquals(100l, reader.getCurrentKey().get());
+        assertEquals(100l, reader.getCurrentOffset());
+        assertFalse("Should be done with split!", reader.nextKeyValue());
+        assertFalse("Should be done with split!", reader.continueItr());
+        verify(mockConsumer, times(2)).fetch(any(FetchRequest.class));
+
+        doNothing().when(reader).commitOffset();
+        reader.close();
+        verify(mockConsumer, times(1)).close();
+    }
+
+    @Test(expected = Exception.class)
+    public void testContinueItrPrefetchedException() throws Exception {
+        doReturn(mockConsumer).when(reader).getConsumer(split, conf);
+        when(mockConsumer.fetch(any(FetchRequest.class))).thenReturn(mockMessage);
+        when(mockMessage.getErrorCode()).thenReturn(ErrorMapping.InvalidFetchSizeCode());
+        conf.setInt("kafka.fetch.prefetch.depth", 1);
+        reader.initialize(split, context);
+        reader.continueItr();
+        fail();
+    }
+
     @Test
     public void testGetProgress() throws Exception {
         assertEquals(0f, reader.getProgress(), 0f);
@@ -241,6 +417,12 @@ public class KafkaRecordReaderTest {
         reader.initialize(split, context);
         reader.close();
         verify(reader, times(1)).commitOffset();
+
+        // offsets are committed elsewhere
+        conf.setBoolean("kafka.offsets.commit", false);
+        reader.initialize(split, context);
+        reader.close();
+        verify(reader, times(1)).commitOffset();
     }
 
     @Test
@@ -256,6 +438,37 @@ public class KafkaRecordReaderTest {
         assertTrue("Iterator has elements, should be able to call next().", reader.canCallNext());
     }
 
+    @Test
+    public void testGetBytesPerSecondShare() throws Exception {
+        assertEquals(100, KafkaRecordReader.getBytesPerSecondShare(1000, 10, Integer.MAX_VALUE));
+        assertEquals(250, KafkaRecordReader.getBytesPerSecondShare(1000, 10, 4));
+        assertEquals(1000, KafkaRecordReader.getBytesPerSecondShare(1000, 0, 4));
+        assertEquals(1, KafkaRecordReader.getBytesPerSecondShare(10, 100, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testWaitForBroker() throws Exception {
+        final ZkUtils mockZk = mock(ZkUtils.class);
+        doReturn(mockZk).when(reader).getZk();
+        doReturn(mockConsumer).when(reader).getConsumer(split, conf);
+        doNothing().when(reader).commitOffset();
+        final Broker broker = partition.getBroker();
+        when(mockZk.addBrokerReader(broker)).thenReturn("/readers/reader-0000000003");
+        // the first wait times out, then one of the readers ahead finishes
+        when(mockZk.awaitBrokerReadersAhead(eq(broker), eq("/readers/reader-0000000003"), eq(2), anyLong()))
+                .thenReturn(false, true);
+        conf.setInt("kafka.broker.max.concurrent.splits", 2);
+
+        reader.initialize(split, context);
+        verify(mockZk, times(2)).awaitBrokerReadersAhead(eq(broker), eq("/readers/reader-0000000003"), eq(2),
+                anyLong());
+        verify(context).progress();
+
+        reader.close();
+        verify(mockZk).removeBrokerReader("/readers/reader-0000000003");
+        verify(mockZk).close();
+    }
+
     @Test
     public void testCommitOffset() throws Exception {
         final ZkUtils mockZk = mock(ZkUtils.class);
@@ -0,0 +1,114 @@
+package com.conductor.kafka.hadoop;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import kafka.common.InvalidMessageSizeException;
+import kafka.message.GZIPCompressionCodec$;
+import kafka.message.InvalidMessageException;
+import kafka.message.Message;
+import kafka.message.MessageAndOffset;
+
+import org.junit.Test;
+
+public class MessageSetDecoderTest {
+
+    private static ByteBuffer messageSet(final Message... messages) {
+        int size = 0;
+        for (final Message message : messages) {
+            size += 4 + message.size();
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (final Message message : messages) {
+            buffer.putInt(message.size());
+            buffer.put(message.buffer().duplicate());
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static byte[] payload(final MessageAndOffset messageAndOffset) {
+        final ByteBuffer payload = messageAndOffset.message().payload();
+        final byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testDecode() throws Exception {
+        final Message m1 = new Message(new byte[] { 1 });
+        final Message m2 = new Message(new byte[] { 2, 3 });
+        final ByteBuffer buffer = messageSet(m1, m2);
+        final MessageSetDecoder decoder = new MessageSetDecoder(true);
+
+        final List<MessageAndOffset> messages = decoder.decode(buffer, 100);
+        assertEquals(2, messages.size());
+        assertArrayEquals(new byte[] { 1 }, payload(messages.get(0)));
+        assertEquals(100 + 4 + m1.size(), messages.get(0).offset());
+        assertArrayEquals(new byte[] { 2, 3 }, payload(messages.get(1)));
+        assertEquals(100 + 8 + m1.size() + m2.size(), messages.get(1).offset());
+        assertEquals(2, decoder.getVerified());
+        assertEquals(0, buffer.position());
+        assertEquals(buffer.remaining(), MessageSetDecoder.validBytes(buffer));
+    }
+
+    @Test
+    public void testPartialMessage() throws Exception {
+        final Message m1 = new Message(new byte[] { 1 });
+        final ByteBuffer buffer = messageSet(m1, new Message(new byte[] { 2, 3 }));
+        buffer.limit(buffer.limit() - 1);
+
+        assertEquals(1, new MessageSetDecoder(true).decode(buffer, 0).size());
+        assertEquals(4 + m1.size(), MessageSetDecoder.validBytes(buffer));
+    }
+
+    @Test(expected = InvalidMessageSizeException.class)
+    public void testMessageLargerThanFetch() throws Exception {
+        final ByteBuffer buffer = messageSet(new Message(new byte[] { 1, 2, 3 }));
+        buffer.limit(buffer.limit() - 1);
+        new MessageSetDecoder(true).decode(buffer, 0);
+    }
+
+    @Test
+    public void testChecksum() throws Exception {
+        final ByteBuffer buffer = messageSet(new Message(new byte[] { 1, 2 }));
+        // corrupt the last byte of the payload
+        buffer.put(buffer.limit() - 1, (byte) 7);
+
+        final MessageSetDecoder skipping = new MessageSetDecoder(false);
+        assertEquals(1, skipping.decode(buffer, 0).size());
+        assertEquals(0, skipping.getVerified());
+        try {
+            new MessageSetDecoder(true).decode(buffer, 0);
+            fail();
+        } catch (final InvalidMessageException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCompressed() throws Exception {
+        final ByteBuffer inner = messageSet(new Message(new byte[] { 1 }), new Message(new byte[] { 2 }),
+                new Message(new byte[] { 3 }));
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write(inner.array(), 0, inner.limit());
+        gzip.close();
+        final Message compressed = new Message(bytes.toByteArray(), GZIPCompressionCodec$.MODULE$);
+        final Message last = new Message(new byte[] { 4 });
+
+        final List<MessageAndOffset> messages = new MessageSetDecoder(true).decode(messageSet(compressed, last), 0);
+        assertEquals(4, messages.size());
+        // only the last message of the compressed set moves past it
+        final long afterCompressed = 4 + compressed.size();
+        assertEquals(0, messages.get(0).offset());
+        assertEquals(0, messages.get(1).offset());
+        assertEquals(afterCompressed, messages.get(2).offset());
+        assertArrayEquals(new byte[] { 3 }, payload(messages.get(2)));
+        assertEquals(afterCompressed + 4 + last.size(), messages.get(3).offset());
+    }
+}
@@ -29,7 +29,9 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import com.conductor.hadoop.DelegatingMapper;
+import com.conductor.hadoop.MultiTaggedInputSplit;
 import com.conductor.hadoop.TaggedInputSplit;
+import com.conductor.hadoop.TypeRoutingMapper;
 import com.conductor.kafka.hadoop.MultipleKafkaInputFormat.TopicConf;
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
@@ -90,9 +92,82 @@ public class MultipleKafkaInputFormatTest {
                 return taggedSplit.getInputSplit();
             }
         });
-        assertTrue(untagged.contains(split1_1));
-        assertTrue(untagged.contains(split1_2));
-        assertTrue(untagged.contains(split2_1));
-        assertTrue(untagged.contains(split2_2));
+        assertEquals(Lists.newArrayList(split1_1, split2_1, split1_2, split2_2), untagged);
+    }
+
+    @Test
+    public void testInterleave() throws Exception {
+        final List<List<Integer>> lists = Lists.newArrayList();
+        lists.add(Lists.newArrayList(1, 4, 6));
+        lists.add(Lists.<Integer> newArrayList());
+        lists.add(Lists.newArrayList(2, 5));
+        lists.add(Lists.newArrayList(3));
+        assertEquals(Lists.newArrayList(1, 2, 3, 4, 5, 6), MultipleKafkaInputFormat.interleave(lists));
+        assertTrue(MultipleKafkaInputFormat.interleave(Lists.<List<Integer>> newArrayList()).isEmpty());
+    }
+
+    @Test
+    public void testGetSplitsBatchMapper() throws Exception {
+        MultipleKafkaInputFormat.addTopic(job, "topic_3", "group_name", BatchMapper.class);
+        final MultipleKafkaInputFormat format = spy(new MultipleKafkaInputFormat());
+        final InputSplit split1 = mock(KafkaInputSplit.class);
+        final InputSplit split3 = mock(KafkaInputSplit.class);
+        doReturn(Lists.newArrayList(split1)).when(format).getInputSplits(conf, "group_name", "topic_1");
+        doReturn(Lists.newArrayList()).when(format).getInputSplits(conf, "group_name", "topic_2");
+        doReturn(Lists.newArrayList(split3)).when(format).getInputSplits(conf, "group_name", "topic_3");
+
+        final List<InputSplit> splits = format.getSplits(jobContext);
+        assertEquals(2, splits.size());
+        assertEquals(KafkaInputFormat.class, ((TaggedInputSplit) splits.get(0)).getInputFormatClass());
+        assertEquals(KafkaBatchInputFormat.class, ((TaggedInputSplit) splits.get(1)).getInputFormatClass());
+    }
+
+    @Test
+    public void testGetSplitsTypeRoutingMapper() throws Exception {
+        MultipleKafkaInputFormat.addTopic(job, "topic_3", "group_name", TypeRoutingMapper.class);
+        final MultipleKafkaInputFormat format = spy(new MultipleKafkaInputFormat());
+        final InputSplit split3 = mock(KafkaInputSplit.class);
+        doReturn(Lists.newArrayList()).when(format).getInputSplits(conf, "group_name", "topic_1");
+        doReturn(Lists.newArrayList()).when(format).getInputSplits(conf, "group_name", "topic_2");
+        doReturn(Lists.newArrayList(split3)).when(format).getInputSplits(conf, "group_name", "topic_3");
+
+        final List<InputSplit> splits = format.getSplits(jobContext);
+        assertEquals(1, splits.size());
+        assertEquals(KafkaDecodedInputFormat.class, ((TaggedInputSplit) splits.get(0)).getInputFormatClass());
+    }
+
+    private static class BatchMapper extends KafkaBatchMapper<Object, Object> {
+        @Override
+        protected void map(final KafkaRecordBatch batch, final Context context) {
+        }
+    }
+
+    @Test
+    public void testGetSplitsPerTask() throws Exception {
+        assertEquals(1, MultipleKafkaInputFormat.getSplitsPerTask(conf));
+        MultipleKafkaInputFormat.setSplitsPerTask(job, 3);
+        assertEquals(3, MultipleKafkaInputFormat.getSplitsPerTask(conf));
+
+        final MultipleKafkaInputFormat format = spy(new MultipleKafkaInputFormat());
+        final InputSplit split1_1 = mock(KafkaInputSplit.class);
+        final InputSplit split1_2 = mock(KafkaInputSplit.class);
+        final InputSplit split2_1 = mock(KafkaInputSplit.class);
+        final InputSplit split2_2 = mock(KafkaInputSplit.class);
+        doReturn(Lists.newArrayList(split1_1, split1_2)).when(format).getInputSplits(conf, "group_name", "topic_1");
+        doReturn(Lists.newArrayList(split2_1, split2_2)).when(format).getInputSplits(conf, "group_name", "topic_2");
+
+        final List<InputSplit> splits = format.getSplits(jobContext);
+        assertEquals(2, splits.size());
+        final List<TaggedInputSplit> first = ((MultiTaggedInputSplit) splits.get(0)).getSplits();
+        assertEquals(3, first.size());
+        // the topics are interleaved
+        assertEquals(split1_1, first.get(0).getInputSplit());
+        assertEquals(Mapper1.class, first.get(0).getMapperClass());
+        assertEquals(split2_1, first.get(1).getInputSplit());
+        assertEquals(Mapper2.class, first.get(1).getMapperClass());
+        assertEquals(split1_2, first.get(2).getInputSplit());
+        final List<TaggedInputSplit> second = ((MultiTaggedInputSplit) splits.get(1)).getSplits();
+        assertEquals(1, second.size());
+        assertEquals(split2_2, second.get(0).getInputSplit());
     }
 }
@@ -0,0 +1,83 @@
+package com.conductor.kafka.hadoop;
+
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import kafka.api.FetchRequest;
+import kafka.message.ByteBufferMessageSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.conductor.kafka.Broker;
+
+public class ReusableBufferFetcherTest {
+
+    private ServerSocket server;
+    private Thread broker;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new ServerSocket(0);
+        // a fake broker that answers every fetch with as many bytes as were asked for
+        broker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final Socket socket = server.accept();
+                    final DataInputStream in = new DataInputStream(socket.getInputStream());
+                    final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                    while (true) {
+                        final byte[] request = new byte[in.readInt()];
+                        in.readFully(request);
+                        // size, request id, topic, partition, offset, max size
+                        final int maxSize = java.nio.ByteBuffer.wrap(request, request.length - 4, 4).getInt();
+                        out.writeInt(2 + maxSize);
+                        out.writeShort(0);
+                        out.write(new byte[maxSize]);
+                        out.flush();
+                    }
+                } catch (final Exception e) {
+                    // connection closed
+                }
+            }
+        });
+        broker.setDaemon(true);
+        broker.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void testFetch() throws Exception {
+        final ReusableBufferFetcher fetcher = new ReusableBufferFetcher(new Broker("localhost", server.getLocalPort(),
+                1), 1000, 4096, 100, 2);
+        try {
+            final ByteBufferMessageSet first = fetcher.fetch(new FetchRequest("topic", 0, 0, 100));
+            assertEquals(0, first.getErrorCode());
+            assertEquals(100, first.getBuffer().remaining());
+
+            final ByteBufferMessageSet second = fetcher.fetch(new FetchRequest("topic", 0, 100, 50));
+            assertEquals(50, second.getBuffer().remaining());
+            assertTrue(first.getBuffer().array() != second.getBuffer().array());
+
+            // the ring wraps around
+            final ByteBufferMessageSet third = fetcher.fetch(new FetchRequest("topic", 0, 150, 100));
+            assertSame(first.getBuffer().array(), third.getBuffer().array());
+
+            // responses bigger than the buffers grow them
+            final ByteBufferMessageSet fourth = fetcher.fetch(new FetchRequest("topic", 0, 250, 200));
+            assertEquals(200, fourth.getBuffer().remaining());
+        } finally {
+            fetcher.close();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.conductor.kafka.hadoop;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import kafka.consumer.SimpleConsumer;
+
+import org.junit.Test;
+
+import com.conductor.kafka.Broker;
+
+public class SimpleConsumerPoolTest {
+
+    private final SimpleConsumerPool pool = new SimpleConsumerPool(1000) {
+        @Override
+        SimpleConsumer newConsumer(final Broker broker, final int soTimeoutMs, final int bufferSize) {
+            return mock(SimpleConsumer.class);
+        }
+    };
+
+    @Test
+    public void testAcquireRelease() throws Exception {
+        final Broker broker1 = new Broker("localhost", 9092, 1);
+        final Broker broker2 = new Broker("localhost", 9093, 2);
+
+        final SimpleConsumer consumer1 = pool.acquire(broker1, 1000, 4096);
+        final SimpleConsumer consumer2 = pool.acquire(broker2, 1000, 4096);
+        assertSame(consumer1, pool.acquire(new Broker("localhost", 9092, 1), 1000, 4096));
+        assertTrue(consumer1 != consumer2);
+        assertTrue(consumer1 != pool.acquire(broker1, 2000, 4096));
+        assertEquals(3, pool.size());
+
+        // still held once
+        pool.release(consumer1);
+        pool.evictIdle(Long.MAX_VALUE);
+        verify(consumer1, never()).close();
+
+        // idle, but not for long enough
+        pool.release(consumer1);
+        pool.release(consumer2);
+        pool.evictIdle(System.currentTimeMillis());
+        verify(consumer1, never()).close();
+        assertSame(consumer2, pool.acquire(broker2, 1000, 4096));
+        pool.release(consumer2);
+
+        pool.evictIdle(System.currentTimeMillis() + 1000);
+        verify(consumer1).close();
+        verify(consumer2).close();
+        assertEquals(1, pool.size());
+        assertTrue(consumer1 != pool.acquire(broker1, 1000, 4096));
+    }
+
+    @Test
+    public void testReleaseUnpooled() throws Exception {
+        final SimpleConsumer consumer = mock(SimpleConsumer.class);
+        pool.release(consumer);
+        verify(consumer).close();
+    }
+}
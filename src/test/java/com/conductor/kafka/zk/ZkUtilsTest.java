@@ -19,12 +19,15 @@ import static org.mockito.Mockito.*;
 
 import java.util.List;
 
+import org.I0Itec.zkclient.IZkChildListener;
 import org.I0Itec.zkclient.ZkClient;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
 import com.conductor.kafka.Broker;
 import com.conductor.kafka.Partition;
@@ -159,6 +162,50 @@ public class ZkUtilsTest {
         verify(client, times(1)).createPersistent("/a/temp-offset/", true);
     }
 
+    @Test
+    public void testBrokerReaders() throws Exception {
+        final Broker broker = new Broker("localhost", 9092, 1);
+        when(client.exists("/kangaroo/readers/1")).thenReturn(false);
+        when(client.createEphemeralSequential("/kangaroo/readers/1/reader-", "")).thenReturn(
+                "/kangaroo/readers/1/reader-0000000002");
+        final String reader = zk.addBrokerReader(broker);
+        assertEquals("/kangaroo/readers/1/reader-0000000002", reader);
+        verify(client).createPersistent("/kangaroo/readers/1", true);
+
+        when(client.getChildren("/kangaroo/readers/1")).thenReturn(
+                Lists.newArrayList("reader-0000000003", "reader-0000000000", "reader-0000000002",
+                        "reader-0000000001"));
+        assertEquals(2, zk.getBrokerReadersAhead(broker, reader));
+
+        zk.removeBrokerReader(reader);
+        verify(client).delete(reader);
+    }
+
+    @Test
+    public void testAwaitBrokerReadersAhead() throws Exception {
+        final Broker broker = new Broker("localhost", 9092, 1);
+        final String reader = "/kangaroo/readers/1/reader-0000000002";
+        when(client.getChildren("/kangaroo/readers/1")).thenReturn(
+                Lists.newArrayList("reader-0000000000", "reader-0000000001", "reader-0000000002"));
+
+        // nothing changes
+        assertFalse(zk.awaitBrokerReadersAhead(broker, reader, 2, 10));
+        assertTrue(zk.awaitBrokerReadersAhead(broker, reader, 3, 10));
+
+        // one of the readers ahead finishes
+        doAnswer(new Answer<List<String>>() {
+            @Override
+            public List<String> answer(final InvocationOnMock invocation) throws Throwable {
+                final IZkChildListener listener = (IZkChildListener) invocation.getArguments()[1];
+                listener.handleChildChange("/kangaroo/readers/1",
+                        Lists.newArrayList("reader-0000000001", "reader-0000000002"));
+                return null;
+            }
+        }).when(client).subscribeChildChanges(eq("/kangaroo/readers/1"), any(IZkChildListener.class));
+        assertTrue(zk.awaitBrokerReadersAhead(broker, reader, 2, 10000));
+        verify(client, times(3)).unsubscribeChildChanges(eq("/kangaroo/readers/1"), any(IZkChildListener.class));
+    }
+
     @Test
     public void testCommit() throws Exception {
         final Broker broker = new Broker("localhost", 9092, 1);